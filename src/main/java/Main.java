@@ -1,15 +1,28 @@
+import compiler.CompilerTier;
+import compiler.WasmCompiler;
+import constants.ImplementationSpecific;
+import environment.LinearMemory;
+import environment.MappedLinearMemory;
 import environment.Module;
+import interpreter.ExecutionEngine;
+import interpreter.LinearMemoryDump;
 import interpreter.WasmInterpreter;
 import parser.BinaryParser;
+import parser.ModuleCache;
+import register.RegisterInterpreter;
+import tree.TreeInterpreter;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 
 /**
  * Program entry point
  * Handles commandline argument parsing and calls the parser and interpreter.
  */
 public class Main {
+    private static final int OPCODE_PAIRS_PRINTED = 20;
 
     public static void main(String[] args) throws IOException {
         if (args.length < 1) {
@@ -18,43 +31,236 @@ public class Main {
         }
 
         boolean dumpLinearMemory = false;
-        int argCount = args.length - 1;
-        int argIndex = 1;
-        while (argCount > 0) {
+        File dumpFile = null;
+        long dumpStart = 0;
+        long dumpEnd = Long.MAX_VALUE;
+        boolean dumpCompressed = false;
+        String engine = "interpreter";
+        int tierUpThreshold = ImplementationSpecific.ExecutionEngine.TIER_UP_THRESHOLD;
+        boolean opCodeStatistics = false;
+        boolean superinstructions = true;
+        boolean boundsCheckElimination = true;
+        boolean eagerDecoding = false;
+        File checkpointFile = null;
+        File restoreFile = null;
+        File sharedMemoryDirectory = null;
+        File cacheDirectory = null;
+        for (int argIndex = 1; argIndex < args.length; argIndex++) {
             switch (args[argIndex]) {
                 case "-d":
                 case "--dump-linear-memory":
                     dumpLinearMemory = true;
                     break;
+                case "--dump-file":
+                    if (argIndex + 1 == args.length) {
+                        printUsageMessage();
+                        return;
+                    }
+                    dumpLinearMemory = true;
+                    dumpFile = new File(args[++argIndex]);
+                    break;
+                case "--dump-range":
+                    if (argIndex + 1 == args.length || !args[argIndex + 1].contains(":")) {
+                        printUsageMessage();
+                        return;
+                    }
+                    dumpLinearMemory = true;
+                    String[] range = args[++argIndex].split(":", 2);
+                    try {
+                        dumpStart = Long.decode(range[0]);
+                        dumpEnd = Long.decode(range[1]);
+                    } catch (NumberFormatException e) {
+                        printUsageMessage();
+                        return;
+                    }
+                    if (dumpStart < 0 || dumpEnd < dumpStart) {
+                        printUsageMessage();
+                        return;
+                    }
+                    break;
+                case "-z":
+                case "--dump-compressed":
+                    dumpLinearMemory = true;
+                    dumpCompressed = true;
+                    break;
+                case "-e":
+                case "--engine":
+                    if (argIndex + 1 == args.length) {
+                        printUsageMessage();
+                        return;
+                    }
+                    engine = args[++argIndex];
+                    break;
+                case "-t":
+                case "--tier-up-threshold":
+                    if (argIndex + 1 == args.length) {
+                        printUsageMessage();
+                        return;
+                    }
+                    tierUpThreshold = Integer.parseInt(args[++argIndex]);
+                    break;
+                case "-s":
+                case "--opcode-statistics":
+                    opCodeStatistics = true;
+                    break;
+                case "--no-superinstructions":
+                    superinstructions = false;
+                    break;
+                case "--no-bounds-check-elimination":
+                    boundsCheckElimination = false;
+                    break;
+                case "--eager-decoding":
+                    eagerDecoding = true;
+                    break;
+                case "--cache":
+                    if (argIndex + 1 == args.length) {
+                        printUsageMessage();
+                        return;
+                    }
+                    cacheDirectory = new File(args[++argIndex]);
+                    break;
+                case "--checkpoint":
+                    if (argIndex + 1 == args.length) {
+                        printUsageMessage();
+                        return;
+                    }
+                    checkpointFile = new File(args[++argIndex]);
+                    break;
+                case "--restore":
+                    if (argIndex + 1 == args.length) {
+                        printUsageMessage();
+                        return;
+                    }
+                    restoreFile = new File(args[++argIndex]);
+                    break;
+                case "--shared-memory":
+                    if (argIndex + 1 == args.length) {
+                        printUsageMessage();
+                        return;
+                    }
+                    sharedMemoryDirectory = new File(args[++argIndex]);
+                    break;
                 case "-h":
                 case "--help":
                 default:
                     printUsageMessage();
                     break;
             }
-            argCount--;
         }
 
         File exectuable = new File(args[0]);
+        // a module piped in is parsed while it arrives
+        boolean standardInput = args[0].equals("-");
 
-        if (!exectuable.exists() || exectuable.isDirectory()) {
+        if (!standardInput && (!exectuable.exists() || exectuable.isDirectory())) {
             printUsageMessage();
             return;
         }
 
-        Module module = new BinaryParser().parse(exectuable);
+        Module module;
+        if (cacheDirectory != null && !standardInput) {
+            module = new ModuleCache(cacheDirectory, superinstructions, boundsCheckElimination).load(exectuable);
+        } else {
+            BinaryParser parser = new BinaryParser(superinstructions, boundsCheckElimination, eagerDecoding);
+            module = standardInput ? parser.parse(System.in) : parser.parse(exectuable);
+        }
+        if (restoreFile != null) {
+            try (FileChannel channel = FileChannel.open(restoreFile.toPath(), StandardOpenOption.READ)) {
+                module.setLinearMemory(LinearMemory.restore(channel));
+            }
+        }
+        if (sharedMemoryDirectory != null && module.getLinearMemory() != null) {
+            File sharedMemoryFile = new File(sharedMemoryDirectory, exectuable.getName() + ".memory");
+            module.setLinearMemory(new MappedLinearMemory(sharedMemoryFile, module.getLinearMemory()));
+        }
+
+        ExecutionEngine executionEngine;
+        switch (engine) {
+            case "interpreter":
+                executionEngine = new WasmInterpreter(module);
+                break;
+            case "compiler":
+                executionEngine = new WasmCompiler(module);
+                break;
+            case "tree":
+                executionEngine = new TreeInterpreter(module);
+                break;
+            case "register":
+                executionEngine = new RegisterInterpreter(module);
+                break;
+            case "tiered":
+                int maxCallDepth = ImplementationSpecific.Interpreter.CALL_DEPTH_MAX;
+                executionEngine = new WasmInterpreter(module, maxCallDepth, new CompilerTier(module, maxCallDepth),
+                    tierUpThreshold, tierUpThreshold);
+                break;
+            default:
+                printUsageMessage();
+                return;
+        }
+
+        if (opCodeStatistics && executionEngine instanceof WasmInterpreter) {
+            ((WasmInterpreter) executionEngine).collectOpCodePairStatistics();
+        }
+
+        executionEngine.execute(dumpLinearMemory
+            ? new LinearMemoryDump(dumpFile, dumpStart, dumpEnd, dumpCompressed) : null);
 
-        new WasmInterpreter(module).execute(dumpLinearMemory);
+        if (checkpointFile != null) {
+            try (FileChannel channel = FileChannel.open(checkpointFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                module.getLinearMemory().checkpoint(channel);
+            }
+        }
+
+        if (opCodeStatistics && executionEngine instanceof WasmInterpreter) {
+            ((WasmInterpreter) executionEngine).printOpCodePairStatistics(System.out, OPCODE_PAIRS_PRINTED);
+        }
     }
 
     private static void printUsageMessage() {
         System.out.println(
             "Usage: j-wasm <file-name.wasm> [options]\n"
-                + "\t\tExecutes the passed WebAssebly program 'file-name.wasm'.\n\n"
+                + "\t\tExecutes the passed WebAssebly program 'file-name.wasm', or reads it from the standard input\n"
+                + "\t\tif the file name is '-'.\n\n"
                 + "\t-h, --help\n"
                 + "\t\t Prints this usage message.\n"
                 + "\t-d, --dump-linear-memory\n"
                 + "\t\t Dumps the linear memory contents to a file after execution inside the execution directory.\n"
+                + "\t--dump-file <file>\n"
+                + "\t\t Dumps the linear memory contents to the given file instead.\n"
+                + "\t--dump-range <start>:<end>\n"
+                + "\t\t Only dumps the bytes from index start up to (excluding) index end, e.g. 0x1000:0x2000.\n"
+                + "\t\t The start must not be negative or greater than the end.\n"
+                + "\t-z, --dump-compressed\n"
+                + "\t\t Compresses the dump in the zlib format.\n"
+                + "\t-e, --engine <interpreter|compiler|tiered|tree|register>\n"
+                + "\t\t Executes the program with the interpreter (default), compiles it to JVM bytecode first,\n"
+                + "\t\t interprets it and compiles the functions that are called or loop often, executes it as\n"
+                + "\t\t a tree of nodes or translates it to register code first.\n"
+                + "\t--cache <directory>\n"
+                + "\t\t Loads the parsed and decoded program from a cache in the directory instead of parsing it,\n"
+                + "\t\t or caches it there on the first run (not for a program read from the standard input).\n"
+                + "\t--checkpoint <file>\n"
+                + "\t\t Appends a checkpoint of the linear memory to the file after execution. Together with\n"
+                + "\t\t --restore it only contains the pages written since restoring the memory.\n"
+                + "\t--eager-decoding\n"
+                + "\t\t Decodes and validates all functions in parallel before the execution, instead of every\n"
+                + "\t\t function when it is called for the first time. A program read from the standard input is\n"
+                + "\t\t decoded while the rest of it arrives.\n"
+                + "\t--no-bounds-check-elimination\n"
+                + "\t\t Checks the bounds of all memory accesses, including those proven to be in bounds.\n"
+                + "\t--no-superinstructions\n"
+                + "\t\t Executes every instruction on its own instead of fusing frequent sequences of instructions.\n"
+                + "\t--restore <file>\n"
+                + "\t\t Executes the program with the linear memory of the last checkpoint in the file.\n"
+                + "\t--shared-memory <directory>\n"
+                + "\t\t Keeps the linear memory in the memory-mapped file <file-name.wasm>.memory in the directory\n"
+                + "\t\t (e.g. /dev/shm), so other processes can observe it during the execution.\n"
+                + "\t-s, --opcode-statistics\n"
+                + "\t\t Prints the most frequently executed pairs of opcodes after the execution (interpreter only).\n"
+                + "\t-t, --tier-up-threshold <count>\n"
+                + "\t\t Number of calls of a function, or iterations of one of its loops, after which the tiered\n"
+                + "\t\t engine compiles it. Default: " + ImplementationSpecific.ExecutionEngine.TIER_UP_THRESHOLD + "\n"
         );
     }
 }
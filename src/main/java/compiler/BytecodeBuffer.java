@@ -0,0 +1,189 @@
+package compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the bytecode of a single JVM method and resolves the offsets of branches to labels.
+ */
+class BytecodeBuffer {
+
+    /**
+     * JVM opcodes [JVMS 6.5]
+     */
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int IALOAD = 0x2E;
+    static final int IASTORE = 0x4F;
+    static final int ISTORE = 0x36;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int SWAP = 0x5F;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6C;
+    static final int IREM = 0x70;
+    static final int ISHL = 0x78;
+    static final int ISHR = 0x7A;
+    static final int IUSHR = 0x7C;
+    static final int IAND = 0x7E;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9A;
+    static final int IFLT = 0x9B;
+    static final int IFGE = 0x9C;
+    static final int IFGT = 0x9D;
+    static final int IFLE = 0x9E;
+    static final int IF_ICMPEQ = 0x9F;
+    static final int IF_ICMPNE = 0xA0;
+    static final int IF_ICMPLT = 0xA1;
+    static final int IF_ICMPGE = 0xA2;
+    static final int IF_ICMPGT = 0xA3;
+    static final int IF_ICMPLE = 0xA4;
+    static final int GOTO = 0xA7;
+    static final int IRETURN = 0xAC;
+    static final int RETURN = 0xB1;
+    static final int GETSTATIC = 0xB2;
+    static final int INVOKEVIRTUAL = 0xB6;
+    static final int INVOKESPECIAL = 0xB7;
+    static final int INVOKESTATIC = 0xB8;
+    static final int NEW = 0xBB;
+    static final int NEWARRAY = 0xBC;
+    static final int ATHROW = 0xBF;
+
+    /**
+     * The array type operand of <code>newarray</code> for an <code>int[]</code>
+     */
+    static final int T_INT = 10;
+
+    /**
+     * A position in the bytecode that branches can jump to, possibly before it is known
+     */
+    static class Label {
+        private int position = -1;
+
+        /**
+         * Positions of branch instructions jumping to this label before its position was known
+         */
+        private final List<Integer> fixups = new ArrayList<>();
+
+        private boolean used = false;
+
+        /**
+         * @return whether any branch jumps to this label
+         */
+        boolean isUsed() {
+            return used;
+        }
+    }
+
+    private byte[] code = new byte[256];
+    private int length = 0;
+
+    byte[] toByteArray() {
+        if (length > 0xFFFF) {
+            throw new CompilerException("Method too large: " + length + " bytes of bytecode");
+        }
+        return Arrays.copyOf(code, length);
+    }
+
+    void emit(int opCode) {
+        writeByte(opCode);
+    }
+
+    void emitByte(int opCode, int operand) {
+        writeByte(opCode);
+        writeByte(operand);
+    }
+
+    void emitShort(int opCode, int operand) {
+        writeByte(opCode);
+        writeShort(operand);
+    }
+
+    void emitLocal(int opCode, int index) {
+        if (index > 0xFF) {
+            // wide
+            writeByte(0xC4);
+            writeByte(opCode);
+            writeShort(index);
+        } else {
+            writeByte(opCode);
+            writeByte(index);
+        }
+    }
+
+    void emitConstant(int value, ClassFileWriter classFile) {
+        if (value >= -1 && value <= 5) {
+            emit(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            emitByte(BIPUSH, value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            emitShort(SIPUSH, value);
+        } else {
+            emitLoadConstant(classFile.integerConstant(value));
+        }
+    }
+
+    void emitLoadConstant(int constantIndex) {
+        if (constantIndex > 0xFF) {
+            emitShort(LDC_W, constantIndex);
+        } else {
+            emitByte(LDC, constantIndex);
+        }
+    }
+
+    /**
+     * Emits a goto or conditional branch to the label
+     */
+    void emitJump(int opCode, Label label) {
+        int instructionPosition = length;
+        writeByte(opCode);
+        label.used = true;
+        if (label.position >= 0) {
+            writeShort(branchOffset(label.position - instructionPosition));
+        } else {
+            label.fixups.add(instructionPosition);
+            writeShort(0);
+        }
+    }
+
+    void bind(Label label) {
+        label.position = length;
+        for (int instructionPosition : label.fixups) {
+            int offset = branchOffset(label.position - instructionPosition);
+            code[instructionPosition + 1] = (byte) (offset >> 8);
+            code[instructionPosition + 2] = (byte) offset;
+        }
+        label.fixups.clear();
+    }
+
+    private int branchOffset(int offset) {
+        if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+            throw new CompilerException("Branch offset out of range: " + offset);
+        }
+        return offset;
+    }
+
+    private void writeShort(int value) {
+        writeByte(value >> 8);
+        writeByte(value);
+    }
+
+    private void writeByte(int value) {
+        if (length == code.length) {
+            code = Arrays.copyOf(code, code.length * 2);
+        }
+        code[length++] = (byte) value;
+    }
+}
@@ -0,0 +1,231 @@
+package compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a minimal JVM class file [JVMS 4] holding fields and methods without any debugging information.
+ * The class file version is 49 (Java 5), so no stack map frames have to be computed for the methods: the JVM verifies
+ * them by type inference.
+ */
+class ClassFileWriter {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /**
+     * The constant pool entries without the count, every constant is added only once
+     */
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constantIndices = new HashMap<>();
+    private int constantCount = 1;
+
+    private final int accessFlags;
+    private final int thisClass;
+    private final int superClass;
+    private final List<Integer> interfaces = new ArrayList<>();
+    private final List<byte[]> fields = new ArrayList<>();
+    private final List<byte[]> methods = new ArrayList<>();
+
+    /**
+     * @param className  internal name of the class, e.g. <code>wasm/Function0</code>
+     * @param superName  internal name of the super class
+     */
+    ClassFileWriter(int accessFlags, String className, String superName) {
+        this.accessFlags = accessFlags;
+        this.thisClass = classConstant(className);
+        this.superClass = classConstant(superName);
+    }
+
+    void addInterface(String interfaceName) {
+        interfaces.add(classConstant(interfaceName));
+    }
+
+    void addField(int accessFlags, String name, String descriptor) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(accessFlags);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        fields.add(bytes.toByteArray());
+    }
+
+    /**
+     * Adds a method with a <code>Code</code> attribute and without an exception table
+     */
+    void addMethod(int accessFlags, String name, String descriptor, int maxStack, int maxLocals, byte[] code) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeShort(accessFlags);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(1);
+
+            out.writeShort(utf8Constant("Code"));
+            out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(bytes.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(MAGIC);
+            out.writeShort(0);
+            out.writeShort(MAJOR_VERSION);
+            out.writeShort(constantCount);
+            constantPoolBytes.writeTo(out);
+            out.writeShort(accessFlags);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.size());
+            for (int anInterface : interfaces) {
+                out.writeShort(anInterface);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /***************************
+     * Constant pool
+     ****************************/
+
+    int utf8Constant(String value) {
+        Integer index = constantIndices.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        try {
+            constantPool.writeByte(CONSTANT_UTF8);
+            constantPool.writeUTF(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return addConstant("U" + value);
+    }
+
+    int integerConstant(int value) {
+        Integer index = constantIndices.get("I" + value);
+        if (index != null) {
+            return index;
+        }
+        writeConstant(CONSTANT_INTEGER, value >>> 16, value & 0xFFFF);
+        return addConstant("I" + value);
+    }
+
+    int classConstant(String internalName) {
+        return referenceConstant(CONSTANT_CLASS, internalName);
+    }
+
+    int stringConstant(String value) {
+        return referenceConstant(CONSTANT_STRING, value);
+    }
+
+    int fieldConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    int methodConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int referenceConstant(int tag, String value) {
+        String key = tag + ":" + value;
+        Integer index = constantIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        int utf8 = utf8Constant(value);
+        writeConstant(tag, utf8);
+        return addConstant(key);
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        String key = tag + ":" + owner + "." + name + ":" + descriptor;
+        Integer index = constantIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerClass = classConstant(owner);
+        int nameAndType = nameAndTypeConstant(name, descriptor);
+        writeConstant(tag, ownerClass, nameAndType);
+        return addConstant(key);
+    }
+
+    private int nameAndTypeConstant(String name, String descriptor) {
+        String key = CONSTANT_NAME_AND_TYPE + ":" + name + ":" + descriptor;
+        Integer index = constantIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        writeConstant(CONSTANT_NAME_AND_TYPE, nameIndex, descriptorIndex);
+        return addConstant(key);
+    }
+
+    private void writeConstant(int tag, int... shorts) {
+        try {
+            constantPool.writeByte(tag);
+            for (int value : shorts) {
+                constantPool.writeShort(value);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int addConstant(String key) {
+        if (constantCount == 0xFFFF) {
+            throw new CompilerException("Constant pool overflow");
+        }
+        int index = constantCount++;
+        constantIndices.put(key, index);
+        return index;
+    }
+}
@@ -0,0 +1,29 @@
+package compiler;
+
+/**
+ * Signals that a function cannot be translated into JVM bytecode (e.g. because the generated method exceeds the limits
+ * of the class file format).
+ */
+public class CompilerException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public CompilerException() {
+    }
+
+    public CompilerException(String message) {
+        super(message);
+    }
+
+    public CompilerException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public CompilerException(Throwable cause) {
+        super(cause);
+    }
+
+    public CompilerException(String message, Throwable cause, boolean enableSuppression,
+                         boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
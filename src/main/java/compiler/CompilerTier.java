@@ -0,0 +1,40 @@
+package compiler;
+
+import environment.Module;
+import interpreter.CompiledFunction;
+import interpreter.OptimizingTier;
+
+/**
+ * Compiles functions of a module to JVM bytecode on request, see {@link FunctionCompiler}. Functions called by a
+ * compiled function are compiled as well when they are called for the first time. Functions that cannot be compiled
+ * are interpreted, also when a compiled function calls them, see {@link ModuleClassLoader}.
+ */
+public class CompilerTier implements OptimizingTier {
+    private final ModuleClassLoader classLoader;
+
+    /**
+     * @param maxCallDepth the maximum number of nested function calls, exceeding it traps
+     */
+    public CompilerTier(Module module, int maxCallDepth) {
+        this.classLoader = new ModuleClassLoader(module, maxCallDepth, this);
+    }
+
+    @Override
+    public CompiledFunction compile(int functionIndex) {
+        CompiledFunction function = load(functionIndex);
+        // e.g. too large for a JVM method, so it keeps being interpreted
+        return classLoader.isInterpreted(functionIndex) ? null : function;
+    }
+
+    /**
+     * @return the compiled function, or a function calling the interpreter if it cannot be compiled
+     */
+    CompiledFunction load(int functionIndex) {
+        try {
+            return (CompiledFunction) classLoader.loadClass(FunctionCompiler.className(functionIndex))
+                .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new CompilerException("Cannot instantiate compiled function " + functionIndex, e);
+        }
+    }
+}
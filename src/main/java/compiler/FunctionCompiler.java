@@ -0,0 +1,804 @@
+package compiler;
+
+import compiler.BytecodeBuffer.Label;
+import constants.BinaryFormat;
+import environment.Function;
+import parser.BoundsCheckElimination;
+import parser.CodeDecoder;
+import parser.Superinstructions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static compiler.BytecodeBuffer.*;
+
+/**
+ * Translates the decoded code of a single WASM function (see {@link CodeDecoder}) into a JVM class holding one static
+ * method. The local variables of the function become JVM local variables, its operands live on the JVM operand stack
+ * and calls to other WASM functions become <code>invokestatic</code> instructions of their classes, so the JIT compiler
+ * of the JVM can optimise WASM code like any other Java code.
+ *
+ * The generated method takes the parameters of the function followed by the call depth of the function and returns
+ * its result (if any). The call depth replaces the call stack limit of the interpreter, so both trap on the same
+ * programs. The linear memory of the module, and the module itself for its data segments, are accessed through static
+ * fields of every generated class.
+ * The generated class implements {@link interpreter.CompiledFunction} as well, so the interpreter can call it with the
+ * arguments on its value stack.
+ */
+class FunctionCompiler {
+    static final String PACKAGE_NAME = "wasm";
+    static final String CLASS_NAME_PREFIX = PACKAGE_NAME + ".Function";
+    static final String METHOD_NAME = "call";
+    static final String MEMORY_FIELD_NAME = "memory";
+    static final String MODULE_FIELD_NAME = "module";
+    static final String INTERPRETER_FIELD_NAME = "interpreter";
+
+    private static final String MEMORY_CLASS = "environment/LinearMemory";
+    private static final String MEMORY_DESCRIPTOR = "L" + MEMORY_CLASS + ";";
+    private static final String SIGNEDNESS_CLASS = MEMORY_CLASS + "$SIGNEDNESS";
+    private static final String MODULE_CLASS = "environment/Module";
+    private static final String MODULE_DESCRIPTOR = "L" + MODULE_CLASS + ";";
+    private static final String TRAP_CLASS = "interpreter/TrapException";
+    private static final String COMPILED_FUNCTION_CLASS = "interpreter/CompiledFunction";
+    private static final String INTERPRETER_CLASS = "interpreter/WasmInterpreter";
+    private static final String INTERPRETER_DESCRIPTOR = "L" + INTERPRETER_CLASS + ";";
+
+    /**
+     * The number of JVM local variables used to reorder operands, behind the local variables of the function
+     */
+    private static final int SCRATCH_LOCAL_COUNT = 3;
+
+    /**
+     * A block, loop or if that has been entered but whose end has not been translated yet
+     */
+    private static class ControlFrame {
+        private final int opCode;
+        private final int arity;
+        private final int height;
+        private final int elseOpCodePc;
+        private final int endOpCodePc;
+
+        private final Label end = new Label();
+        private final Label loopStart = new Label();
+        private final Label elseStart = new Label();
+        private boolean inElse = false;
+
+        /**
+         * Whether the rest of the (then or else branch of the) block can only be reached by a branch to its label
+         */
+        private boolean unreachable = false;
+
+        private ControlFrame(int opCode, int arity, int height, int elseOpCodePc, int endOpCodePc) {
+            this.opCode = opCode;
+            this.arity = arity;
+            this.height = height;
+            this.elseOpCodePc = elseOpCodePc;
+            this.endOpCodePc = endOpCodePc;
+        }
+    }
+
+    private final List<Function> functions;
+    private final Function function;
+    private final int[] code;
+    private final int maxCallDepth;
+
+    private final ClassFileWriter classFile;
+    private final BytecodeBuffer bytecode = new BytecodeBuffer();
+    private final String className;
+
+    private final List<ControlFrame> controlStack = new ArrayList<>();
+    private int height = 0;
+
+    /**
+     * JVM local variable holding the call depth, directly behind the parameters
+     */
+    private final int callDepthLocal;
+
+    /**
+     * The first of the {@link #SCRATCH_LOCAL_COUNT} JVM local variables used to reorder operands
+     */
+    private final int scratchLocal;
+
+    private FunctionCompiler(List<Function> functions, int functionIndex, int maxCallDepth) {
+        this.functions = functions;
+        this.function = functions.get(functionIndex);
+        this.code = function.getCode();
+        this.maxCallDepth = maxCallDepth;
+        this.className = internalClassName(functionIndex);
+        this.classFile = new ClassFileWriter(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL
+            | ClassFileWriter.ACC_SUPER, className, "java/lang/Object");
+        this.callDepthLocal = function.getParameterCount();
+        this.scratchLocal = callDepthLocal + 1 + function.getLocalVariableCount();
+    }
+
+    /**
+     * Generates the class of a single function.
+     *
+     * @param functions     all functions of the module
+     * @param functionIndex the index of the function to compile
+     * @param maxCallDepth  the maximum number of nested function calls, exceeding it traps
+     * @return the class file of the function's class
+     * @throws CompilerException if the function cannot be represented as a JVM method
+     */
+    static byte[] compile(List<Function> functions, int functionIndex, int maxCallDepth) {
+        return new FunctionCompiler(functions, functionIndex, maxCallDepth).compile();
+    }
+
+    /**
+     * Generates the class of a function that cannot be compiled, e.g. because it is too large for a JVM method. Its
+     * static method has the signature of a compiled function, so compiled functions call it like any other, but it
+     * passes its arguments to the interpreter in a static field of the class.
+     *
+     * @param functions     all functions of the module
+     * @param functionIndex the index of the function to interpret
+     * @return the class file of the function's class
+     */
+    static byte[] compileInterpreterCall(List<Function> functions, int functionIndex) {
+        // the interpreter checks the call depth
+        return new FunctionCompiler(functions, functionIndex, 0).compileInterpreterCall(functionIndex);
+    }
+
+    static String className(int functionIndex) {
+        return CLASS_NAME_PREFIX + functionIndex;
+    }
+
+    static String methodDescriptor(Function function) {
+        StringBuilder descriptor = new StringBuilder("(");
+        for (int i = 0; i <= function.getParameterCount(); i++) {
+            descriptor.append('I');
+        }
+        return descriptor.append(function.getReturnValueCount() == 0 ? ")V" : ")I").toString();
+    }
+
+    private static String internalClassName(int functionIndex) {
+        return className(functionIndex).replace('.', '/');
+    }
+
+    private byte[] compile() {
+        classFile.addField(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, MEMORY_FIELD_NAME,
+            MEMORY_DESCRIPTOR);
+        classFile.addField(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, MODULE_FIELD_NAME,
+            MODULE_DESCRIPTOR);
+
+        emitCallDepthCheck();
+        translateCode();
+
+        // the call depth check and the memory instructions need some operand stack slots in addition to the operands
+        int maxStack = function.getMaxStackHeight() + 6;
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, METHOD_NAME,
+            methodDescriptor(function), maxStack, scratchLocal + SCRATCH_LOCAL_COUNT, bytecode.toByteArray());
+
+        addCompiledFunctionMethods();
+
+        return classFile.toByteArray();
+    }
+
+    private byte[] compileInterpreterCall(int functionIndex) {
+        classFile.addField(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, INTERPRETER_FIELD_NAME,
+            INTERPRETER_DESCRIPTOR);
+
+        // interpreter.invoke(functionIndex, new int[] {parameters}, callDepth)
+        bytecode.emitShort(GETSTATIC, classFile.fieldConstant(className, INTERPRETER_FIELD_NAME,
+            INTERPRETER_DESCRIPTOR));
+        bytecode.emitConstant(functionIndex, classFile);
+        bytecode.emitConstant(function.getParameterCount(), classFile);
+        bytecode.emitByte(NEWARRAY, T_INT);
+        for (int i = 0; i < function.getParameterCount(); i++) {
+            bytecode.emit(DUP);
+            bytecode.emitConstant(i, classFile);
+            bytecode.emitLocal(ILOAD, i);
+            bytecode.emit(IASTORE);
+        }
+        bytecode.emitLocal(ILOAD, callDepthLocal);
+        bytecode.emitShort(INVOKEVIRTUAL, classFile.methodConstant(INTERPRETER_CLASS, "invoke", "(I[II)I"));
+        if (function.getReturnValueCount() == 0) {
+            bytecode.emit(POP);
+            bytecode.emit(RETURN);
+        } else {
+            bytecode.emit(IRETURN);
+        }
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_STATIC, METHOD_NAME,
+            methodDescriptor(function), 6, callDepthLocal + 1, bytecode.toByteArray());
+
+        addCompiledFunctionMethods();
+
+        return classFile.toByteArray();
+    }
+
+    /**
+     * Implements {@link interpreter.CompiledFunction}: a constructor and a method loading the arguments from the
+     * value stack and calling the static method of the function.
+     */
+    private void addCompiledFunctionMethods() {
+        classFile.addInterface(COMPILED_FUNCTION_CLASS);
+
+        BytecodeBuffer constructor = new BytecodeBuffer();
+        constructor.emitLocal(ALOAD, 0);
+        constructor.emitShort(INVOKESPECIAL, classFile.methodConstant("java/lang/Object", "<init>", "()V"));
+        constructor.emit(RETURN);
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V", 1, 1, constructor.toByteArray());
+
+        // invoke(int[] valueStack, int argumentsPointer, int callDepth)
+        BytecodeBuffer invoke = new BytecodeBuffer();
+        for (int i = 0; i < function.getParameterCount(); i++) {
+            invoke.emitLocal(ALOAD, 1);
+            invoke.emitLocal(ILOAD, 2);
+            invoke.emitConstant(i, classFile);
+            invoke.emit(IADD);
+            invoke.emit(IALOAD);
+        }
+        invoke.emitLocal(ILOAD, 3);
+        invoke.emitShort(INVOKESTATIC, classFile.methodConstant(className, METHOD_NAME, methodDescriptor(function)));
+        if (function.getReturnValueCount() == 0) {
+            invoke.emit(ICONST_0);
+        }
+        invoke.emit(IRETURN);
+        classFile.addMethod(ClassFileWriter.ACC_PUBLIC, "invoke", "([III)I", function.getParameterCount() + 3, 4,
+            invoke.toByteArray());
+    }
+
+    private void emitCallDepthCheck() {
+        Label withinLimit = new Label();
+        bytecode.emitLocal(ILOAD, callDepthLocal);
+        bytecode.emitConstant(maxCallDepth, classFile);
+        bytecode.emitJump(IF_ICMPLE, withinLimit);
+        emitTrap("Call stack exhausted! Maximum call depth: " + maxCallDepth);
+        bytecode.bind(withinLimit);
+
+        // declared local variables are zero initialized
+        for (int i = 0; i < function.getLocalVariableCount(); i++) {
+            bytecode.emit(ICONST_0);
+            bytecode.emitLocal(ISTORE, callDepthLocal + 1 + i);
+        }
+    }
+
+    private void translateCode() {
+        // the function body itself is the outermost block, a branch to it is a return
+        controlStack.add(new ControlFrame(BinaryFormat.Instructions.Control.BLOCK, function.getReturnValueCount(),
+            0, code.length, code.length));
+
+        int pc = 0;
+        while (pc < code.length) {
+            ControlFrame frame = controlStack.get(controlStack.size() - 1);
+            if (frame.unreachable) {
+                // skip the dead code up to the else or end of the innermost block
+                if (!frame.inElse && frame.elseOpCodePc != frame.endOpCodePc) {
+                    pc = frame.elseOpCodePc;
+                } else {
+                    pc = frame.endOpCodePc;
+                }
+                if (pc >= code.length) {
+                    break;
+                }
+            }
+
+            // superinstructions are translated as their first instruction, the others follow on their own
+            int opCode = Superinstructions.baseOpCode(code[pc]);
+            translateInstruction(opCode, pc + 1);
+            pc += 1 + CodeDecoder.immediateCount(opCode);
+        }
+    }
+
+    /**
+     * @param opCode      the opcode of the instruction
+     * @param immediates  the position of the first immediate of the instruction
+     */
+    private void translateInstruction(int opCode, int immediates) {
+        switch (opCode) {
+            /***************************
+             * Variable and constant access instructions
+             ****************************/
+            case BinaryFormat.Instructions.Numeric.I32_CONST:
+                bytecode.emitConstant(code[immediates], classFile);
+                height++;
+                break;
+            case BinaryFormat.Instructions.Variable.GET_LOCAL:
+                bytecode.emitLocal(ILOAD, jvmLocal(code[immediates]));
+                height++;
+                break;
+            case BinaryFormat.Instructions.Variable.SET_LOCAL:
+                bytecode.emitLocal(ISTORE, jvmLocal(code[immediates]));
+                height--;
+                break;
+            case BinaryFormat.Instructions.Variable.TEE_LOCAL:
+                bytecode.emit(DUP);
+                bytecode.emitLocal(ISTORE, jvmLocal(code[immediates]));
+                break;
+
+            /***************************
+             * Memory instructions
+             ****************************/
+            case BinaryFormat.Instructions.Memory.I32_LOAD:
+                emitLoad(code[immediates], 4, "UNSIGNED");
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
+                emitLoad(code[immediates], 1, "SIGNED");
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
+                emitLoad(code[immediates], 1, "UNSIGNED");
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
+                emitLoad(code[immediates], 2, "SIGNED");
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
+                emitLoad(code[immediates], 2, "UNSIGNED");
+                break;
+            case BinaryFormat.Instructions.Memory.I32_STORE:
+                emitStore(code[immediates], 4);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_STORE8:
+                emitStore(code[immediates], 1);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_STORE16:
+                emitStore(code[immediates], 2);
+                break;
+            case BoundsCheckElimination.I32_LOAD_IN_BOUNDS:
+                emitLoadInBounds(code[immediates], 4, "UNSIGNED");
+                break;
+            case BoundsCheckElimination.I32_LOAD8_S_IN_BOUNDS:
+                emitLoadInBounds(code[immediates], 1, "SIGNED");
+                break;
+            case BoundsCheckElimination.I32_LOAD8_U_IN_BOUNDS:
+                emitLoadInBounds(code[immediates], 1, "UNSIGNED");
+                break;
+            case BoundsCheckElimination.I32_LOAD16_S_IN_BOUNDS:
+                emitLoadInBounds(code[immediates], 2, "SIGNED");
+                break;
+            case BoundsCheckElimination.I32_LOAD16_U_IN_BOUNDS:
+                emitLoadInBounds(code[immediates], 2, "UNSIGNED");
+                break;
+            case BoundsCheckElimination.I32_STORE_IN_BOUNDS:
+                emitStoreInBounds(code[immediates], 4);
+                break;
+            case BoundsCheckElimination.I32_STORE8_IN_BOUNDS:
+                emitStoreInBounds(code[immediates], 1);
+                break;
+            case BoundsCheckElimination.I32_STORE16_IN_BOUNDS:
+                emitStoreInBounds(code[immediates], 2);
+                break;
+            case BinaryFormat.Instructions.Memory.CURRENT_MEMORY:
+                emitGetMemory();
+                emitMemoryCall("currentMemory", "()I");
+                height++;
+                break;
+            case BinaryFormat.Instructions.Memory.GROW_MEMORY:
+                emitGetMemory();
+                bytecode.emit(SWAP);
+                emitMemoryCall("growMemory", "(I)I");
+                break;
+            case CodeDecoder.MEMORY_INIT:
+                emitMemoryInit(code[immediates]);
+                break;
+            case CodeDecoder.DATA_DROP:
+                emitGetModule();
+                bytecode.emitConstant(code[immediates], classFile);
+                bytecode.emitShort(INVOKEVIRTUAL, classFile.methodConstant(MODULE_CLASS, "dropDataSegment", "(I)V"));
+                break;
+            case CodeDecoder.MEMORY_COPY:
+                emitBulkMemoryCall("copy");
+                break;
+            case CodeDecoder.MEMORY_FILL:
+                emitBulkMemoryCall("fill");
+                break;
+
+            /*****************************
+             * Test and comparison instructions
+             *****************************/
+            case BinaryFormat.Instructions.Numeric.I32_EQZ:
+                emitCondition(IFEQ);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_EQ:
+                emitComparison(IF_ICMPEQ);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_NE:
+                emitComparison(IF_ICMPNE);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                emitComparison(IF_ICMPLT);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                emitComparison(IF_ICMPGT);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                emitComparison(IF_ICMPLE);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                emitComparison(IF_ICMPGE);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LT_U:
+                emitUnsignedComparison(IFLT);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GT_U:
+                emitUnsignedComparison(IFGT);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LE_U:
+                emitUnsignedComparison(IFLE);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GE_U:
+                emitUnsignedComparison(IFGE);
+                break;
+
+            /*****************************
+             * Unary instructions
+             *****************************/
+            case BinaryFormat.Instructions.Numeric.I32_CLZ:
+                emitIntegerCall("numberOfLeadingZeros", "(I)I");
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_CTZ:
+                emitIntegerCall("numberOfTrailingZeros", "(I)I");
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_POPCNT:
+                emitIntegerCall("bitCount", "(I)I");
+                break;
+
+            /*********************************
+             * Binary instructions
+             *********************************/
+            case BinaryFormat.Instructions.Numeric.I32_ADD:
+                emitBinary(IADD);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_SUB:
+                emitBinary(ISUB);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_MUL:
+                emitBinary(IMUL);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_DIV_S:
+                emitBinary(IDIV);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_REM_S:
+                emitBinary(IREM);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_AND:
+                emitBinary(IAND);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_OR:
+                emitBinary(IOR);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_XOR:
+                emitBinary(IXOR);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_SHL:
+                emitBinary(ISHL);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_SHR_S:
+                emitBinary(ISHR);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_SHR_U:
+                emitBinary(IUSHR);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_DIV_U:
+                emitIntegerCall("divideUnsigned", "(II)I");
+                height--;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_REM_U:
+                emitIntegerCall("remainderUnsigned", "(II)I");
+                height--;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_ROTL:
+                emitIntegerCall("rotateLeft", "(II)I");
+                height--;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_ROTR:
+                emitIntegerCall("rotateRight", "(II)I");
+                height--;
+                break;
+
+            /******************************
+             * Control instructions
+             *****************************/
+            case BinaryFormat.Instructions.Control.UNREACHABLE:
+                emitTrap("You reached unreachable code!");
+                setUnreachable();
+                break;
+            case BinaryFormat.Instructions.Control.NOP:
+                break;
+            case BinaryFormat.Instructions.Control.BLOCK:
+                enterBlock(opCode, code[immediates], code[immediates + 1] - 1, code[immediates + 1] - 1);
+                break;
+            case BinaryFormat.Instructions.Control.LOOP:
+                enterBlock(opCode, code[immediates], code[immediates + 1] - 1, code[immediates + 1] - 1);
+                bytecode.bind(currentFrame().loopStart);
+                break;
+            case BinaryFormat.Instructions.Control.IF: {
+                height--;
+                // the else target points behind the immediate of the else instruction
+                int elsePc = code[immediates + 1];
+                int endPc = code[immediates + 2];
+                enterBlock(opCode, code[immediates], elsePc == endPc ? endPc - 1 : elsePc - 2, endPc - 1);
+                bytecode.emitJump(IFEQ, currentFrame().elseStart);
+                break;
+            }
+            case BinaryFormat.Instructions.Control.ELSE: {
+                ControlFrame frame = currentFrame();
+                if (!frame.unreachable) {
+                    bytecode.emitJump(GOTO, frame.end);
+                }
+                bytecode.bind(frame.elseStart);
+                frame.inElse = true;
+                frame.unreachable = false;
+                height = frame.height;
+                break;
+            }
+            case BinaryFormat.Instructions.Control.END:
+                exitBlock();
+                break;
+            case BinaryFormat.Instructions.Control.BR:
+                emitBranch(code[immediates], code[immediates + 2], code[immediates + 3]);
+                setUnreachable();
+                break;
+            case BinaryFormat.Instructions.Control.BR_IF:
+                height--;
+                emitConditionalBranch(code[immediates], code[immediates + 2], code[immediates + 3]);
+                break;
+            case BinaryFormat.Instructions.Control.RETURN:
+                emitReturn();
+                setUnreachable();
+                break;
+            case BinaryFormat.Instructions.Control.CALL: {
+                int calledFunctionIndex = code[immediates];
+                Function calledFunction = functions.get(calledFunctionIndex);
+                bytecode.emitLocal(ILOAD, callDepthLocal);
+                bytecode.emitConstant(1, classFile);
+                bytecode.emit(IADD);
+                bytecode.emitShort(INVOKESTATIC, classFile.methodConstant(internalClassName(calledFunctionIndex),
+                    METHOD_NAME, methodDescriptor(calledFunction)));
+                height += calledFunction.getReturnValueCount() - calledFunction.getParameterCount();
+                break;
+            }
+            case BinaryFormat.Instructions.Control.DROP:
+                bytecode.emit(POP);
+                height--;
+                break;
+            default:
+                throw new CompilerException("Invalid (or not implemented) instruction! [opcode: 0x"
+                    + Integer.toHexString(opCode) + "]");
+        }
+    }
+
+    /**
+     * Maps the index of a WASM local variable to a JVM local variable, skipping the call depth behind the parameters.
+     */
+    private int jvmLocal(int localIndex) {
+        return localIndex < callDepthLocal ? localIndex : localIndex + 1;
+    }
+
+    private ControlFrame currentFrame() {
+        return controlStack.get(controlStack.size() - 1);
+    }
+
+    private void setUnreachable() {
+        currentFrame().unreachable = true;
+    }
+
+    /***************************
+     * Structured control flow
+     ****************************/
+
+    private void enterBlock(int opCode, int arity, int elseOpCodePc, int endOpCodePc) {
+        controlStack.add(new ControlFrame(opCode, arity, height, elseOpCodePc, endOpCodePc));
+    }
+
+    private void exitBlock() {
+        ControlFrame frame = controlStack.remove(controlStack.size() - 1);
+        boolean reachable = !frame.unreachable || frame.end.isUsed();
+
+        if (frame.opCode == BinaryFormat.Instructions.Control.IF && !frame.inElse) {
+            // without an else branch a false condition continues behind the end
+            bytecode.bind(frame.elseStart);
+            reachable = true;
+        }
+        bytecode.bind(frame.end);
+
+        height = frame.height + frame.arity;
+        if (!reachable) {
+            setUnreachable();
+        }
+    }
+
+    /**
+     * Emits an unconditional branch: drops the operands above the target height, keeping the branch's arity values
+     * on top of the stack, and jumps to the label.
+     */
+    private void emitBranch(int depth, int arity, int targetHeight) {
+        ControlFrame target = controlStack.get(controlStack.size() - 1 - depth);
+        if (depth == controlStack.size() - 1) {
+            // a branch to the function body's label returns from the function, the JVM drops remaining operands
+            emitReturn();
+            return;
+        }
+
+        int excess = height - targetHeight - arity;
+        if (excess > 0) {
+            if (arity != 0) {
+                bytecode.emitLocal(ISTORE, scratchLocal);
+            }
+            for (int i = 0; i < excess / 2; i++) {
+                bytecode.emit(POP2);
+            }
+            if (excess % 2 != 0) {
+                bytecode.emit(POP);
+            }
+            if (arity != 0) {
+                bytecode.emitLocal(ILOAD, scratchLocal);
+            }
+        }
+
+        bytecode.emitJump(GOTO, target.opCode == BinaryFormat.Instructions.Control.LOOP ? target.loopStart
+            : target.end);
+    }
+
+    /**
+     * Emits a branch taken if the int on top of the stack is not zero
+     */
+    private void emitConditionalBranch(int depth, int arity, int targetHeight) {
+        ControlFrame target = controlStack.get(controlStack.size() - 1 - depth);
+        if (depth != controlStack.size() - 1 && height == targetHeight + arity) {
+            // nothing to unwind, jump directly
+            bytecode.emitJump(IFNE, target.opCode == BinaryFormat.Instructions.Control.LOOP ? target.loopStart
+                : target.end);
+            return;
+        }
+
+        Label notTaken = new Label();
+        bytecode.emitJump(IFEQ, notTaken);
+        emitBranch(depth, arity, targetHeight);
+        bytecode.bind(notTaken);
+    }
+
+    private void emitReturn() {
+        bytecode.emit(function.getReturnValueCount() == 0 ? RETURN : IRETURN);
+    }
+
+    private void emitTrap(String message) {
+        bytecode.emitShort(NEW, classFile.classConstant(TRAP_CLASS));
+        bytecode.emit(DUP);
+        bytecode.emitLoadConstant(classFile.stringConstant(message));
+        bytecode.emitShort(INVOKESPECIAL, classFile.methodConstant(TRAP_CLASS, "<init>", "(Ljava/lang/String;)V"));
+        bytecode.emit(ATHROW);
+    }
+
+    /***************************
+     * Numeric instructions
+     ****************************/
+
+    private void emitBinary(int jvmOpCode) {
+        bytecode.emit(jvmOpCode);
+        height--;
+    }
+
+    private void emitIntegerCall(String name, String descriptor) {
+        bytecode.emitShort(INVOKESTATIC, classFile.methodConstant("java/lang/Integer", name, descriptor));
+    }
+
+    /**
+     * Compares the two ints on top of the stack and pushes 1 if the branch instruction would be taken, 0 otherwise
+     */
+    private void emitComparison(int jvmBranchOpCode) {
+        height--;
+        emitCondition(jvmBranchOpCode);
+    }
+
+    private void emitUnsignedComparison(int jvmBranchOpCode) {
+        emitIntegerCall("compareUnsigned", "(II)I");
+        height--;
+        emitCondition(jvmBranchOpCode);
+    }
+
+    private void emitCondition(int jvmBranchOpCode) {
+        Label isTrue = new Label();
+        Label end = new Label();
+        bytecode.emitJump(jvmBranchOpCode, isTrue);
+        bytecode.emit(ICONST_0);
+        bytecode.emitJump(GOTO, end);
+        bytecode.bind(isTrue);
+        bytecode.emit(ICONST_1);
+        bytecode.bind(end);
+    }
+
+    /***************************
+     * Memory instructions
+     ****************************/
+
+    private void emitGetMemory() {
+        bytecode.emitShort(GETSTATIC, classFile.fieldConstant(className, MEMORY_FIELD_NAME, MEMORY_DESCRIPTOR));
+    }
+
+    private void emitMemoryCall(String name, String descriptor) {
+        bytecode.emitShort(INVOKEVIRTUAL, classFile.methodConstant(MEMORY_CLASS, name, descriptor));
+    }
+
+    /**
+     * Replaces the address on top of the stack with the loaded value
+     */
+    private void emitLoad(int offset, int byteCount, String signedness) {
+        emitGetMemory();
+        bytecode.emit(SWAP);
+        // the alignment is ignored by the linear memory
+        bytecode.emit(ICONST_0);
+        bytecode.emitConstant(offset, classFile);
+        bytecode.emitConstant(byteCount, classFile);
+        bytecode.emitShort(GETSTATIC, classFile.fieldConstant(SIGNEDNESS_CLASS, signedness,
+            "L" + SIGNEDNESS_CLASS + ";"));
+        emitMemoryCall("load", "(IIIIL" + SIGNEDNESS_CLASS + ";)I");
+    }
+
+    /**
+     * Stores the value on top of the stack at the address below it
+     */
+    private void emitStore(int offset, int byteCount) {
+        bytecode.emitLocal(ISTORE, scratchLocal);
+        emitGetMemory();
+        bytecode.emit(SWAP);
+        // the alignment is ignored by the linear memory
+        bytecode.emit(ICONST_0);
+        bytecode.emitConstant(offset, classFile);
+        bytecode.emitConstant(byteCount, classFile);
+        bytecode.emitLocal(ILOAD, scratchLocal);
+        emitMemoryCall("store", "(IIIII)V");
+        height -= 2;
+    }
+
+    /**
+     * Replaces the address on top of the stack with the value loaded without a bounds check
+     */
+    private void emitLoadInBounds(int offset, int byteCount, String signedness) {
+        bytecode.emitConstant(offset, classFile);
+        bytecode.emit(IADD);
+        emitGetMemory();
+        bytecode.emit(SWAP);
+        bytecode.emitConstant(byteCount, classFile);
+        bytecode.emitShort(GETSTATIC, classFile.fieldConstant(SIGNEDNESS_CLASS, signedness,
+            "L" + SIGNEDNESS_CLASS + ";"));
+        emitMemoryCall("loadInBounds", "(IIL" + SIGNEDNESS_CLASS + ";)I");
+    }
+
+    /**
+     * Stores the value on top of the stack at the address below it without a bounds check
+     */
+    private void emitStoreInBounds(int offset, int byteCount) {
+        bytecode.emitLocal(ISTORE, scratchLocal);
+        bytecode.emitConstant(offset, classFile);
+        bytecode.emit(IADD);
+        emitGetMemory();
+        bytecode.emit(SWAP);
+        bytecode.emitConstant(byteCount, classFile);
+        bytecode.emitLocal(ILOAD, scratchLocal);
+        emitMemoryCall("storeInBounds", "(III)V");
+        height -= 2;
+    }
+
+    /**
+     * Calls a bulk memory method of the linear memory with the three operands on top of the stack
+     */
+    private void emitBulkMemoryCall(String name) {
+        bytecode.emitLocal(ISTORE, scratchLocal + 1);
+        bytecode.emitLocal(ISTORE, scratchLocal);
+        emitGetMemory();
+        bytecode.emit(SWAP);
+        bytecode.emitLocal(ILOAD, scratchLocal);
+        bytecode.emitLocal(ILOAD, scratchLocal + 1);
+        emitMemoryCall(name, "(III)V");
+        height -= 3;
+    }
+
+    /**
+     * Copies a part of the data segment to the memory, the destination, offset and length are on top of the stack
+     */
+    private void emitMemoryInit(int segmentIndex) {
+        bytecode.emitLocal(ISTORE, scratchLocal + 2);
+        bytecode.emitLocal(ISTORE, scratchLocal + 1);
+        bytecode.emitLocal(ISTORE, scratchLocal);
+        emitGetModule();
+        bytecode.emitConstant(segmentIndex, classFile);
+        bytecode.emitLocal(ILOAD, scratchLocal);
+        bytecode.emitLocal(ILOAD, scratchLocal + 1);
+        bytecode.emitLocal(ILOAD, scratchLocal + 2);
+        bytecode.emitShort(INVOKEVIRTUAL, classFile.methodConstant(MODULE_CLASS, "initMemory", "(IIII)V"));
+        height -= 3;
+    }
+
+    private void emitGetModule() {
+        bytecode.emitShort(GETSTATIC, classFile.fieldConstant(className, MODULE_FIELD_NAME, MODULE_DESCRIPTOR));
+    }
+}
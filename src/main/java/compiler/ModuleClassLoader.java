@@ -0,0 +1,93 @@
+package compiler;
+
+import environment.Module;
+import interpreter.OptimizingTier;
+import interpreter.WasmInterpreter;
+
+/**
+ * Defines the classes of the compiled functions of a module. A function is compiled when its class is loaded for the
+ * first time, i.e. when it is called for the first time, so functions that are never called are never compiled.
+ *
+ * A function that cannot be compiled, e.g. because it is too large for a JVM method, gets a class calling the
+ * interpreter instead (see {@link FunctionCompiler#compileInterpreterCall}), so compiled functions can still call it.
+ * The interpreter passes the functions it calls to the optimizing tier right away, so only the functions that cannot
+ * be compiled are interpreted.
+ */
+class ModuleClassLoader extends ClassLoader {
+    private final Module module;
+    private final int maxCallDepth;
+    private final OptimizingTier optimizingTier;
+
+    /**
+     * Whether a function is interpreted because it cannot be compiled, indexed by function index
+     */
+    private final boolean[] interpreted;
+
+    /**
+     * Executes the functions that cannot be compiled, created when the first of them is called
+     */
+    private WasmInterpreter interpreter;
+
+    /**
+     * @param optimizingTier compiles the functions called by interpreted functions
+     */
+    ModuleClassLoader(Module module, int maxCallDepth, OptimizingTier optimizingTier) {
+        // the generated code refers to classes of j-wasm, like the linear memory
+        super(ModuleClassLoader.class.getClassLoader());
+        this.module = module;
+        this.maxCallDepth = maxCallDepth;
+        this.optimizingTier = optimizingTier;
+        this.interpreted = new boolean[module.getFunctions().size()];
+    }
+
+    /**
+     * @return whether the class of the function calls the interpreter, as the function cannot be compiled
+     */
+    boolean isInterpreted(int functionIndex) {
+        return interpreted[functionIndex];
+    }
+
+    @Override
+    protected Class<?> findClass(String name) throws ClassNotFoundException {
+        if (!name.startsWith(FunctionCompiler.CLASS_NAME_PREFIX)) {
+            throw new ClassNotFoundException(name);
+        }
+
+        int functionIndex;
+        try {
+            functionIndex = Integer.parseInt(name.substring(FunctionCompiler.CLASS_NAME_PREFIX.length()));
+        } catch (NumberFormatException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+        if (functionIndex < 0 || functionIndex >= module.getFunctions().size()) {
+            throw new ClassNotFoundException(name);
+        }
+
+        byte[] classFile;
+        try {
+            classFile = FunctionCompiler.compile(module.getFunctions(), functionIndex, maxCallDepth);
+        } catch (CompilerException e) {
+            classFile = FunctionCompiler.compileInterpreterCall(module.getFunctions(), functionIndex);
+            interpreted[functionIndex] = true;
+        }
+        Class<?> functionClass = defineClass(name, classFile, 0, classFile.length);
+        try {
+            if (interpreted[functionIndex]) {
+                functionClass.getField(FunctionCompiler.INTERPRETER_FIELD_NAME).set(null, interpreter());
+            } else {
+                functionClass.getField(FunctionCompiler.MEMORY_FIELD_NAME).set(null, module.getLinearMemory());
+                functionClass.getField(FunctionCompiler.MODULE_FIELD_NAME).set(null, module);
+            }
+        } catch (ReflectiveOperationException e) {
+            throw new CompilerException("Cannot link the module and its linear memory to " + name, e);
+        }
+        return functionClass;
+    }
+
+    private WasmInterpreter interpreter() {
+        if (interpreter == null) {
+            interpreter = new WasmInterpreter(module, maxCallDepth, optimizingTier, 1, Integer.MAX_VALUE);
+        }
+        return interpreter;
+    }
+}
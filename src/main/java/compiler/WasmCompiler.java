@@ -0,0 +1,36 @@
+package compiler;
+
+import constants.ImplementationSpecific;
+import interpreter.CompiledFunction;
+import environment.Module;
+import interpreter.ExecutionEngine;
+
+/**
+ * Executes a WASM module by compiling its functions to JVM bytecode, see {@link FunctionCompiler}. Functions that
+ * cannot be compiled are interpreted. Gives the same results as the interpreter, including traps.
+ */
+public class WasmCompiler extends ExecutionEngine {
+
+    /**
+     * The maximum number of nested function calls, exceeding it traps
+     */
+    private final int maxCallDepth;
+
+    public WasmCompiler(Module module) {
+        this(module, ImplementationSpecific.Interpreter.CALL_DEPTH_MAX);
+    }
+
+    public WasmCompiler(Module module, int maxCallDepth) {
+        super(module);
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    @Override
+    protected void run() {
+        // a start function that cannot be compiled is interpreted, like all other functions that cannot be compiled
+        CompiledFunction startFunction = new CompilerTier(module, maxCallDepth).load(module.getStartFunctionIndex());
+
+        // Like in the interpreter, the parameters of the start function are zero and it starts at call depth 0
+        startFunction.invoke(new int[module.getStartFunction().getParameterCount()], 0, 0);
+    }
+}
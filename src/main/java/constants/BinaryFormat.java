@@ -91,6 +91,17 @@ public final class BinaryFormat {
             public static final class Data {
 
                 public static final byte ID = 0x0B;
+                public static final byte ACTIVE = 0x00;
+                public static final byte PASSIVE = 0x01;
+                public static final byte ACTIVE_EXPLICIT_MEMORY = 0x02;
+            }
+
+            /**
+             * Placed between the Element and the Code section [bulk memory operations proposal]
+             */
+            public static final class DataCount {
+
+                public static final byte ID = 0x0C;
             }
         }
     }
@@ -147,6 +158,7 @@ public final class BinaryFormat {
             public static final byte NOP = 0x01;
             public static final byte BLOCK = 0x02;
             public static final byte LOOP = 0x03;
+            public static final byte BR = 0x0C;
             public static final byte BR_IF = 0x0D;
             public static final byte IF = 0x04;
             public static final byte ELSE = 0x05;
@@ -191,6 +203,31 @@ public final class BinaryFormat {
             public static final byte GROW_MEMORY = 0x40;
         }
 
+        /**
+         * Encoded as the prefix followed by the LEB128 encoded sub-opcode [bulk memory operations proposal]
+         */
+        public static final class BulkMemory {
+
+            public static final byte PREFIX = (byte) 0xFC;
+
+            /**
+             * Followed by the data segment index and a reserved 0x00 byte
+             */
+            public static final int MEMORY_INIT = 0x08;
+            /**
+             * Followed by the data segment index
+             */
+            public static final int DATA_DROP = 0x09;
+            /**
+             * Followed by two reserved 0x00 bytes
+             */
+            public static final int MEMORY_COPY = 0x0A;
+            /**
+             * Followed by a reserved 0x00 byte
+             */
+            public static final int MEMORY_FILL = 0x0B;
+        }
+
         /**
          * [WASM 5.4.5]
          */
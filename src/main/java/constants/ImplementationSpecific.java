@@ -8,8 +8,51 @@ public final class ImplementationSpecific {
     public static final class LinearMemory {
         /**
          * The maximum number of pages to be allocated for linear memory.
-         * This corresponds to a maximum of 8MiB of linear memory given a page size of 64KiB.
+         * This corresponds to the maximum of 4GiB of linear memory addressable by 32 bit addresses, given a page size
+         * of 64KiB.
          */
-        public static final int PAGE_COUNT_MAX = 128;
+        public static final int PAGE_COUNT_MAX = 65536;
+
+        /**
+         * Linear memories whose maximum number of pages does not exceed this are kept in one array on the Java heap,
+         * larger ones outside of it. This corresponds to 8MiB of linear memory given a page size of 64KiB.
+         */
+        public static final int HEAP_PAGE_COUNT_MAX = 128;
+    }
+
+    public static final class Interpreter {
+        /**
+         * The maximum number of nested function calls, a call exceeding it traps.
+         */
+        public static final int CALL_DEPTH_MAX = 16384;
+
+        /**
+         * The number of 32 bit values the value stack (holding the local variables, frame information and operands
+         * of all active functions) can hold. This corresponds to 4MiB of memory.
+         */
+        public static final int VALUE_STACK_SIZE = 1 << 20;
+    }
+
+    public static final class ExecutionEngine {
+        /**
+         * The stack size in bytes of the thread executing a WASM module. Every nested call of a compiled WASM
+         * function is a nested JVM method call, so it must be large enough for {@link Interpreter#CALL_DEPTH_MAX}
+         * calls.
+         */
+        public static final long THREAD_STACK_SIZE = 256L << 20;
+
+        /**
+         * The default number of calls of a function, or iterations of one of its loops, after which the tiered
+         * execution engine compiles it.
+         */
+        public static final int TIER_UP_THRESHOLD = 1000;
+    }
+
+    public static final class Parser {
+        /**
+         * The number of bytes of function bodies a task decoding them in parallel does not split further, so the
+         * overhead of a task stays small compared to the work it does.
+         */
+        public static final int DECODING_TASK_SIZE_MIN = 16 << 10;
     }
 }
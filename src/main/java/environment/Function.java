@@ -1,28 +1,74 @@
 package environment;
 
+import java.nio.ByteBuffer;
+
 /**
- * Stores instructions, number of parameters, local variables and return values of a single WASM function.
+ * Stores instructions (binary encoded and decoded), number of parameters, local variables and return values of a single WASM function.
+ *
+ * A parsed function is decoded when its code, local variables or stack height are needed for the first time, usually
+ * when it is called for the first time, see {@link #setDecoder(Decoder)}. Several threads may do so at once.
  */
 public class Function {
 
-    private byte[] instructions;
+    /**
+     * Decodes the binary encoded body of a function and sets its code, local variables and stack height.
+     */
+    public interface Decoder {
+        void decode(Function function);
+    }
+
+    private ByteBuffer instructions;
+    private int[] code;
     private int parameterCount;
     private int returnValueCount;
     private int localVariableCount;
+    private int maxStackHeight;
+
+    /**
+     * Decodes the function on first use, <code>null</code> once it has been decoded
+     */
+    private Decoder decoder;
+
+    /**
+     * Whether the decoder has run, the fields it sets are only read afterwards
+     */
+    private volatile boolean decoded = true;
+
+    /**
+     * Whether the decoder is running, so the thread running it reads the fields it has set so far
+     */
+    private boolean decoding = false;
 
     public Function(int parameterCount, int returnValueCount) {
         this.parameterCount = parameterCount;
         this.returnValueCount = returnValueCount;
     }
 
-    public byte[] getInstructions() {
+    /**
+     * @return the binary encoded function body, the declarations of the local variables followed by the instructions,
+     * usually a view of the mapped module file
+     */
+    public ByteBuffer getInstructions() {
         return instructions;
     }
 
-    public void setInstructions(byte[] instructions) {
+    public void setInstructions(ByteBuffer instructions) {
         this.instructions = instructions;
     }
 
+    /**
+     * @return the instructions of this function decoded into opcodes and immediates
+     * {@see parser.CodeDecoder}
+     */
+    public int[] getCode() {
+        decodeOnFirstUse();
+        return code;
+    }
+
+    public void setCode(int[] code) {
+        this.code = code;
+    }
+
     public int getParameterCount() {
         return parameterCount;
     }
@@ -40,10 +86,51 @@ public class Function {
     }
 
     public int getLocalVariableCount() {
+        decodeOnFirstUse();
         return localVariableCount;
     }
 
     public void setLocalVariableCount(int localVariableCount) {
         this.localVariableCount = localVariableCount;
     }
+
+    /**
+     * @return the maximum number of operands this function has on the operand stack at any time
+     */
+    public int getMaxStackHeight() {
+        decodeOnFirstUse();
+        return maxStackHeight;
+    }
+
+    public void setMaxStackHeight(int maxStackHeight) {
+        this.maxStackHeight = maxStackHeight;
+    }
+
+    /**
+     * Defers decoding the function until its code, local variables or stack height are needed.
+     */
+    public synchronized void setDecoder(Decoder decoder) {
+        this.decoder = decoder;
+        decoded = false;
+    }
+
+    private void decodeOnFirstUse() {
+        if (decoded) {
+            return;
+        }
+        synchronized (this) {
+            // the decoder itself reads the fields it has set so far
+            if (decoded || decoding) {
+                return;
+            }
+            decoding = true;
+            try {
+                decoder.decode(this);
+                decoder = null;
+                decoded = true;
+            } finally {
+                decoding = false;
+            }
+        }
+    }
 }
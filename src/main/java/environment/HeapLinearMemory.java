@@ -0,0 +1,178 @@
+package environment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static constants.WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES;
+
+/**
+ * A linear memory keeping the contents of all pages in one contiguous array on the Java heap, so an access never has
+ * to look up a page. Growing the memory copies the array, so it is meant for small memories.
+ *
+ * A fork shares the array with the memory it was forked from until one of them writes to it, which then copies the
+ * whole array. The array may be larger than the current memory size after a {@link #reset()}.
+ */
+public class HeapLinearMemory extends LinearMemory {
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_SIZE_BYTES);
+
+    private byte[] memory = new byte[0];
+
+    /**
+     * A little endian view on <code>memory</code> reading and writing 2 and 4 bytes values in a single access
+     */
+    private ByteBuffer view = ByteBuffer.wrap(memory).order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * Whether <code>memory</code> may be shared with a fork, so it has to be copied before it is written
+     */
+    private boolean shared = false;
+
+    /**
+     * The contents at the last {@link #markBaseline()}, never written
+     */
+    private byte[] baseline;
+
+    public HeapLinearMemory(int initialPageCount, int maxPageCount) {
+        super(maxPageCount);
+        if (growMemory(initialPageCount) < 0) {
+            throw new IllegalArgumentException("Initial Linear Memory page count must not be greater than the maximum");
+        }
+    }
+
+    private HeapLinearMemory(HeapLinearMemory other) {
+        super(other);
+        memory = other.memory;
+        view = ByteBuffer.wrap(memory).order(ByteOrder.LITTLE_ENDIAN);
+        shared = true;
+    }
+
+    @Override
+    public LinearMemory fork() {
+        shared = true;
+        return new HeapLinearMemory(this);
+    }
+
+    @Override
+    protected void saveBaseline() {
+        // shared with the baseline until the next store
+        baseline = memory;
+        shared = true;
+    }
+
+    @Override
+    protected void restorePage(int page) {
+        copyIfShared();
+        System.arraycopy(baseline, page * PAGE_SIZE_BYTES, memory, page * PAGE_SIZE_BYTES, PAGE_SIZE_BYTES);
+    }
+
+    @Override
+    protected void dropPages(int fromPage, int toPage) {
+        // the pages are zeroed when the memory grows again
+    }
+
+    @Override
+    protected ByteBuffer pageContents(int page) {
+        return ByteBuffer.wrap(memory, page * PAGE_SIZE_BYTES, PAGE_SIZE_BYTES);
+    }
+
+    @Override
+    protected void loadPage(int page, ByteBuffer contents) {
+        copyIfShared();
+        contents.duplicate().get(memory, page * PAGE_SIZE_BYTES, PAGE_SIZE_BYTES);
+    }
+
+    @Override
+    protected void allocatePages(int oldPageCount, int newPageCount) {
+        int size = newPageCount * PAGE_SIZE_BYTES;
+        if (shared || size > memory.length) {
+            memory = Arrays.copyOf(memory, Math.max(size, memory.length));
+            view = ByteBuffer.wrap(memory).order(ByteOrder.LITTLE_ENDIAN);
+            shared = false;
+        }
+        // the array may still hold pages dropped by a reset
+        Arrays.fill(memory, oldPageCount * PAGE_SIZE_BYTES, size, (byte) 0);
+    }
+
+    @Override
+    public int load(int address, int alignment, int offset, int byteCount, SIGNEDNESS signedness) {
+        return loadInBounds((int) effectiveAddressOrThrowException(address, offset, byteCount), byteCount, signedness);
+    }
+
+    @Override
+    public int loadInBounds(int effectiveAddress, int byteCount, SIGNEDNESS signedness) {
+        switch (byteCount) {
+            case 4:
+                return view.getInt(effectiveAddress);
+            case 2:
+                short halfWord = view.getShort(effectiveAddress);
+                return signedness == SIGNEDNESS.SIGNED ? halfWord : halfWord & 0xFFFF;
+            case 1:
+                byte singleByte = memory[effectiveAddress];
+                return signedness == SIGNEDNESS.SIGNED ? singleByte : singleByte & 0xFF;
+            default:
+                throw new IllegalArgumentException("Linear memory accesses must be 1, 2 or 4 bytes wide!");
+        }
+    }
+
+    @Override
+    public void store(int address, int alignment, int offset, int byteCount, int value) {
+        storeInBounds((int) effectiveAddressOrThrowException(address, offset, byteCount), byteCount, value);
+    }
+
+    @Override
+    public void storeInBounds(int effectiveAddress, int byteCount, int value) {
+        copyIfShared();
+        // a value may span two pages
+        markWritten(effectiveAddress >>> PAGE_SHIFT);
+        markWritten((effectiveAddress + byteCount - 1) >>> PAGE_SHIFT);
+
+        switch (byteCount) {
+            case 4:
+                view.putInt(effectiveAddress, value);
+                break;
+            case 2:
+                view.putShort(effectiveAddress, (short) value);
+                break;
+            case 1:
+                memory[effectiveAddress] = (byte) value;
+                break;
+            default:
+                throw new IllegalArgumentException("Linear memory accesses must be 1, 2 or 4 bytes wide!");
+        }
+    }
+
+    @Override
+    public void copy(int destination, int source, int length) {
+        int sourceStart = (int) rangeOrThrowException(source, length);
+        int destinationStart = (int) rangeOrThrowException(destination, length);
+        copyIfShared();
+        markWritten(destinationStart, length);
+        // arraycopy copies overlapping ranges as if through a temporary array
+        System.arraycopy(memory, sourceStart, memory, destinationStart, length);
+    }
+
+    @Override
+    public void fill(int destination, int value, int length) {
+        int destinationStart = (int) rangeOrThrowException(destination, length);
+        copyIfShared();
+        markWritten(destinationStart, length);
+        Arrays.fill(memory, destinationStart, destinationStart + length, (byte) value);
+    }
+
+    @Override
+    public void init(int destination, byte[] data, int offset, int length) {
+        dataRangeOrThrowException(data, offset, length);
+        int destinationStart = (int) rangeOrThrowException(destination, length);
+        copyIfShared();
+        markWritten(destinationStart, length);
+        System.arraycopy(data, offset, memory, destinationStart, length);
+    }
+
+    private void copyIfShared() {
+        if (shared) {
+            // copies the array
+            allocatePages(currentMemory(), currentMemory());
+        }
+    }
+}
@@ -1,9 +1,19 @@
 package environment;
 
 
+import constants.ImplementationSpecific;
+
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import static constants.ImplementationSpecific.LinearMemory.PAGE_COUNT_MAX;
@@ -13,8 +23,14 @@ import static constants.WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES;
  * A linear memory is a contiguous, byte-addressable range of memory spanning from offset 0 and extending up to a
  * varying memory size. This size is always a multiple of the WebAssembly page
  * {@see WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES}.
+ *
+ * The subclasses store the contents: small memories in one array on the Java heap ({@link HeapLinearMemory}), large
+ * ones outside of the Java heap ({@link OffHeapLinearMemory}), see {@link #create(int, int)}.
+ *
+ * The memory tracks which pages are written between baselines and checkpoints, so {@link #reset()} and
+ * {@link #checkpoint(FileChannel)} only need to copy those pages.
  */
-public class LinearMemory {
+public abstract class LinearMemory {
     public enum SIGNEDNESS {
         SIGNED,
         UNSIGNED
@@ -23,18 +39,62 @@ public class LinearMemory {
     /**
      * Maximum number of pages allowed for this linear memory instance
      */
-    private int maxPageCount = PAGE_COUNT_MAX;
+    private final int maxPageCount;
 
     /**
-     * List of pages (byte arrays) that is "allocated". allocatedPages.size() must always be less or equal maxPageCount
+     * Number of pages currently allocated, always less or equal maxPageCount
      */
-    private List<byte[]> allocatedPages = new ArrayList<>();
+    private int pageCount = 0;
 
-    public LinearMemory(int initialPageCount) {
-        this(initialPageCount, PAGE_COUNT_MAX);
-    }
+    /**
+     * Starts with 1 and counts up with every baseline, reset and checkpoint
+     */
+    private int epoch = 1;
+
+    /**
+     * The epoch each page has been written in last, 0 if it has not been written, indexed by page number
+     */
+    private int[] pageEpochs = new int[0];
+
+    /**
+     * Number of pages at the last {@link #markBaseline()}, -1 if there was none
+     */
+    private int baselinePageCount = -1;
+
+    /**
+     * The epoch of the last baseline or reset, pages written in later epochs differ from the baseline
+     */
+    private int baselineEpoch;
+
+    /**
+     * The epoch of the last checkpoint, pages written in later epochs differ from it
+     */
+    private int checkpointEpoch = 0;
+
+    /**
+     * The smallest number of pages since the last checkpoint, the pages behind it have been dropped by a reset
+     */
+    private int checkpointPageCountMin = 0;
+
+    /**
+     * Identifies a checkpoint written by {@link #checkpoint(FileChannel)}
+     */
+    private static final int CHECKPOINT_MAGIC = 0x4A574350;
+
+    /**
+     * The magic number, maximum page count, page count, number of kept pages and number of saved pages
+     */
+    private static final int CHECKPOINT_HEADER_SIZE = 5 * Integer.BYTES;
 
-    public LinearMemory(int initialPageCount, int maxPageCount) {
+    /**
+     * The number of buffers {@link #writeTo(WritableByteChannel, long, long)} passes to a single gathering write
+     */
+    private static final int DUMP_BUFFER_COUNT_MAX = 1024;
+
+    /**
+     * The subclasses allocate the initial pages with {@link #growMemory(int)} once they are initialized.
+     */
+    protected LinearMemory(int maxPageCount) {
         if (maxPageCount > PAGE_COUNT_MAX) {
             throw new IllegalArgumentException("Maximum Linear Memory page count must not be" +
                 "greater than " + PAGE_COUNT_MAX);
@@ -44,11 +104,328 @@ public class LinearMemory {
         }
 
         this.maxPageCount = maxPageCount;
-        allocatePages(initialPageCount);
     }
 
-    public List<byte[]> getAllocatedPages() {
-        return allocatedPages;
+    /**
+     * Takes over the size and maximum of <code>other</code>, used by the subclasses to implement {@link #fork()}.
+     */
+    protected LinearMemory(LinearMemory other) {
+        this.maxPageCount = other.maxPageCount;
+        this.pageCount = other.pageCount;
+        this.epoch = other.epoch;
+        this.pageEpochs = other.pageEpochs.clone();
+    }
+
+    /**
+     * Creates a linear memory that is kept on the Java heap if its maximum is small enough, outside of it otherwise.
+     *
+     * @param initialPageCount the number of pages allocated right away
+     * @param maxPageCount     the number of pages the memory can grow to
+     */
+    public static LinearMemory create(int initialPageCount, int maxPageCount) {
+        if (maxPageCount <= ImplementationSpecific.LinearMemory.HEAP_PAGE_COUNT_MAX) {
+            return new HeapLinearMemory(initialPageCount, maxPageCount);
+        }
+        return new OffHeapLinearMemory(initialPageCount, maxPageCount);
+    }
+
+    /**
+     * Creates a memory with the same size, maximum and contents as this one. The contents are shared copy-on-write:
+     * neither memory sees the writes of the other, and shared contents are copied only when they are written.
+     *
+     * @return the new memory
+     */
+    public abstract LinearMemory fork();
+
+    /**
+     * Remembers the current size and contents as the baseline that {@link #reset()} restores. From now on the memory
+     * tracks which pages are written.
+     */
+    public void markBaseline() {
+        saveBaseline();
+        baselinePageCount = pageCount;
+        baselineEpoch = epoch;
+        startNextEpoch();
+    }
+
+    /**
+     * Restores the size and contents of the last baseline, only copying back the pages written since then. A module
+     * instance can execute again after resetting its memory without being parsed again.
+     *
+     * @throws IllegalStateException if no baseline has been marked
+     */
+    public void reset() {
+        if (baselinePageCount < 0) {
+            throw new IllegalStateException("No baseline to reset the linear memory to!");
+        }
+        int restoredPageCount = Math.min(pageCount, baselinePageCount);
+        for (int page = 0; page < restoredPageCount; page++) {
+            if (pageEpochs[page] > baselineEpoch) {
+                restorePage(page);
+                // the page differs from the last checkpoint now
+                pageEpochs[page] = epoch;
+            }
+        }
+        if (pageCount > baselinePageCount) {
+            dropPages(baselinePageCount, pageCount);
+        }
+        pageCount = baselinePageCount;
+        checkpointPageCountMin = Math.min(checkpointPageCountMin, pageCount);
+
+        baselineEpoch = epoch;
+        startNextEpoch();
+    }
+
+    /**
+     * Appends a checkpoint of the memory to the file, which only contains the pages written since the last
+     * checkpoint, so the memory can be restored from the file's checkpoints with {@link #restore(FileChannel)}. The
+     * pages are written with a single gathering write, the channel should be opened for appending.
+     *
+     * @param channel the file to append the checkpoint to
+     * @throws IOException if writing to the file fails
+     */
+    public void checkpoint(FileChannel channel) throws IOException {
+        List<ByteBuffer> pages = new ArrayList<>();
+        List<Integer> pageNumbers = new ArrayList<>();
+        for (int page = 0; page < pageCount; page++) {
+            if (pageEpochs[page] > checkpointEpoch) {
+                pages.add(pageContents(page));
+                pageNumbers.add(page);
+            }
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(CHECKPOINT_HEADER_SIZE + pageNumbers.size() * Integer.BYTES);
+        header.putInt(CHECKPOINT_MAGIC)
+            .putInt(maxPageCount)
+            .putInt(pageCount)
+            .putInt(checkpointPageCountMin)
+            .putInt(pageNumbers.size());
+        for (int pageNumber : pageNumbers) {
+            header.putInt(pageNumber);
+        }
+        header.flip();
+        pages.add(0, header);
+
+        ByteBuffer[] buffers = pages.toArray(new ByteBuffer[0]);
+        while (buffers[buffers.length - 1].hasRemaining()) {
+            channel.write(buffers);
+        }
+
+        checkpointEpoch = epoch;
+        checkpointPageCountMin = pageCount;
+        startNextEpoch();
+    }
+
+    /**
+     * Creates a memory with the contents of the last checkpoint in the file, by mapping the file and taking every
+     * page from the last checkpoint that saved it. A checkpoint at the end of the file that was not written completely
+     * is ignored.
+     *
+     * @param channel the file written by {@link #checkpoint(FileChannel)}
+     * @return the restored memory, its next checkpoint only contains the pages written after restoring it
+     * @throws IOException if reading the file fails or it does not contain checkpoints
+     */
+    public static LinearMemory restore(FileChannel channel) throws IOException {
+        ByteBuffer checkpoints = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        ByteBuffer[] latestPages = new ByteBuffer[0];
+        int maxPageCount = -1;
+        int pageCount = 0;
+
+        while (checkpoints.remaining() >= CHECKPOINT_HEADER_SIZE) {
+            int start = checkpoints.position();
+            if (checkpoints.getInt() != CHECKPOINT_MAGIC) {
+                throw new IOException("Not a linear memory checkpoint at position " + start + "!");
+            }
+            int checkpointMaxPageCount = checkpoints.getInt();
+            int checkpointPageCount = checkpoints.getInt();
+            int keptPageCount = checkpoints.getInt();
+            int savedPageCount = checkpoints.getInt();
+
+            int pagesStart = checkpoints.position() + savedPageCount * Integer.BYTES;
+            if (checkpoints.limit() - pagesStart < (long) savedPageCount * PAGE_SIZE_BYTES) {
+                break;
+            }
+
+            maxPageCount = checkpointMaxPageCount;
+            pageCount = checkpointPageCount;
+            if (latestPages.length < pageCount) {
+                latestPages = Arrays.copyOf(latestPages, pageCount);
+            }
+            Arrays.fill(latestPages, Math.min(keptPageCount, latestPages.length), latestPages.length, null);
+            for (int i = 0; i < savedPageCount; i++) {
+                ByteBuffer page = checkpoints.duplicate();
+                page.position(pagesStart + i * PAGE_SIZE_BYTES);
+                page.limit(page.position() + PAGE_SIZE_BYTES);
+                latestPages[checkpoints.getInt()] = page.slice().order(ByteOrder.LITTLE_ENDIAN);
+            }
+            checkpoints.position(pagesStart + savedPageCount * PAGE_SIZE_BYTES);
+        }
+
+        if (maxPageCount < 0) {
+            throw new IOException("The file does not contain a linear memory checkpoint!");
+        }
+        LinearMemory memory = create(pageCount, maxPageCount);
+        for (int page = 0; page < pageCount; page++) {
+            if (latestPages[page] != null) {
+                memory.loadPage(page, latestPages[page]);
+            }
+        }
+        memory.checkpointPageCountMin = pageCount;
+        return memory;
+    }
+
+    /**
+     * Takes over which pages of <code>other</code> have been written since its last checkpoint, and the pages its last
+     * checkpoint kept, used by the subclasses that are created with the contents of another memory. The next
+     * checkpoint of this memory then contains the same pages as the next checkpoint of <code>other</code> would.
+     */
+    protected final void takeOverCheckpointState(LinearMemory other) {
+        epoch = other.epoch;
+        pageEpochs = Arrays.copyOf(other.pageEpochs, Math.max(pageEpochs.length, other.pageEpochs.length));
+        checkpointEpoch = other.checkpointEpoch;
+        checkpointPageCountMin = other.checkpointPageCountMin;
+        // the contents were copied without marking the pages, the pages written from now on must be marked again
+        startNextEpoch();
+    }
+
+    /**
+     * Marks a page as written, the subclasses call this for every page they write to. They only need to mark a page
+     * once per epoch, see {@link #epochStarted()}.
+     */
+    protected final void markWritten(int page) {
+        pageEpochs[page] = epoch;
+    }
+
+    private void startNextEpoch() {
+        epoch++;
+        epochStarted();
+    }
+
+    /**
+     * Called when a new epoch has started, so pages written from now on must be marked again.
+     */
+    protected void epochStarted() {
+    }
+
+    /**
+     * Keeps the current contents as baseline.
+     */
+    protected abstract void saveBaseline();
+
+    /**
+     * Restores the baseline contents of a page.
+     */
+    protected abstract void restorePage(int page);
+
+    /**
+     * Drops the pages allocated since the baseline.
+     */
+    protected abstract void dropPages(int fromPage, int toPage);
+
+    /**
+     * @return a buffer holding the contents of the page between its position and limit, which must not be written
+     */
+    protected abstract ByteBuffer pageContents(int page);
+
+    /**
+     * Sets the contents of a page while restoring a checkpoint, without marking it as written.
+     *
+     * @param contents the contents of the page, never written, so the memory may keep it until it writes the page
+     */
+    protected abstract void loadPage(int page, ByteBuffer contents);
+
+    /**
+     * Writes the contents of all allocated pages to the stream.
+     *
+     * @param out the stream to write to
+     * @throws IOException if writing to the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(Channels.newChannel(out), 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Writes the contents of a range of bytes to the channel without copying them, using gathering writes if the
+     * channel supports them. Pages that have never been written are skipped instead of written if the channel is
+     * seekable and positioned at its end, which leaves a sparse file for a file channel.
+     *
+     * @param channel the channel to write to
+     * @param start   the index of the first byte to write
+     * @param end     the index behind the last byte to write, the range ends at the memory size at the latest
+     * @throws IOException if writing to the channel fails
+     */
+    public void writeTo(WritableByteChannel channel, long start, long end) throws IOException {
+        if (start < 0) {
+            throw new IllegalArgumentException("The range to write must not start before index 0!");
+        }
+        end = Math.min(end, (long) pageCount * PAGE_SIZE_BYTES);
+
+        SeekableByteChannel seekableChannel = null;
+        if (channel instanceof SeekableByteChannel
+            && ((SeekableByteChannel) channel).position() == ((SeekableByteChannel) channel).size()) {
+            seekableChannel = (SeekableByteChannel) channel;
+        }
+
+        List<ByteBuffer> buffers = new ArrayList<>();
+        boolean skippedLastBytes = false;
+        for (long address = start; address < end; ) {
+            int page = (int) (address / PAGE_SIZE_BYTES);
+            long pageStart = (long) page * PAGE_SIZE_BYTES;
+            long rangeEnd = Math.min(pageStart + PAGE_SIZE_BYTES, end);
+
+            if (seekableChannel != null && isZeroPage(page)) {
+                write(channel, buffers);
+                seekableChannel.position(seekableChannel.position() + rangeEnd - address);
+                skippedLastBytes = true;
+            } else {
+                ByteBuffer contents = pageContents(page);
+                int contentsStart = contents.position();
+                contents.limit(contentsStart + (int) (rangeEnd - pageStart));
+                contents.position(contentsStart + (int) (address - pageStart));
+                buffers.add(contents);
+                skippedLastBytes = false;
+                if (buffers.size() == DUMP_BUFFER_COUNT_MAX) {
+                    write(channel, buffers);
+                }
+            }
+            address = rangeEnd;
+        }
+        write(channel, buffers);
+
+        if (skippedLastBytes) {
+            // the skipped bytes only count if a byte follows them
+            seekableChannel.position(seekableChannel.position() - 1);
+            ByteBuffer lastByte = ByteBuffer.allocate(1);
+            while (lastByte.hasRemaining()) {
+                channel.write(lastByte);
+            }
+        }
+    }
+
+    private static void write(WritableByteChannel channel, List<ByteBuffer> buffers) throws IOException {
+        if (buffers.isEmpty()) {
+            return;
+        }
+        if (channel instanceof GatheringByteChannel) {
+            ByteBuffer[] bufferArray = buffers.toArray(new ByteBuffer[0]);
+            while (bufferArray[bufferArray.length - 1].hasRemaining()) {
+                ((GatheringByteChannel) channel).write(bufferArray);
+            }
+        } else {
+            for (ByteBuffer buffer : buffers) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        }
+        buffers.clear();
+    }
+
+    /**
+     * @return whether the page has never been written, so it only contains zeros
+     */
+    protected boolean isZeroPage(int page) {
+        return false;
     }
 
     /**
@@ -57,7 +434,11 @@ public class LinearMemory {
      * @return number of linear memory pages currently allocated.
      */
     public int currentMemory() {
-        return allocatedPages.size();
+        return pageCount;
+    }
+
+    public int getMaxPageCount() {
+        return maxPageCount;
     }
 
     /**
@@ -67,21 +448,28 @@ public class LinearMemory {
      * @return the previous memory size in units of pages or -1 on failure
      */
     public int growMemory(int deltaPages) {
-        if (allocatedPages.size() + deltaPages > maxPageCount) {
+        if (pageCount + Integer.toUnsignedLong(deltaPages) > maxPageCount) {
             return -1;
         }
 
-        int oldPageCount = allocatedPages.size();
-        allocatePages(deltaPages);
+        int oldPageCount = pageCount;
+        if (oldPageCount + deltaPages > pageEpochs.length) {
+            pageEpochs = Arrays.copyOf(pageEpochs, Math.min(Math.max(oldPageCount + deltaPages, 2 * pageEpochs.length),
+                maxPageCount));
+        }
+        allocatePages(oldPageCount, oldPageCount + deltaPages);
+        pageCount = oldPageCount + deltaPages;
 
         return oldPageCount;
     }
 
-    private void allocatePages(int pageCount) {
-        for (int i = 0; i < pageCount; i++) {
-            allocatedPages.add(new byte[PAGE_SIZE_BYTES]);
-        }
-    }
+    /**
+     * Allocates zeroed pages, keeping the contents of the pages allocated before.
+     *
+     * @param oldPageCount the number of pages allocated so far
+     * @param newPageCount the number of pages allocated afterwards
+     */
+    protected abstract void allocatePages(int oldPageCount, int newPageCount);
 
     /**
      * Loads <code>byteCount</code> number of bytes at <code>address + offset</code> from linear memory, interpretes it
@@ -94,52 +482,12 @@ public class LinearMemory {
      * @param address   the index (starting at zero) into the linear memory specifying the starting point for the load
      * @param alignment ignored
      * @param offset    added to the address to get the actual load address
-     * @param byteCount the number of bytes to read, at most 4
+     * @param byteCount the number of bytes to read: 1, 2 or 4
      * @param signedness  determines wether the returned value is to be interpreted as signed or unsigned and sing-extend
      *                  it if byteCount is smaller than 4
      * @return the value read from linear memory, possibly sign-extended
      */
-    public int load(int address, int alignment, int offset, int byteCount, SIGNEDNESS signedness) {
-        validateBoundsOrThrowException(address, offset, byteCount);
-
-        /* WebAssembly interpretes the address and offset as unsigned values and their sum as infinite precision
-         * unsigned value, therefor we need the following conversions to get the right page and offset in that page */
-
-        long effectiveAddressUnsigned = Integer.toUnsignedLong(address) + Integer.toUnsignedLong(offset);
-
-        // expects PAGE_SIZE_BYTES <= Integer.MAX_VALUE
-        int smallestPageOffset =
-            (int) (effectiveAddressUnsigned % Integer.toUnsignedLong(PAGE_SIZE_BYTES));
-
-        // expects PAGE_SIZE_BYTES >= 2
-        int pageNumber = (int) (effectiveAddressUnsigned / Integer.toUnsignedLong(PAGE_SIZE_BYTES));
-        byte[] page = allocatedPages.get(pageNumber);
-
-        final int bytesInI32 = 4;
-        ByteBuffer b = ByteBuffer.allocate(bytesInI32);
-        b.order(ByteOrder.LITTLE_ENDIAN);
-        final byte msbMask = (byte) 0x80;
-        byte msb = 0;
-        for (int i = 0; i < byteCount; i++) {
-            int currentPageOffset = (smallestPageOffset + i) % PAGE_SIZE_BYTES;
-            b.put(page[currentPageOffset]);
-            msb = (byte) (page[currentPageOffset] & msbMask);
-
-            int nextPageOffset = (currentPageOffset + 1) % PAGE_SIZE_BYTES;
-            if (nextPageOffset < currentPageOffset) {
-                // We've red the last value on this page, the next value is on the preceeding page
-                page = allocatedPages.get(pageNumber + 1);
-            }
-        }
-
-        if (signedness.equals(SIGNEDNESS.SIGNED) && msb != 0) {
-            for (int i = byteCount; i < bytesInI32; i++) {
-                b.put((byte) 0xFF);
-            }
-        }
-
-        return b.getInt(0);
-    }
+    public abstract int load(int address, int alignment, int offset, int byteCount, SIGNEDNESS signedness);
 
     /**
      * Stores <code>byteCount</code> number of bytes containg <code>value</code> at <code>address + offset</code> in
@@ -150,61 +498,110 @@ public class LinearMemory {
      * @param address   the index (starting at zero) into the linear memory specifying the starting point for the store
      * @param alignment ignored
      * @param offset    added to the address to get the actual store address
-     * @param byteCount the number of bytes to store, at most 4
+     * @param byteCount the number of bytes to store: 1, 2 or 4
      * @param value     the value to store, possibly wrapped
      */
-    public void store(int address, int alignment, int offset, int byteCount, int value) {
-        validateBoundsOrThrowException(address, offset, byteCount);
+    public abstract void store(int address, int alignment, int offset, int byteCount, int value);
 
-        /* WebAssembly interpretes the address and offset as unsigned values and their sum as infinite precision
-         * unsigned value, therefor we need the following conversions to get the right page and offset in that page */
+    /**
+     * Loads like {@link #load(int, int, int, int, SIGNEDNESS)} from an address proven to be in bounds, see
+     * {@link parser.BoundsCheckElimination}, without checking it.
+     *
+     * @param effectiveAddress the non-negative sum of the address and the offset
+     */
+    public abstract int loadInBounds(int effectiveAddress, int byteCount, SIGNEDNESS signedness);
 
-        long effectiveAddressUnsigned = Integer.toUnsignedLong(address) + Integer.toUnsignedLong(offset);
+    /**
+     * Stores like {@link #store(int, int, int, int, int)} at an address proven to be in bounds, see
+     * {@link parser.BoundsCheckElimination}, without checking it.
+     *
+     * @param effectiveAddress the non-negative sum of the address and the offset
+     */
+    public abstract void storeInBounds(int effectiveAddress, int byteCount, int value);
 
-        // expects PAGE_SIZE_BYTES <= Integer.MAX_VALUE
-        int smallestPageOffset =
-            (int) ((effectiveAddressUnsigned) % Integer.toUnsignedLong(PAGE_SIZE_BYTES));
+    /**
+     * Copies <code>length</code> bytes from <code>source</code> to <code>destination</code> [memory.copy], the ranges
+     * may overlap. All values are interpreted as unsigned, nothing is copied if one of the ranges is out of bounds.
+     *
+     * @throws IndexOutOfBoundsException if one of the ranges is out of bounds
+     */
+    public abstract void copy(int destination, int source, int length);
 
-        // expects PAGE_SIZE_BYTES >= 2
-        int pageNumber = (int) (effectiveAddressUnsigned / Integer.toUnsignedLong(PAGE_SIZE_BYTES));
-        byte[] page = allocatedPages.get(pageNumber);
+    /**
+     * Sets <code>length</code> bytes at <code>destination</code> to the lowest byte of <code>value</code>
+     * [memory.fill]. The destination and length are interpreted as unsigned, nothing is written if the range is out of
+     * bounds.
+     *
+     * @throws IndexOutOfBoundsException if the range is out of bounds
+     */
+    public abstract void fill(int destination, int value, int length);
 
-        final int bytesInI32 = 4;
-        ByteBuffer b = ByteBuffer.allocate(bytesInI32);
-        b.order(ByteOrder.LITTLE_ENDIAN);
-        b.putInt(value);
+    /**
+     * Copies <code>length</code> bytes of <code>data</code> starting at <code>offset</code> to
+     * <code>destination</code> [memory.init]. All values are interpreted as unsigned, nothing is copied if one of the
+     * ranges is out of bounds.
+     *
+     * @throws IndexOutOfBoundsException if one of the ranges is out of bounds
+     */
+    public abstract void init(int destination, byte[] data, int offset, int length);
 
-        byte[] data = b.array();
-        for (int i = 0; i < byteCount; i++) {
-            int currentPageOffset = (smallestPageOffset + i) % PAGE_SIZE_BYTES;
+    /**
+     * Checks the range of a bulk operation against the memory size, a range of zero bytes may start at the end of the
+     * memory.
+     *
+     * @return the index of the first byte of the range in the memory
+     */
+    protected final long rangeOrThrowException(int address, int length) {
+        long start = Integer.toUnsignedLong(address);
+        long end = start + Integer.toUnsignedLong(length);
+        if (end > (long) pageCount * PAGE_SIZE_BYTES) {
+            throw new IndexOutOfBoundsException("Linear memory access is out of bounds! [range: " + start + " - "
+                + end + "; size: " + (long) pageCount * PAGE_SIZE_BYTES);
+        }
+        return start;
+    }
 
-            page[currentPageOffset] = data[i];
+    /**
+     * Checks the range of the data copied by {@link #init(int, byte[], int, int)}.
+     */
+    protected static void dataRangeOrThrowException(byte[] data, int offset, int length) {
+        long end = Integer.toUnsignedLong(offset) + Integer.toUnsignedLong(length);
+        if (end > data.length) {
+            throw new IndexOutOfBoundsException("Data segment access is out of bounds! [range: "
+                + Integer.toUnsignedLong(offset) + " - " + end + "; size: " + data.length);
+        }
+    }
 
-            int nextPageOffset = (currentPageOffset + 1) % PAGE_SIZE_BYTES;
-            if (nextPageOffset < currentPageOffset) {
-                // We've red the last value on this page, the next value is on the preceeding page
-                page = allocatedPages.get(pageNumber + 1);
-            }
+    /**
+     * Marks all pages of a range of bytes as written, see {@link #markWritten(int)}.
+     */
+    protected final void markWritten(long start, long length) {
+        if (length == 0) {
+            return;
+        }
+        int lastPage = (int) ((start + length - 1) / PAGE_SIZE_BYTES);
+        for (int page = (int) (start / PAGE_SIZE_BYTES); page <= lastPage; page++) {
+            markWritten(page);
         }
     }
 
-    private void validateBoundsOrThrowException(int address, int offset, int byteCount) {
-        long addressUnsigned = Integer.toUnsignedLong(address);
-        long offestUnsigned = Integer.toUnsignedLong(offset);
-        long byteCountUnsigned = Integer.toUnsignedLong(byteCount);
+    /**
+     * WebAssembly interpretes the address and offset as unsigned values and their sum as infinite precision unsigned
+     * value, so the sum is computed as long and checked against the memory size.
+     *
+     * @return the index of the first accessed byte in the memory
+     */
+    protected final long effectiveAddressOrThrowException(int address, int offset, int byteCount) {
+        long effectiveAddress = Integer.toUnsignedLong(address) + Integer.toUnsignedLong(offset);
 
         // (- 1) becaus those are indices starting at 0
-        long biggestValidIndex = (allocatedPages.size() * PAGE_SIZE_BYTES) - 1;
-        long biggestAccessedIndex = addressUnsigned + offestUnsigned + byteCountUnsigned - 1;
-
-        if ((addressUnsigned + offestUnsigned) < 0) {
-            throw new IndexOutOfBoundsException("Linear memory access is out of bounds! [value: "
-                + (address + offset) + "; min allowed: 0");
-        }
+        long biggestValidIndex = (long) pageCount * PAGE_SIZE_BYTES - 1;
+        long biggestAccessedIndex = effectiveAddress + byteCount - 1;
 
         if (biggestAccessedIndex > biggestValidIndex) {
             throw new IndexOutOfBoundsException("Linear memory access is out of bounds! [value: "
                 + biggestAccessedIndex + "; max allowed: " + biggestValidIndex);
         }
+        return effectiveAddress;
     }
 }
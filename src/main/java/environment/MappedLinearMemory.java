@@ -0,0 +1,201 @@
+package environment;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static constants.WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES;
+
+/**
+ * A linear memory living in a memory-mapped file, so other processes can observe its contents while a module is
+ * executing, e.g. with a file in <code>/dev/shm</code>. Writes go straight to the mapped pages, nothing is copied.
+ *
+ * The file starts with a header of {@link #HEADER_SIZE} bytes, followed by the pages. The header holds, in big endian:
+ *
+ * <ul>
+ * <li>offset 0: the magic number <code>0x4A574C4D</code></li>
+ * <li>offset 4: the page size in bytes</li>
+ * <li>offset 8: the maximum page count</li>
+ * <li>offset 12: the current page count</li>
+ * <li>offset 16: the generation, a long that is incremented whenever the page count changes or the memory is reset</li>
+ * </ul>
+ *
+ * The file is never shrunk, it may hold more pages than the current page count.
+ */
+public class MappedLinearMemory extends PagedLinearMemory {
+
+    /**
+     * The size of the header, so the pages are aligned to the pages of the operating system
+     */
+    public static final int HEADER_SIZE = 4096;
+
+    private static final int MAGIC = 0x4A574C4D;
+    private static final int PAGE_COUNT_OFFSET = 12;
+    private static final int GENERATION_OFFSET = 16;
+
+    /**
+     * The number of pages mapped at once at most, as a single mapping cannot be larger than 2GiB
+     */
+    private static final int MAPPING_PAGE_COUNT_MAX = 16384;
+
+    /**
+     * The contents of a dropped page
+     */
+    private static final ByteBuffer ZERO_PAGE = ByteBuffer.allocate(PAGE_SIZE_BYTES);
+
+    private final File file;
+    private final MappedByteBuffer header;
+
+    /**
+     * The number of pages mapped so far, the pages dropped by a reset stay mapped
+     */
+    private int mappedPageCount = 0;
+
+    /**
+     * Whether a page has been marked as written in the current epoch, see {@link LinearMemory#markWritten(int)}
+     */
+    private boolean[] dirtyPages = new boolean[0];
+
+    /**
+     * The baseline contents of the pages written since the last {@link #markBaseline()}, a page is copied before it
+     * is written for the first time
+     */
+    private ByteBuffer[] baselinePages;
+
+    /**
+     * Creates a memory in the file, replacing its contents, with the size, maximum and contents of another memory. Its
+     * next checkpoint contains the same pages as the next checkpoint of the other memory would.
+     *
+     * @param file     the file to map
+     * @param contents the memory to copy
+     * @throws IOException if the file cannot be mapped
+     */
+    public MappedLinearMemory(File file, LinearMemory contents) throws IOException {
+        super(contents.getMaxPageCount());
+        this.file = file;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        }
+        header.putInt(0, MAGIC);
+        header.putInt(4, PAGE_SIZE_BYTES);
+        header.putInt(8, getMaxPageCount());
+
+        growMemory(contents.currentMemory());
+        for (int page = 0; page < contents.currentMemory(); page++) {
+            pages[page].put(contents.pageContents(page)).rewind();
+        }
+        takeOverCheckpointState(contents);
+    }
+
+    @Override
+    public LinearMemory fork() {
+        // the fork must not see the writes to the file, so its pages are copied right away
+        LinearMemory fork = create(currentMemory(), getMaxPageCount());
+        for (int page = 0; page < currentMemory(); page++) {
+            fork.loadPage(page, copyOf(pages[page]));
+        }
+        return fork;
+    }
+
+    @Override
+    public int growMemory(int deltaPages) {
+        int oldPageCount = super.growMemory(deltaPages);
+        if (oldPageCount >= 0) {
+            publishPageCount();
+        }
+        return oldPageCount;
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        publishPageCount();
+    }
+
+    private void publishPageCount() {
+        header.putInt(PAGE_COUNT_OFFSET, currentMemory());
+        header.putLong(GENERATION_OFFSET, header.getLong(GENERATION_OFFSET) + 1);
+    }
+
+    @Override
+    protected void allocatePages(int oldPageCount, int newPageCount) {
+        growPageTable(newPageCount);
+        if (dirtyPages.length < pages.length) {
+            dirtyPages = Arrays.copyOf(dirtyPages, pages.length);
+        }
+        if (newPageCount <= mappedPageCount) {
+            // pages dropped by a reset, they have been zeroed
+            return;
+        }
+
+        // mapping a region behind the end of the file extends it with zeros
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+            StandardOpenOption.WRITE)) {
+            while (mappedPageCount < newPageCount) {
+                int mappingPageCount = Math.min(newPageCount - mappedPageCount, MAPPING_PAGE_COUNT_MAX);
+                MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_SIZE + (long) mappedPageCount * PAGE_SIZE_BYTES, (long) mappingPageCount * PAGE_SIZE_BYTES);
+                for (int i = 0; i < mappingPageCount; i++) {
+                    mapping.position(i * PAGE_SIZE_BYTES);
+                    mapping.limit((i + 1) * PAGE_SIZE_BYTES);
+                    pages[mappedPageCount + i] = mapping.slice().order(ByteOrder.LITTLE_ENDIAN);
+                    mapping.clear();
+                }
+                mappedPageCount += mappingPageCount;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Cannot map the linear memory file " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected ByteBuffer writablePage(int pageNumber) {
+        if (!dirtyPages[pageNumber]) {
+            if (baselinePages != null && pageNumber < baselinePages.length && baselinePages[pageNumber] == null) {
+                baselinePages[pageNumber] = copyOf(pages[pageNumber]);
+            }
+            markWritten(pageNumber);
+            dirtyPages[pageNumber] = true;
+        }
+        return pages[pageNumber];
+    }
+
+    @Override
+    protected void epochStarted() {
+        Arrays.fill(dirtyPages, false);
+    }
+
+    @Override
+    protected void saveBaseline() {
+        baselinePages = new ByteBuffer[currentMemory()];
+    }
+
+    @Override
+    protected void restorePage(int page) {
+        pages[page].put(baselinePages[page].duplicate()).rewind();
+    }
+
+    @Override
+    protected void dropPages(int fromPage, int toPage) {
+        for (int page = fromPage; page < toPage; page++) {
+            pages[page].put(ZERO_PAGE.duplicate()).rewind();
+        }
+    }
+
+    @Override
+    protected void loadPage(int page, ByteBuffer contents) {
+        pages[page].put(contents.duplicate()).rewind();
+    }
+
+    private static ByteBuffer copyOf(ByteBuffer page) {
+        ByteBuffer copy = ByteBuffer.allocateDirect(PAGE_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        copy.put(page.duplicate()).rewind();
+        return copy;
+    }
+}
@@ -10,10 +10,32 @@ public class Module {
     private List<Function> functions;
     private int startFunctionIndex;
 
+    /**
+     * The contents of the data segments [memory.init], indexed by segment index. Active segments are written to the
+     * memory when the module is loaded and are empty afterwards, just like dropped segments.
+     */
+    private byte[][] dataSegments;
+
+    /**
+     * The number of pages the linear memory is declared with, memory accesses proven to be in bounds by
+     * {@link parser.BoundsCheckElimination} rely on the memory having at least this size
+     */
+    private int minimumMemoryPageCount = 0;
+
+    /**
+     * The data segments at the last {@link #markBaseline()}
+     */
+    private byte[][] baselineDataSegments;
+
     public Module(LinearMemory linearMemory, List<Function> functions, int startFunctionIndex) {
+        this(linearMemory, functions, startFunctionIndex, new byte[0][]);
+    }
+
+    public Module(LinearMemory linearMemory, List<Function> functions, int startFunctionIndex, byte[][] dataSegments) {
         this.linearMemory = linearMemory;
         this.functions = functions;
         this.startFunctionIndex = startFunctionIndex;
+        this.dataSegments = dataSegments;
     }
 
     public LinearMemory getLinearMemory() {
@@ -40,7 +62,66 @@ public class Module {
         this.startFunctionIndex = startFunctionIndex;
     }
 
+    public int getMinimumMemoryPageCount() {
+        return minimumMemoryPageCount;
+    }
+
+    public void setMinimumMemoryPageCount(int minimumMemoryPageCount) {
+        this.minimumMemoryPageCount = minimumMemoryPageCount;
+    }
+
     public Function getStartFunction() {
         return functions.get(startFunctionIndex);
     }
+
+    /**
+     * Copies <code>length</code> bytes of a data segment starting at <code>offset</code> into the linear memory at
+     * <code>destination</code> [memory.init].
+     *
+     * @throws IndexOutOfBoundsException if the range is out of the bounds of the segment or the memory
+     */
+    public void initMemory(int segmentIndex, int destination, int offset, int length) {
+        linearMemory.init(destination, dataSegments[segmentIndex], offset, length);
+    }
+
+    /**
+     * Empties a data segment, so its contents can be garbage collected [data.drop]
+     */
+    public void dropDataSegment(int segmentIndex) {
+        dataSegments[segmentIndex] = new byte[0];
+    }
+
+    /**
+     * Remembers the current state of this module instance as the baseline {@link #reset()} restores.
+     */
+    public void markBaseline() {
+        if (linearMemory != null) {
+            linearMemory.markBaseline();
+        }
+        baselineDataSegments = dataSegments.clone();
+    }
+
+    /**
+     * Restores the state of the last baseline, so the module can be executed again without being parsed again.
+     * Only the linear memory pages written since the baseline are copied.
+     */
+    public void reset() {
+        if (linearMemory != null) {
+            linearMemory.reset();
+        }
+        if (baselineDataSegments != null) {
+            dataSegments = baselineDataSegments.clone();
+        }
+    }
+
+    /**
+     * Takes a snapshot of the current state of this module instance, usually right after parsing, when the data
+     * segments have been written. The memory of this instance and of the snapshot share their pages copy-on-write.
+     *
+     * @return the snapshot to fork new instances from
+     */
+    public ModuleSnapshot snapshot() {
+        return new ModuleSnapshot(linearMemory == null ? null : linearMemory.fork(), functions, startFunctionIndex,
+            dataSegments.clone(), minimumMemoryPageCount);
+    }
 }
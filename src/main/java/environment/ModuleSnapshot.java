@@ -0,0 +1,45 @@
+package environment;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The state of a module instance at one point in time, see {@link Module#snapshot()}. Forking a new instance from it
+ * neither parses the module nor writes its data segments again: all instances share the functions, and the pages of
+ * their linear memories copy-on-write, so only the pages an instance writes to are copied.
+ */
+public final class ModuleSnapshot {
+
+    /**
+     * Never written, only forked
+     */
+    private final LinearMemory linearMemory;
+    private final List<Function> functions;
+    private final int startFunctionIndex;
+
+    /**
+     * Never written, the segments themselves are shared as they are never modified, only dropped
+     */
+    private final byte[][] dataSegments;
+    private final int minimumMemoryPageCount;
+
+    ModuleSnapshot(LinearMemory linearMemory, List<Function> functions, int startFunctionIndex,
+                   byte[][] dataSegments, int minimumMemoryPageCount) {
+        this.linearMemory = linearMemory;
+        this.functions = Collections.unmodifiableList(new ArrayList<>(functions));
+        this.startFunctionIndex = startFunctionIndex;
+        this.dataSegments = dataSegments;
+        this.minimumMemoryPageCount = minimumMemoryPageCount;
+    }
+
+    /**
+     * @return a new module instance in the state of the snapshot
+     */
+    public Module fork() {
+        Module module = new Module(linearMemory == null ? null : linearMemory.fork(), functions, startFunctionIndex,
+            dataSegments.clone());
+        module.setMinimumMemoryPageCount(minimumMemoryPageCount);
+        return module;
+    }
+}
@@ -0,0 +1,146 @@
+package environment;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static constants.WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES;
+
+/**
+ * A linear memory keeping every page in its own direct buffer outside of the Java heap, so it can grow up to 4GiB
+ * without enlarging the heap or the work of the garbage collector.
+ *
+ * Pages are committed lazily: growing the memory only maps the new pages to one shared, read-only zero page, and a
+ * page gets its own buffer when it is written for the first time. Memories that reserve a lot of pages but touch only
+ * a few of them stay small, and existing pages are never copied. A fork shares all pages with the memory it was forked
+ * from in the same way, a page is copied when one of them writes to it, and so does a memory restored from a checkpoint
+ * with the mapped checkpoint file.
+ *
+ * The direct buffers count against the JVM's limit for direct memory (<code>-XX:MaxDirectMemorySize</code>, by
+ * default the maximum heap size).
+ */
+public class OffHeapLinearMemory extends PagedLinearMemory {
+
+    /**
+     * The page is owned by this memory, pages that are not are the {@link #ZERO_PAGE} or shared with forks or the
+     * baseline
+     */
+    private static final byte OWNED = 1;
+
+    /**
+     * The page has been marked as written in the current epoch, see {@link LinearMemory#markWritten(int)}
+     */
+    private static final byte DIRTY = 2;
+
+    /**
+     * The content of all pages that have not been written yet
+     */
+    private static final ByteBuffer ZERO_PAGE =
+        ByteBuffer.allocateDirect(PAGE_SIZE_BYTES).asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN);
+
+    /**
+     * The {@link #OWNED} and {@link #DIRTY} flags of the {@link #pages}, a page can be written directly if it has both,
+     * the pages that have not been written yet are the {@link #ZERO_PAGE}
+     */
+    private byte[] pageStates = new byte[0];
+
+    /**
+     * The pages at the last {@link #markBaseline()}, never written
+     */
+    private ByteBuffer[] baselinePages;
+
+    public OffHeapLinearMemory(int initialPageCount, int maxPageCount) {
+        super(maxPageCount);
+        if (growMemory(initialPageCount) < 0) {
+            throw new IllegalArgumentException("Initial Linear Memory page count must not be greater than the maximum");
+        }
+    }
+
+    private OffHeapLinearMemory(OffHeapLinearMemory other) {
+        super(other);
+        pageStates = new byte[pages.length];
+    }
+
+    @Override
+    public LinearMemory fork() {
+        for (int page = 0; page < currentMemory(); page++) {
+            pageStates[page] &= ~OWNED;
+        }
+        return new OffHeapLinearMemory(this);
+    }
+
+    @Override
+    protected void saveBaseline() {
+        // the pages are shared with the baseline until they are written
+        baselinePages = Arrays.copyOf(pages, currentMemory());
+        for (int page = 0; page < currentMemory(); page++) {
+            pageStates[page] &= ~OWNED;
+        }
+    }
+
+    @Override
+    protected void restorePage(int page) {
+        if ((pageStates[page] & OWNED) != 0) {
+            // keep the page's buffer for the next writes
+            pages[page].put(baselinePages[page].duplicate()).rewind();
+        } else {
+            pages[page] = baselinePages[page];
+        }
+    }
+
+    @Override
+    protected void dropPages(int fromPage, int toPage) {
+        Arrays.fill(pages, fromPage, toPage, null);
+        Arrays.fill(pageStates, fromPage, toPage, (byte) 0);
+    }
+
+    @Override
+    protected boolean isZeroPage(int page) {
+        return pages[page] == ZERO_PAGE;
+    }
+
+    @Override
+    protected void loadPage(int page, ByteBuffer contents) {
+        pages[page] = contents;
+        pageStates[page] = 0;
+    }
+
+    @Override
+    protected void epochStarted() {
+        for (int page = 0; page < currentMemory(); page++) {
+            pageStates[page] &= ~DIRTY;
+        }
+    }
+
+    @Override
+    protected void allocatePages(int oldPageCount, int newPageCount) {
+        growPageTable(newPageCount);
+        if (pageStates.length < pages.length) {
+            pageStates = Arrays.copyOf(pageStates, pages.length);
+        }
+        Arrays.fill(pages, oldPageCount, newPageCount, ZERO_PAGE);
+    }
+
+    /**
+     * @return the page with the given number, committing or copying it first if this memory does not own it yet, and
+     * marked as dirty
+     */
+    @Override
+    protected ByteBuffer writablePage(int pageNumber) {
+        if (pageStates[pageNumber] == (OWNED | DIRTY)) {
+            return pages[pageNumber];
+        }
+
+        if ((pageStates[pageNumber] & OWNED) == 0) {
+            // direct buffers are zeroed on allocation
+            ByteBuffer page = ByteBuffer.allocateDirect(PAGE_SIZE_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            if (pages[pageNumber] != ZERO_PAGE) {
+                page.put(pages[pageNumber].duplicate()).rewind();
+            }
+            pages[pageNumber] = page;
+        }
+        markWritten(pageNumber);
+        pageStates[pageNumber] = OWNED | DIRTY;
+        return pages[pageNumber];
+    }
+}
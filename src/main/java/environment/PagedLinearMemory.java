@@ -0,0 +1,262 @@
+package environment;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static constants.WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES;
+
+/**
+ * A linear memory keeping every page in its own buffer. Accesses look up the page of the address, a value spanning
+ * two pages is composed of single bytes. The subclasses decide where the buffers of the pages live.
+ */
+public abstract class PagedLinearMemory extends LinearMemory {
+    private static final int PAGE_SHIFT = Integer.numberOfTrailingZeros(PAGE_SIZE_BYTES);
+    private static final int PAGE_OFFSET_MASK = PAGE_SIZE_BYTES - 1;
+
+    /**
+     * The little endian buffers of the pages, indexed by page number. The array grows with the memory, its entries
+     * behind the current memory size are not accessed.
+     */
+    protected ByteBuffer[] pages = new ByteBuffer[0];
+
+    protected PagedLinearMemory(int maxPageCount) {
+        super(maxPageCount);
+    }
+
+    /**
+     * Shares the pages of <code>other</code>, used by the subclasses to implement {@link #fork()}.
+     */
+    protected PagedLinearMemory(PagedLinearMemory other) {
+        super(other);
+        pages = Arrays.copyOf(other.pages, other.currentMemory());
+    }
+
+    /**
+     * Makes room for the pages up to <code>pageCount</code> in {@link #pages}.
+     */
+    protected void growPageTable(int pageCount) {
+        if (pageCount > pages.length) {
+            int capacity = (int) Math.min(Math.max(pageCount, 2L * pages.length), getMaxPageCount());
+            pages = Arrays.copyOf(pages, capacity);
+        }
+    }
+
+    @Override
+    protected ByteBuffer pageContents(int page) {
+        ByteBuffer contents = pages[page].duplicate();
+        contents.clear();
+        return contents;
+    }
+
+    @Override
+    public int load(int address, int alignment, int offset, int byteCount, SIGNEDNESS signedness) {
+        return loadAt(effectiveAddressOrThrowException(address, offset, byteCount), byteCount, signedness);
+    }
+
+    @Override
+    public int loadInBounds(int effectiveAddress, int byteCount, SIGNEDNESS signedness) {
+        return loadAt(effectiveAddress, byteCount, signedness);
+    }
+
+    /**
+     * Loads from the (already bounds checked) address
+     */
+    private int loadAt(long effectiveAddress, int byteCount, SIGNEDNESS signedness) {
+        ByteBuffer page = pages[(int) (effectiveAddress >>> PAGE_SHIFT)];
+        int pageOffset = (int) effectiveAddress & PAGE_OFFSET_MASK;
+
+        switch (byteCount) {
+            case 4:
+                if (pageOffset <= PAGE_SIZE_BYTES - 4) {
+                    return page.getInt(pageOffset);
+                }
+                return byteAt(effectiveAddress) | byteAt(effectiveAddress + 1) << 8
+                    | byteAt(effectiveAddress + 2) << 16 | byteAt(effectiveAddress + 3) << 24;
+            case 2:
+                int halfWord;
+                if (pageOffset <= PAGE_SIZE_BYTES - 2) {
+                    halfWord = page.getShort(pageOffset) & 0xFFFF;
+                } else {
+                    halfWord = byteAt(effectiveAddress) | byteAt(effectiveAddress + 1) << 8;
+                }
+                return signedness == SIGNEDNESS.SIGNED ? (short) halfWord : halfWord;
+            case 1:
+                byte singleByte = page.get(pageOffset);
+                return signedness == SIGNEDNESS.SIGNED ? singleByte : singleByte & 0xFF;
+            default:
+                throw new IllegalArgumentException("Linear memory accesses must be 1, 2 or 4 bytes wide!");
+        }
+    }
+
+    @Override
+    public void store(int address, int alignment, int offset, int byteCount, int value) {
+        storeAt(effectiveAddressOrThrowException(address, offset, byteCount), byteCount, value);
+    }
+
+    @Override
+    public void storeInBounds(int effectiveAddress, int byteCount, int value) {
+        storeAt(effectiveAddress, byteCount, value);
+    }
+
+    /**
+     * Stores at the (already bounds checked) address
+     */
+    private void storeAt(long effectiveAddress, int byteCount, int value) {
+        ByteBuffer page = writablePage((int) (effectiveAddress >>> PAGE_SHIFT));
+        int pageOffset = (int) effectiveAddress & PAGE_OFFSET_MASK;
+
+        switch (byteCount) {
+            case 4:
+                if (pageOffset <= PAGE_SIZE_BYTES - 4) {
+                    page.putInt(pageOffset, value);
+                } else {
+                    // the value spans two pages
+                    setByteAt(effectiveAddress, value);
+                    setByteAt(effectiveAddress + 1, value >>> 8);
+                    setByteAt(effectiveAddress + 2, value >>> 16);
+                    setByteAt(effectiveAddress + 3, value >>> 24);
+                }
+                break;
+            case 2:
+                if (pageOffset <= PAGE_SIZE_BYTES - 2) {
+                    page.putShort(pageOffset, (short) value);
+                } else {
+                    setByteAt(effectiveAddress, value);
+                    setByteAt(effectiveAddress + 1, value >>> 8);
+                }
+                break;
+            case 1:
+                page.put(pageOffset, (byte) value);
+                break;
+            default:
+                throw new IllegalArgumentException("Linear memory accesses must be 1, 2 or 4 bytes wide!");
+        }
+    }
+
+    @Override
+    public void copy(int destination, int source, int length) {
+        long sourceStart = rangeOrThrowException(source, length);
+        long destinationStart = rangeOrThrowException(destination, length);
+        long remaining = Integer.toUnsignedLong(length);
+
+        if (destinationStart <= sourceStart || destinationStart >= sourceStart + remaining) {
+            // the bytes of the source are read before they are overwritten when copying forwards
+            while (remaining > 0) {
+                int chunk = chunkFrom(sourceStart, destinationStart, remaining);
+                copyChunk(sourceStart, destinationStart, chunk);
+                sourceStart += chunk;
+                destinationStart += chunk;
+                remaining -= chunk;
+            }
+        } else {
+            // the destination overlaps the end of the source, so the chunks are copied from the end
+            long sourceEnd = sourceStart + remaining;
+            long destinationEnd = destinationStart + remaining;
+            while (remaining > 0) {
+                int chunk = chunkTo(sourceEnd, destinationEnd, remaining);
+                sourceEnd -= chunk;
+                destinationEnd -= chunk;
+                copyChunk(sourceEnd, destinationEnd, chunk);
+                remaining -= chunk;
+            }
+        }
+    }
+
+    @Override
+    public void fill(int destination, int value, int length) {
+        long destinationStart = rangeOrThrowException(destination, length);
+        long remaining = Integer.toUnsignedLong(length);
+        if (remaining == 0) {
+            return;
+        }
+
+        byte[] pattern = new byte[(int) Math.min(remaining, PAGE_SIZE_BYTES)];
+        Arrays.fill(pattern, (byte) value);
+        while (remaining > 0) {
+            int chunk = chunkFrom(destinationStart, destinationStart, remaining);
+            ByteBuffer page = writablePage((int) (destinationStart >>> PAGE_SHIFT)).duplicate();
+            page.position((int) destinationStart & PAGE_OFFSET_MASK);
+            page.put(pattern, 0, chunk);
+            destinationStart += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    @Override
+    public void init(int destination, byte[] data, int offset, int length) {
+        dataRangeOrThrowException(data, offset, length);
+        long destinationStart = rangeOrThrowException(destination, length);
+        int dataOffset = offset;
+        int remaining = length;
+
+        while (remaining > 0) {
+            int chunk = chunkFrom(destinationStart, destinationStart, remaining);
+            ByteBuffer page = writablePage((int) (destinationStart >>> PAGE_SHIFT)).duplicate();
+            page.position((int) destinationStart & PAGE_OFFSET_MASK);
+            page.put(data, dataOffset, chunk);
+            destinationStart += chunk;
+            dataOffset += chunk;
+            remaining -= chunk;
+        }
+    }
+
+    /**
+     * @return the number of bytes from the two (already bounds checked) addresses up to the next page boundary of
+     * either of them, at most <code>remaining</code>
+     */
+    private static int chunkFrom(long sourceAddress, long destinationAddress, long remaining) {
+        int sourceRoom = PAGE_SIZE_BYTES - ((int) sourceAddress & PAGE_OFFSET_MASK);
+        int destinationRoom = PAGE_SIZE_BYTES - ((int) destinationAddress & PAGE_OFFSET_MASK);
+        return (int) Math.min(remaining, Math.min(sourceRoom, destinationRoom));
+    }
+
+    /**
+     * @return the number of bytes before the two (already bounds checked) end addresses back to the previous page
+     * boundary of either of them, at most <code>remaining</code>
+     */
+    private static int chunkTo(long sourceEnd, long destinationEnd, long remaining) {
+        int sourceRoom = (((int) sourceEnd - 1) & PAGE_OFFSET_MASK) + 1;
+        int destinationRoom = (((int) destinationEnd - 1) & PAGE_OFFSET_MASK) + 1;
+        return (int) Math.min(remaining, Math.min(sourceRoom, destinationRoom));
+    }
+
+    /**
+     * Copies bytes within a single source and a single destination page.
+     */
+    private void copyChunk(long sourceAddress, long destinationAddress, int chunk) {
+        // the destination first, the source page is the same buffer if it was copied to become writable
+        ByteBuffer destinationPage = writablePage((int) (destinationAddress >>> PAGE_SHIFT));
+        ByteBuffer sourcePage = pages[(int) (sourceAddress >>> PAGE_SHIFT)];
+        int sourceOffset = (int) sourceAddress & PAGE_OFFSET_MASK;
+        int destinationOffset = (int) destinationAddress & PAGE_OFFSET_MASK;
+
+        ByteBuffer source = sourcePage.duplicate();
+        source.limit(sourceOffset + chunk).position(sourceOffset);
+        if (sourcePage == destinationPage && Math.abs(sourceOffset - destinationOffset) < chunk) {
+            // the bulk transfer does not guarantee overlapping ranges within one buffer to be copied correctly
+            byte[] bytes = new byte[chunk];
+            source.get(bytes);
+            source = ByteBuffer.wrap(bytes);
+        }
+        ByteBuffer destinationBuffer = destinationPage.duplicate();
+        destinationBuffer.position(destinationOffset);
+        destinationBuffer.put(source);
+    }
+
+    /**
+     * @return the unsigned byte at the (already bounds checked) address
+     */
+    private int byteAt(long effectiveAddress) {
+        return pages[(int) (effectiveAddress >>> PAGE_SHIFT)].get((int) effectiveAddress & PAGE_OFFSET_MASK) & 0xFF;
+    }
+
+    private void setByteAt(long effectiveAddress, int value) {
+        ByteBuffer page = writablePage((int) (effectiveAddress >>> PAGE_SHIFT));
+        page.put((int) effectiveAddress & PAGE_OFFSET_MASK, (byte) value);
+    }
+
+    /**
+     * @return the page with the given number, prepared for writing to it
+     */
+    protected abstract ByteBuffer writablePage(int pageNumber);
+}
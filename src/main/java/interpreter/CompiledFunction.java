@@ -0,0 +1,18 @@
+package interpreter;
+
+/**
+ * A WASM function translated into a faster form than the interpreted code, which the interpreter can call directly.
+ */
+public interface CompiledFunction {
+
+    /**
+     * Executes the function.
+     *
+     * @param valueStack       the interpreter's value stack holding the arguments
+     * @param argumentsPointer the index of the first argument on the value stack
+     * @param callDepth        the call depth of the function, the start function having call depth 0
+     * @return the return value of the function, 0 if it has none
+     * @throws TrapException if the execution traps
+     */
+    int invoke(int[] valueStack, int argumentsPointer, int callDepth);
+}
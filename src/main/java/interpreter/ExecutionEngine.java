@@ -0,0 +1,102 @@
+package interpreter;
+
+import constants.ImplementationSpecific;
+import environment.LinearMemory;
+import environment.Module;
+
+import java.io.IOException;
+
+/**
+ * Base class of the different ways to execute a WASM module. All of them must give identical results.
+ */
+public abstract class ExecutionEngine {
+
+    /**
+     * The WebAssembly module to be executed
+     */
+    protected final Module module;
+
+    protected ExecutionEngine(Module module) {
+        this.module = module;
+    }
+
+    public void execute(boolean dumpLinearMemory) {
+        execute(dumpLinearMemory ? new LinearMemoryDump() : null);
+    }
+
+    /**
+     * @param linearMemoryDump how to dump the linear memory after the execution, <code>null</code> to not dump it
+     */
+    public void execute(LinearMemoryDump linearMemoryDump) {
+        checkMinimumMemorySize();
+        runOnExecutionThread();
+
+        // End of execution of a WASM module
+        if (linearMemoryDump != null) {
+            saveLinearMemToFile(linearMemoryDump);
+        }
+    }
+
+    /**
+     * Executes the start function of the module
+     *
+     * @throws TrapException if the execution traps
+     */
+    protected abstract void run();
+
+    /**
+     * The memory accesses proven to be in bounds are not checked while executing, which relies on the memory having
+     * its declared size. It only grows during the execution, but resetting or restoring it may shrink it in between.
+     *
+     * @throws TrapException if the memory is smaller than declared
+     */
+    private void checkMinimumMemorySize() {
+        LinearMemory linearMemory = module.getLinearMemory();
+        int pageCount = linearMemory == null ? 0 : linearMemory.currentMemory();
+        if (pageCount < module.getMinimumMemoryPageCount()) {
+            throw new TrapException("Linear memory is smaller than declared by the module! [pages: " + pageCount
+                + "; declared: " + module.getMinimumMemoryPageCount() + "]");
+        }
+    }
+
+    /**
+     * Runs the module on a thread whose stack can hold the maximum call depth, as compiled WASM functions (and the
+     * interpreter calling them) nest JVM method calls for nested WASM function calls.
+     */
+    private void runOnExecutionThread() {
+        Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                run();
+            } catch (Throwable t) {
+                failure[0] = t;
+            }
+        }, "j-wasm", ImplementationSpecific.ExecutionEngine.THREAD_STACK_SIZE);
+
+        thread.start();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrapException("Interrupted while executing the module", e);
+        }
+
+        if (failure[0] instanceof StackOverflowError) {
+            throw new TrapException("Call stack exhausted!", failure[0]);
+        }
+        if (failure[0] instanceof RuntimeException) {
+            throw (RuntimeException) failure[0];
+        }
+        if (failure[0] instanceof Error) {
+            throw (Error) failure[0];
+        }
+    }
+
+    private void saveLinearMemToFile(LinearMemoryDump linearMemoryDump) {
+        try {
+            linearMemoryDump.write(module.getLinearMemory());
+        } catch (IOException e) {
+            System.out.println("Error writing linear memory to file: " + e.getMessage());
+        }
+    }
+}
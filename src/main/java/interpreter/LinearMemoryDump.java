@@ -0,0 +1,86 @@
+package interpreter;
+
+import environment.LinearMemory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Dumps the linear memory of a module to a file after its execution: the whole memory or a range of bytes of it,
+ * optionally compressed with {@link Deflater} (in the zlib format) while it is written.
+ */
+public class LinearMemoryDump {
+
+    /**
+     * The size of the buffer of the compressed output stream
+     */
+    private static final int COMPRESSION_BUFFER_SIZE = 1 << 16;
+
+    private final File file;
+    private final long start;
+    private final long end;
+    private final boolean compressed;
+
+    /**
+     * Dumps the whole memory uncompressed to a file named after the current time in the directory j-wasm is executed in
+     */
+    public LinearMemoryDump() {
+        this(null, 0, Long.MAX_VALUE, false);
+    }
+
+    /**
+     * @param file       the file to write to, <code>null</code> for a file named after the current time in the
+     *                   directory j-wasm is executed in
+     * @param start      the index of the first byte to dump
+     * @param end        the index behind the last byte to dump, the dump ends at the memory size at the latest
+     * @param compressed whether to compress the dump
+     */
+    public LinearMemoryDump(File file, long start, long end, boolean compressed) {
+        this.file = file;
+        this.start = start;
+        this.end = end;
+        this.compressed = compressed;
+    }
+
+    /**
+     * Writes the range of the memory to the file, replacing its contents
+     *
+     * @throws IOException if writing to the file fails
+     */
+    public void write(LinearMemory linearMemory) throws IOException {
+        File target = file != null ? file : defaultFile();
+        try (FileChannel channel = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!compressed) {
+                linearMemory.writeTo(channel, start, end);
+                return;
+            }
+
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                DeflaterOutputStream out = new DeflaterOutputStream(Channels.newOutputStream(channel), deflater,
+                    COMPRESSION_BUFFER_SIZE);
+                linearMemory.writeTo(Channels.newChannel(out), start, end);
+                out.finish();
+                out.flush();
+            } finally {
+                deflater.end();
+            }
+        }
+    }
+
+    private File defaultFile() throws IOException {
+        // File is stored where j-wasm was executed
+        File directory = new File(".");
+        return new File(directory.getCanonicalPath() + File.separator +
+            LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_H-m-s")) + "_linear_memory.bin"
+            + (compressed ? ".zlib" : ""));
+    }
+}
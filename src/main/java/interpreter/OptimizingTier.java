@@ -0,0 +1,14 @@
+package interpreter;
+
+/**
+ * Translates functions that the interpreter found to be hot into {@link CompiledFunction}s.
+ */
+public interface OptimizingTier {
+
+    /**
+     * @param functionIndex the index of the function in the module
+     * @return the compiled function or <code>null</code> if the function cannot be compiled, in which case it keeps
+     * being interpreted
+     */
+    CompiledFunction compile(int functionIndex);
+}
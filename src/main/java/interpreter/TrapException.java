@@ -0,0 +1,29 @@
+package interpreter;
+
+/**
+ * Signals a trap, which aborts the execution of a WASM module (e.g. reaching an unreachable instruction or exhausting
+ * the call stack).
+ */
+public class TrapException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public TrapException() {
+    }
+
+    public TrapException(String message) {
+        super(message);
+    }
+
+    public TrapException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+    public TrapException(Throwable cause) {
+        super(cause);
+    }
+
+    public TrapException(String message, Throwable cause, boolean enableSuppression,
+                         boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
+}
@@ -1,329 +1,458 @@
 package interpreter;
 
 import constants.BinaryFormat;
-import environment.ExecEnvFrame;
+import constants.ImplementationSpecific;
 import environment.Function;
 import environment.LinearMemory;
 import environment.Module;
-import util.Leb128;
+import parser.BoundsCheckElimination;
+import parser.CodeDecoder;
+import parser.Superinstructions;
 
-import java.io.ByteArrayInputStream;
-import java.io.FileOutputStream;
-import java.io.File;
-import java.io.IOException;
-import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
-import java.util.Stack;
-
-import static util.Leb128.readUnsignedLeb128;
+import java.io.PrintStream;
+import java.util.Arrays;
 
 /**
  * Executes a WASM module's code
  */
-public class WasmInterpreter {
+public class WasmInterpreter extends ExecutionEngine {
+    /**
+     * Number of values stored in a call frame in addition to the local variables and operands: the return address,
+     * the frame pointer and the function index of the caller.
+     */
+    private static final int FRAME_INFO_SIZE = 3;
+
+    /**
+     * The Value Stack holds the call frames of all active functions. A call frame is a window on this stack that
+     * starts with the local variables (the parameters were pushed as operands by the caller and become the first
+     * local variables in place), followed by the saved return address, frame pointer and function index of the
+     * caller, followed by the operands of the function. Calls and returns therefore only move pointers.
+     */
+    private final int[] valueStack;
+
+    /**
+     * The maximum number of nested function calls, exceeding it traps
+     */
+    private final int maxCallDepth;
+
+    /**
+     * Translates hot functions, <code>null</code> if all functions are interpreted
+     */
+    private final OptimizingTier optimizingTier;
+
+    /**
+     * The number of calls of a function after which it is translated by the optimizing tier
+     */
+    private final int invocationThreshold;
+
+    /**
+     * The number of iterations of a loop after which its function is translated by the optimizing tier
+     */
+    private final int backEdgeThreshold;
+
     /**
-     * The Instruction Pointer points to a byte in the instruction stream (a byte array) that should be interpreted and
-     * executed.
+     * The functions already translated by the optimizing tier, indexed by function index
      */
-    private int instructionPointer;
+    private CompiledFunction[] compiledFunctions;
 
     /**
-     * The WebAssembly module to be interpreted and executed
+     * Hotness counters: the number of calls of every function and the number of taken back edges of every loop,
+     * indexed by function index and the position of the loop in the function's decoded code. The back edge counters
+     * of a function are allocated when it is called for the first time, as it is only decoded then.
      */
-    private Module module;
+    private int[] invocationCounters;
+    private int[][] backEdgeCounters;
 
     /**
-     * On the Call Stack the execution environment (instruction pointer, local variables, etc.) is saved, before a
-     * function call is executed.
+     * The index of the first free slot on the value stack while a compiled function called by the interpreter is
+     * executing, where the frame of a function it calls back into the interpreter starts, see {@link #invoke}
      */
-    private Stack<ExecEnvFrame> callStack = new Stack<>();
+    private int stackTop = 0;
 
     /**
-     * On the Operand Stack values are pushed and popped to be used as operands for various arithmetic or logic
-     * operations
+     * How often each opcode was executed directly after each other opcode, indexed by
+     * <code>previousOpCode * OPCODE_COUNT + opCode</code>, <code>null</code> if no statistics are collected
      */
-    private Stack<Integer> operandStack = new Stack<>();
+    private long[] opCodePairCounts;
+
+    /**
+     * The number of distinct opcodes in decoded code, including superinstructions
+     */
+    private static final int OPCODE_COUNT = 0x200;
 
     public WasmInterpreter(Module module) {
-        this.module = module;
+        this(module, ImplementationSpecific.Interpreter.CALL_DEPTH_MAX);
     }
 
-    public void execute(boolean dumpLinearMemory) {
-        Function executingFunction = module.getStartFunction();
-
-        // The starting function in WebAssembly has no parameters and no local variables, therefore "new Integer[0]"
-        callStack.push(new ExecEnvFrame(executingFunction, new Integer[0]));
-
-        ByteArrayInputStream executingCodeStream = new ByteArrayInputStream(executingFunction.getInstructions());
-
-        while (executingCodeStream.available() != 0) {
-            ExecEnvFrame stackFrame = callStack.peek();
-
-            byte opCode;
-
-            if (stackFrame.isSavedLoopExec() && !stackFrame.isSkipLoopCode()) {
-                //when we are executing a loop for the NON-first time,
-                //we get the instructions from our loop-instruction queue
-                //and add it again to the queue to be able to execute further loop runs
-                opCode = stackFrame.getLoopQueue().poll();
-                stackFrame.getLoopQueue().add(opCode);
-            } else {
-                opCode = (byte) executingCodeStream.read();
-                if (stackFrame.isSkipLoopCode()) {
-                    //when the skipLoop flag is set we want to skip all the code till we got to the loop end
-                    if (BinaryFormat.Instructions.Control.IF == opCode) {
-                        stackFrame.getEndStack().push(ExecEnvFrame.EndValue.IF);
-                        instructionPointer++;
-                        continue;
-                    }
-                    if (BinaryFormat.Instructions.Control.BLOCK == opCode) {
-                        stackFrame.getEndStack().push(ExecEnvFrame.EndValue.BLOCK);
-                        instructionPointer++;
-                        continue;
-                    }
-                    if (BinaryFormat.Instructions.Control.LOOP == opCode) {
-                        stackFrame.getEndStack().push(ExecEnvFrame.EndValue.LOOP);
-                        instructionPointer++;
-                        continue;
-                    }
-                    if (BinaryFormat.Instructions.Control.END == opCode) {
-                        if (ExecEnvFrame.EndValue.LOOP.equals(stackFrame.getEndStack().pop())) {
-                            stackFrame.resetLoop();
-                        }
-                    } else {
-                        instructionPointer++;
-                    }
-                    continue;
-                }
-                if (stackFrame.isFirstLoopExec()) {
-                    //when we are executing the loop for the first time,
-                    //save all operations in a queue to execute them later in the additional runs
-                    stackFrame.getLoopQueue().add(opCode);
-
-                    //now repeat the loop!
-                    if (BinaryFormat.Instructions.Control.END == opCode) {
-                        stackFrame.getLoopQueue().add(opCode);
-                        stackFrame.setFirstLoopExec(false);
-                        stackFrame.setSavedLoopExec(true);
-                        instructionPointer++;
-                        continue;
-                    }
-                }
-            }
+    public WasmInterpreter(Module module, int maxCallDepth) {
+        this(module, maxCallDepth, null, Integer.MAX_VALUE, Integer.MAX_VALUE);
+    }
 
-            int parameter;
+    /**
+     * Creates an interpreter that counts the calls of every function and the iterations of every loop. A function
+     * that exceeds one of the thresholds is translated by the optimizing tier and all subsequent calls of it execute
+     * the translated function. Calls that are already running finish in the interpreter.
+     *
+     * @param optimizingTier      translates hot functions
+     * @param invocationThreshold the number of calls of a function after which it is translated
+     * @param backEdgeThreshold   the number of iterations of a loop after which its function is translated
+     */
+    public WasmInterpreter(Module module, int maxCallDepth, OptimizingTier optimizingTier, int invocationThreshold,
+                           int backEdgeThreshold) {
+        super(module);
+        this.maxCallDepth = maxCallDepth;
+        this.valueStack = new int[ImplementationSpecific.Interpreter.VALUE_STACK_SIZE];
+        this.optimizingTier = optimizingTier;
+        this.invocationThreshold = invocationThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+        resetCounters();
+    }
 
-            if (stackFrame.isSkipCode()) {
-                //when we see another block thing throw it into our stack
-                if (BinaryFormat.Instructions.Control.IF == opCode) {
-                    stackFrame.getEndStack().push(ExecEnvFrame.EndValue.IF);
-                    instructionPointer++;
-                    continue;
-                }
-                if (BinaryFormat.Instructions.Control.BLOCK == opCode) {
-                    stackFrame.getEndStack().push(ExecEnvFrame.EndValue.BLOCK);
-                    instructionPointer++;
-                    continue;
-                }
-                if (BinaryFormat.Instructions.Control.LOOP == opCode) {
-                    stackFrame.getEndStack().push(ExecEnvFrame.EndValue.LOOP);
-                    instructionPointer++;
-                    continue;
-                }
-
-                if (!stackFrame.isIfBranch()) { //skipCode && else
-                    if (stackFrame.getEndStack().size() == stackFrame.getIfDepth()) {
-                        if (BinaryFormat.Instructions.Control.ELSE == opCode) {
-                            stackFrame.setSkipCode(false);
-                            instructionPointer++;
-                            continue;
-                        }
-                    }
-                } else { //skipCode && if
-                    if (stackFrame.getIfDepth() == stackFrame.getEndStack().size()) {
-                        if (BinaryFormat.Instructions.Control.END == opCode) {
-                            stackFrame.setSkipCode(false);
-                            stackFrame.getEndStack().pop();
-                            stackFrame.setIfDepth(stackFrame.getIfDepth() - 1);
-                            instructionPointer++;
-                            continue;
-                        }
-                    }
-                }
-                if (BinaryFormat.Instructions.Control.END == opCode) {
-                    if (stackFrame.getEndStack().size() == 0) {
-                        return;
-                    }
-                    if (ExecEnvFrame.EndValue.LOOP.equals(stackFrame.getEndStack().pop())) {
-                        instructionPointer = stackFrame.getLoopBeginInstructionPointer();
-                        if (stackFrame.isFirstLoopExec()) {
-                            stackFrame.setFirstLoopExec(false);
-                            stackFrame.setSavedLoopExec(true);
-                        }
-                    }
-                }
-                instructionPointer++;
-                continue;
+    /**
+     * Counts how often every pair of opcodes is executed in sequence, e.g. to find candidates for superinstructions.
+     * Must be called before the module is executed.
+     */
+    public void collectOpCodePairStatistics() {
+        opCodePairCounts = new long[OPCODE_COUNT * OPCODE_COUNT];
+    }
+
+    /**
+     * Prints the most frequently executed opcode pairs, collected if {@link #collectOpCodePairStatistics()} was
+     * called before the execution.
+     *
+     * @param out       the stream to print to
+     * @param pairCount the maximum number of pairs to print
+     */
+    public void printOpCodePairStatistics(PrintStream out, int pairCount) {
+        if (opCodePairCounts == null) {
+            return;
+        }
+        long total = 0;
+        for (long count : opCodePairCounts) {
+            total += count;
+        }
+
+        Integer[] pairs = new Integer[opCodePairCounts.length];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = i;
+        }
+        Arrays.sort(pairs, (a, b) -> Long.compare(opCodePairCounts[b], opCodePairCounts[a]));
+
+        out.println("Executed opcode pairs: " + total);
+        for (int i = 0; i < pairCount && opCodePairCounts[pairs[i]] != 0; i++) {
+            long count = opCodePairCounts[pairs[i]];
+            out.printf("0x%02x 0x%02x %12d %6.2f%%%n", pairs[i] / OPCODE_COUNT, pairs[i] % OPCODE_COUNT, count,
+                100.0 * count / total);
+        }
+    }
+
+    @Override
+    protected void run() {
+        resetCounters();
+        stackTop = 0;
+        interpret(module.getStartFunctionIndex(), 0);
+    }
+
+    /**
+     * Interprets a function called by compiled code, e.g. because it is too large to be compiled. Its frame starts
+     * behind the frames of the functions this interpreter is already executing, as one of them may have called the
+     * compiled code.
+     *
+     * @param functionIndex the index of the function in the module
+     * @param arguments     the arguments of the function
+     * @param callDepth     the call depth of the function, the start function having call depth 0
+     * @return the return value of the function, 0 if it has none
+     * @throws TrapException if the execution traps
+     */
+    public int invoke(int functionIndex, int[] arguments, int callDepth) {
+        if (callDepth > maxCallDepth) {
+            throw new TrapException("Call stack exhausted! Maximum call depth: " + maxCallDepth);
+        }
+        int framePointer = stackTop;
+        if (framePointer + arguments.length > valueStack.length) {
+            throw new TrapException("Call stack exhausted! Value stack size: " + valueStack.length);
+        }
+        System.arraycopy(arguments, 0, valueStack, framePointer, arguments.length);
+        try {
+            return interpret(functionIndex, callDepth);
+        } finally {
+            stackTop = framePointer;
+        }
+    }
+
+    private void resetCounters() {
+        int functionCount = module.getFunctions().size();
+        invocationCounters = new int[functionCount];
+        backEdgeCounters = new int[functionCount][];
+        compiledFunctions = new CompiledFunction[functionCount];
+    }
+
+    /**
+     * Interprets a function with its arguments at the {@link #stackTop} of the value stack until it returns.
+     *
+     * @param entryCallDepth the call depth of the function
+     * @return the return value of the function, 0 if it has none
+     */
+    private int interpret(int functionIndex, final int entryCallDepth) {
+        final int[] valueStack = this.valueStack;
+        final LinearMemory linearMemory = module.getLinearMemory();
+        final Function[] functions = module.getFunctions().toArray(new Function[0]);
+        final int[] invocationCounters = this.invocationCounters;
+        final int[][] backEdgeCounters = this.backEdgeCounters;
+
+        int executingFunctionIndex = functionIndex;
+        Function executingFunction = functions[executingFunctionIndex];
+        int[] executingCode = executingFunction.getCode();
+        int[] executingBackEdgeCounters = backEdgeCounters[executingFunctionIndex];
+        if (executingBackEdgeCounters == null) {
+            executingBackEdgeCounters = new int[executingCode.length];
+            backEdgeCounters[executingFunctionIndex] = executingBackEdgeCounters;
+        }
+
+        /* The Instruction Pointer points to an opcode (or immediate) in the decoded code of the executing function,
+         * the Frame Pointer to the first local variable of the executing function, the Operand Stack Base to its first
+         * operand and the Stack Pointer to the next free slot on the value stack. */
+        int instructionPointer = 0;
+        int framePointer = stackTop;
+        int operandStackBase = enterFrame(executingFunction, framePointer, 0, 0, executingFunctionIndex);
+        int stackPointer = operandStackBase;
+        int callDepth = entryCallDepth;
+
+        final long[] opCodePairCounts = this.opCodePairCounts;
+        int previousOpCode = 0;
+
+        while (true) {
+            int opCode = executingCode[instructionPointer++];
+
+            if (opCodePairCounts != null) {
+                opCodePairCounts[previousOpCode * OPCODE_COUNT + opCode]++;
+                previousOpCode = opCode;
             }
 
+            int parameter;
+            int firstOperand;
+            int secondOperand;
+
             switch (opCode) {
                 /***************************
                  * Variable and constant access instructions
                  ****************************/
                 case BinaryFormat.Instructions.Numeric.I32_CONST:
-                    //the int is LEB128 encoded, so read it and then add the operation
-                    parameter = readLoopSave(executingCodeStream, stackFrame);
-                    operandStack.push(parameter);
-                    instructionPointer += Leb128.unsignedLeb128Size(parameter);
+                    //the int is already LEB128 decoded, so read it and then add the operation
+                    parameter = executingCode[instructionPointer++];
+                    valueStack[stackPointer++] = parameter;
                     break;
                 case BinaryFormat.Instructions.Variable.GET_LOCAL:
-                    parameter = readLoopSave(executingCodeStream, stackFrame);
-                    operandStack.push(callStack.peek().getLocalVariableByIndex(parameter));
-                    instructionPointer += Leb128.unsignedLeb128Size(parameter);
+                    parameter = executingCode[instructionPointer++];
+                    valueStack[stackPointer++] = valueStack[framePointer + parameter];
                     break;
                 case BinaryFormat.Instructions.Variable.SET_LOCAL:
-                    parameter = readLoopSave(executingCodeStream, stackFrame);
-                    callStack.peek().setLocalVariableByIndex(operandStack.pop(), parameter);
-                    instructionPointer += Leb128.unsignedLeb128Size(parameter);
+                    parameter = executingCode[instructionPointer++];
+                    valueStack[framePointer + parameter] = valueStack[--stackPointer];
                     break;
                 case BinaryFormat.Instructions.Variable.TEE_LOCAL:
-                    parameter = readLoopSave(executingCodeStream, stackFrame);
-                    callStack.peek().setLocalVariableByIndex(operandStack.peek(), parameter);
-                    instructionPointer += Leb128.unsignedLeb128Size(parameter);
+                    parameter = executingCode[instructionPointer++];
+                    valueStack[framePointer + parameter] = valueStack[stackPointer - 1];
                     break;
 
                 /***************************
                  * Memory instructions
                  ****************************/
                 case BinaryFormat.Instructions.Memory.I32_LOAD:
-                    int alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    int offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    int address = operandStack.pop();
-                    operandStack.push(module.getLinearMemory()
-                        .load(address, alignment, offset, 4, LinearMemory.SIGNEDNESS.UNSIGNED));
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    int offset = executingCode[instructionPointer++];
+                    int address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .load(address, 0, offset, 4, LinearMemory.SIGNEDNESS.UNSIGNED);
                     break;
                 case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
-                    alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    address = operandStack.pop();
-                    operandStack.push(module.getLinearMemory()
-                        .load(address, alignment, offset, 1, LinearMemory.SIGNEDNESS.SIGNED));
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .load(address, 0, offset, 1, LinearMemory.SIGNEDNESS.SIGNED);
                     break;
                 case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
-                    alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    address = operandStack.pop();
-                    operandStack.push(module.getLinearMemory()
-                        .load(address, alignment, offset, 1, LinearMemory.SIGNEDNESS.UNSIGNED));
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .load(address, 0, offset, 1, LinearMemory.SIGNEDNESS.UNSIGNED);
                     break;
                 case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
-                    alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    address = operandStack.pop();
-                    operandStack.push(module.getLinearMemory()
-                        .load(address, alignment, offset, 2, LinearMemory.SIGNEDNESS.SIGNED));
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .load(address, 0, offset, 2, LinearMemory.SIGNEDNESS.SIGNED);
                     break;
                 case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
-                    alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    address = operandStack.pop();
-                    operandStack.push(module.getLinearMemory()
-                        .load(address, alignment, offset, 2, LinearMemory.SIGNEDNESS.UNSIGNED));
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .load(address, 0, offset, 2, LinearMemory.SIGNEDNESS.UNSIGNED);
                     break;
                 case BinaryFormat.Instructions.Memory.I32_STORE:
-                    alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    int value = operandStack.pop();
-                    address = operandStack.pop();
-                    module.getLinearMemory().store(address, alignment, offset, 4, value);
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    offset = executingCode[instructionPointer++];
+                    int value = valueStack[--stackPointer];
+                    address = valueStack[--stackPointer];
+                    linearMemory.store(address, 0, offset, 4, value);
                     break;
                 case BinaryFormat.Instructions.Memory.I32_STORE8:
-                    alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    value = operandStack.pop();
-                    address = operandStack.pop();
-                    module.getLinearMemory().store(address, alignment, offset, 1, value);
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    offset = executingCode[instructionPointer++];
+                    value = valueStack[--stackPointer];
+                    address = valueStack[--stackPointer];
+                    linearMemory.store(address, 0, offset, 1, value);
                     break;
                 case BinaryFormat.Instructions.Memory.I32_STORE16:
-                    alignment = Leb128.readUnsignedLeb128(executingCodeStream);
-                    offset = Leb128.readUnsignedLeb128(executingCodeStream);
-                    value = operandStack.pop();
-                    address = operandStack.pop();
-                    module.getLinearMemory().store(address, alignment, offset, 2, value);
-                    instructionPointer += Leb128.unsignedLeb128Size(alignment) + Leb128.unsignedLeb128Size(offset);
+                    offset = executingCode[instructionPointer++];
+                    value = valueStack[--stackPointer];
+                    address = valueStack[--stackPointer];
+                    linearMemory.store(address, 0, offset, 2, value);
+                    break;
+                case BoundsCheckElimination.I32_LOAD_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .loadInBounds(address + offset, 4, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    break;
+                case BoundsCheckElimination.I32_LOAD8_S_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .loadInBounds(address + offset, 1, LinearMemory.SIGNEDNESS.SIGNED);
+                    break;
+                case BoundsCheckElimination.I32_LOAD8_U_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .loadInBounds(address + offset, 1, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    break;
+                case BoundsCheckElimination.I32_LOAD16_S_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .loadInBounds(address + offset, 2, LinearMemory.SIGNEDNESS.SIGNED);
+                    break;
+                case BoundsCheckElimination.I32_LOAD16_U_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    address = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory
+                        .loadInBounds(address + offset, 2, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    break;
+                case BoundsCheckElimination.I32_STORE_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    value = valueStack[--stackPointer];
+                    address = valueStack[--stackPointer];
+                    linearMemory.storeInBounds(address + offset, 4, value);
+                    break;
+                case BoundsCheckElimination.I32_STORE8_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    value = valueStack[--stackPointer];
+                    address = valueStack[--stackPointer];
+                    linearMemory.storeInBounds(address + offset, 1, value);
+                    break;
+                case BoundsCheckElimination.I32_STORE16_IN_BOUNDS:
+                    offset = executingCode[instructionPointer++];
+                    value = valueStack[--stackPointer];
+                    address = valueStack[--stackPointer];
+                    linearMemory.storeInBounds(address + offset, 2, value);
                     break;
                 case BinaryFormat.Instructions.Memory.CURRENT_MEMORY:
-                    executingCodeStream.skip(1); // an all zero byte is reserved for future use, so just skip it
-                    operandStack.push(module.getLinearMemory().currentMemory());
-                    instructionPointer++;
+                    valueStack[stackPointer++] = linearMemory.currentMemory();
                     break;
                 case BinaryFormat.Instructions.Memory.GROW_MEMORY:
-                    executingCodeStream.skip(1); // an all zero byte is reserved for future use, so just skip it
-                    int deltaPages = operandStack.pop();
-                    operandStack.push(module.getLinearMemory().growMemory(deltaPages));
-                    instructionPointer++;
+                    int deltaPages = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = linearMemory.growMemory(deltaPages);
+                    break;
+                case CodeDecoder.MEMORY_INIT:
+                    parameter = executingCode[instructionPointer++];
+                    int length = valueStack[--stackPointer];
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    module.initMemory(parameter, firstOperand, secondOperand, length);
+                    break;
+                case CodeDecoder.DATA_DROP:
+                    parameter = executingCode[instructionPointer++];
+                    module.dropDataSegment(parameter);
+                    break;
+                case CodeDecoder.MEMORY_COPY:
+                    length = valueStack[--stackPointer];
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    linearMemory.copy(firstOperand, secondOperand, length);
+                    break;
+                case CodeDecoder.MEMORY_FILL:
+                    length = valueStack[--stackPointer];
+                    value = valueStack[--stackPointer];
+                    address = valueStack[--stackPointer];
+                    linearMemory.fill(address, value, length);
                     break;
 
                 /*****************************
                  * Test instructions
                  *****************************/
                 case BinaryFormat.Instructions.Numeric.I32_EQZ:
-                    operandStack.push(operandStack.pop() == 0 ? 1 : 0);
+                    valueStack[stackPointer - 1] = valueStack[stackPointer - 1] == 0 ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_EQ:
-                    operandStack.push(operandStack.pop().equals(operandStack.pop()) ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand == secondOperand ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_NE:
-                    operandStack.push(!operandStack.pop().equals(operandStack.pop()) ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand != secondOperand ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_LT_S:
-                    operandStack.push(operandStack.pop() > operandStack.pop() ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand < secondOperand ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_LT_U:
-                    operandStack.push(
-                            Long.compareUnsigned(operandStack.pop(), operandStack.pop()) > 0 ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.compareUnsigned(firstOperand, secondOperand) < 0 ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_GT_S:
-                    operandStack.push(operandStack.pop() < operandStack.pop() ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand > secondOperand ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_GT_U:
-                    operandStack.push(
-                            Long.compareUnsigned(operandStack.pop(), operandStack.pop()) < 0 ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.compareUnsigned(firstOperand, secondOperand) > 0 ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_LE_S:
-                    operandStack.push(operandStack.pop() >= operandStack.pop() ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand <= secondOperand ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_LE_U:
-                    operandStack.push(
-                            Long.compareUnsigned(operandStack.pop(), operandStack.pop()) >= 0 ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.compareUnsigned(firstOperand, secondOperand) <= 0 ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_GE_S:
-                    operandStack.push(operandStack.pop() <= operandStack.pop() ? 1 : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand >= secondOperand ? 1 : 0;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_GE_U:
-                    operandStack.push(
-                            Long.compareUnsigned(operandStack.pop(), operandStack.pop()) <= 0 ? 1
-                                    : 0);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.compareUnsigned(firstOperand, secondOperand) >= 0 ? 1 : 0;
                     break;
 
                 /*****************************
                  * Unary instructions
                  *****************************/
                 case BinaryFormat.Instructions.Numeric.I32_CLZ:
-                    operandStack.push(Integer.numberOfLeadingZeros(operandStack.pop()));
+                    valueStack[stackPointer - 1] = Integer.numberOfLeadingZeros(valueStack[stackPointer - 1]);
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_CTZ:
-                    operandStack.push(Integer.numberOfTrailingZeros(operandStack.pop()));
+                    valueStack[stackPointer - 1] = Integer.numberOfTrailingZeros(valueStack[stackPointer - 1]);
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_POPCNT:
-                    operandStack.push(Integer.bitCount(operandStack.pop()));
+                    valueStack[stackPointer - 1] = Integer.bitCount(valueStack[stackPointer - 1]);
                     break;
 
                 /*********************************
@@ -332,223 +461,318 @@ public class WasmInterpreter {
                  * integer type, as the two's complement operations are the same as for unsigned operands.
                  *********************************/
                 case BinaryFormat.Instructions.Numeric.I32_ADD:
-                    int secondOperand = operandStack.pop();
-                    int firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand + secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand + secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_SUB:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand - secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand - secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_MUL:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand * secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand * secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_DIV_S:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand / secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand / secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_DIV_U:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(Integer.divideUnsigned(firstOperand, secondOperand));
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.divideUnsigned(firstOperand, secondOperand);
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_REM_S:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand % secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand % secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_REM_U:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(Integer.remainderUnsigned(firstOperand, secondOperand));
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.remainderUnsigned(firstOperand, secondOperand);
                     break;
 
                 /*********************************
                  * Logical instructions
                  *********************************/
                 case BinaryFormat.Instructions.Numeric.I32_AND:
-                    operandStack.push(operandStack.pop() & operandStack.pop());
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand & secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_OR:
-                    operandStack.push(operandStack.pop() | operandStack.pop());
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand | secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_XOR:
-                    operandStack.push(operandStack.pop() ^ operandStack.pop());
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand ^ secondOperand;
                     break;
 
                 /*********************************
                  * Bitwise instructions
                  *********************************/
                 case BinaryFormat.Instructions.Numeric.I32_SHL:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand << secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand << secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_SHR_S:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand >> secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand >> secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_SHR_U:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(firstOperand >>> secondOperand);
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = firstOperand >>> secondOperand;
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_ROTL:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(Integer.rotateLeft(firstOperand, secondOperand));
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.rotateLeft(firstOperand, secondOperand);
                     break;
                 case BinaryFormat.Instructions.Numeric.I32_ROTR:
-                    secondOperand = operandStack.pop();
-                    firstOperand = operandStack.pop();
-                    operandStack.push(Integer.rotateRight(firstOperand, secondOperand));
+                    secondOperand = valueStack[--stackPointer];
+                    firstOperand = valueStack[--stackPointer];
+                    valueStack[stackPointer++] = Integer.rotateRight(firstOperand, secondOperand);
                     break;
 
                 /******************************
                  * Control instructions
                  *****************************/
                 case BinaryFormat.Instructions.Control.UNREACHABLE:
-                    throw new RuntimeException("You reached unreachable code!");
+                    throw new TrapException("You reached unreachable code!");
                 case BinaryFormat.Instructions.Control.NOP:
                     //NO-OP
                     break;
                 case BinaryFormat.Instructions.Control.BLOCK:
-                    stackFrame.getEndStack().push(ExecEnvFrame.EndValue.BLOCK);
-                    break;
                 case BinaryFormat.Instructions.Control.LOOP:
-                    stackFrame.getEndStack().push(ExecEnvFrame.EndValue.LOOP);
-                    stackFrame.setFirstLoopExec(true);
-                    stackFrame.setSavedLoopExec(false);
-                    stackFrame.setLoopBeginInstructionPointer(instructionPointer);
-                    //TODO: Wait for loop instruction
+                    //NO-OP, arity and end of the block are only needed by the branches
+                    instructionPointer += 2;
                     break;
+                case BinaryFormat.Instructions.Control.BR:
                 case BinaryFormat.Instructions.Control.BR_IF:
-                    byte break_depth;
-                    if (stackFrame.isFirstLoopExec()) {
-                        break_depth = (byte) executingCodeStream.read();
-                        stackFrame.getLoopQueue().add(break_depth);
-                    } else {
-                        break_depth = stackFrame.getLoopQueue().poll();
-                        stackFrame.getLoopQueue().add(break_depth);
+                    if (opCode == BinaryFormat.Instructions.Control.BR_IF && valueStack[--stackPointer] == 0) {
+                        instructionPointer += 4;
+                        break;
                     }
-                    boolean brIfExpression = operandStack.peek() != 0;
-                    if (brIfExpression) {
-                        //if the branch condition is true, skip the loop
-                        operandStack.pop();
-                        stackFrame.resetLoop();
-                        stackFrame.setSkipLoopCode(true);
+                    // the immediates are depth, target, arity and height
+                    int newStackPointer = operandStackBase + executingCode[instructionPointer + 3];
+                    if (executingCode[instructionPointer + 2] != 0) {
+                        valueStack[newStackPointer++] = valueStack[stackPointer - 1];
                     }
+                    stackPointer = newStackPointer;
+                    int target = executingCode[instructionPointer + 1];
+                    if (target < instructionPointer && ++executingBackEdgeCounters[target] == backEdgeThreshold) {
+                        // a hot loop, the next call of this function runs on the optimizing tier
+                        promote(executingFunctionIndex);
+                    }
+                    instructionPointer = target;
                     break;
                 case BinaryFormat.Instructions.Control.ELSE:
-                    stackFrame.setSkipCode(true);
+                    //the if branch is done, continue behind the end of the else branch
+                    instructionPointer = executingCode[instructionPointer];
                     break;
                 case BinaryFormat.Instructions.Control.IF:
-                    stackFrame.getEndStack().push(ExecEnvFrame.EndValue.IF);
-                    stackFrame.setIfDepth(stackFrame.getIfDepth() + 1);
-                    boolean ifExpression = operandStack.pop() != 0;
-                    stackFrame.setIfBranch(ifExpression);
-                    if (!ifExpression) { //we have else code here
-                        stackFrame.setSkipCode(true);
+                    if (valueStack[--stackPointer] == 0) {
+                        instructionPointer = executingCode[instructionPointer + 1];
+                    } else {
+                        instructionPointer += 3;
                     }
-                    executingCodeStream.read();
                     break;
                 case BinaryFormat.Instructions.Control.CALL:
                     /***** Function call *****/
-                    int calledFunctionIndex = Leb128.readUnsignedLeb128(executingCodeStream);
-                    instructionPointer += Leb128.unsignedLeb128Size(calledFunctionIndex);
-                    Function calledFunction = module.getFunctions().get(calledFunctionIndex);
-
-                    // Set the return address for the current function
-                    callStack.peek().setInstructionPointer(instructionPointer);
-                    callStack.peek().setOperandStackBase(operandStack.size());
-
-                    // Push the new function with its parameters to the call stack
-                    callStack.push(new ExecEnvFrame(calledFunction,
-                            new Integer[calledFunction.getLocalVariableCount() + calledFunction.getParameterCount()]));
-                    for (int i = calledFunction.getParameterCount() - 1; i >= 0; i--) {
-                        callStack.peek().setLocalVariableByIndex(operandStack.pop(), i);
+                    int calledFunctionIndex = executingCode[instructionPointer++];
+                    Function calledFunction = functions[calledFunctionIndex];
+
+                    if (callDepth == maxCallDepth) {
+                        throw new TrapException("Call stack exhausted! Maximum call depth: " + maxCallDepth);
+                    }
+
+                    CompiledFunction compiledFunction = compiledFunctions[calledFunctionIndex];
+                    if (compiledFunction == null
+                        && ++invocationCounters[calledFunctionIndex] == invocationThreshold) {
+                        compiledFunction = promote(calledFunctionIndex);
+                    }
+                    if (compiledFunction != null) {
+                        // The parameters on top of the operand stack are replaced by the return value
+                        int argumentsPointer = stackPointer - calledFunction.getParameterCount();
+                        stackTop = argumentsPointer;
+                        int returnValue = compiledFunction.invoke(valueStack, argumentsPointer, callDepth + 1);
+                        stackPointer = argumentsPointer;
+                        if (calledFunction.getReturnValueCount() != 0) {
+                            valueStack[stackPointer++] = returnValue;
+                        }
+                        break;
                     }
 
+                    // The parameters on top of the operand stack become the first local variables of the new frame
+                    int calledFramePointer = stackPointer - calledFunction.getParameterCount();
+                    operandStackBase = enterFrame(calledFunction, calledFramePointer, instructionPointer,
+                        framePointer, executingFunctionIndex);
+                    framePointer = calledFramePointer;
+                    stackPointer = operandStackBase;
+                    callDepth++;
+
                     // Set the new code and instruction pointer
-                    instructionPointer = callStack.peek().getInstructionPointer();
-                    executingCodeStream = new ByteArrayInputStream(calledFunction.getInstructions());
+                    executingFunctionIndex = calledFunctionIndex;
+                    executingFunction = calledFunction;
+                    executingCode = calledFunction.getCode();
+                    executingBackEdgeCounters = backEdgeCounters[calledFunctionIndex];
+                    if (executingBackEdgeCounters == null) {
+                        executingBackEdgeCounters = new int[executingCode.length];
+                        backEdgeCounters[calledFunctionIndex] = executingBackEdgeCounters;
+                    }
+                    instructionPointer = 0;
                     break;
 
                 case BinaryFormat.Instructions.Control.RETURN:
                     /***** Function return *****/
+                    int returnValueCount = executingFunction.getReturnValueCount();
 
-                    if (callStack.size() == 1) {
-                        int expectedReturnValueCount = callStack.peek().getFunction()
-                                .getReturnValueCount();
-                        int actualReturnValueCount = operandStack.size() - callStack.peek().getOperandStackBase();
+                    if (callDepth == entryCallDepth) {
+                        int actualReturnValueCount = stackPointer - operandStackBase;
 
-                        if (expectedReturnValueCount != actualReturnValueCount) {
+                        if (returnValueCount != actualReturnValueCount) {
                             throw new RuntimeException("Wrong number of return values! Expected: " +
-                                    expectedReturnValueCount + ", actual: " + actualReturnValueCount);
+                                    returnValueCount + ", actual: " + actualReturnValueCount);
                         }
                         // Exit execution
-                        return;
-                    } else {
-                        // Return to the previous function context
-                        callStack.pop();
-                        Function returnedFunction = callStack.peek().getFunction();
-                        instructionPointer = callStack.peek().getInstructionPointer();
-                        executingCodeStream = new ByteArrayInputStream(returnedFunction.getInstructions(), instructionPointer + 1, returnedFunction.getInstructions().length);
+                        return returnValueCount == 0 ? 0 : valueStack[stackPointer - 1];
+                    }
+
+                    // Restore the previous function context from the frame information
+                    instructionPointer = valueStack[operandStackBase - FRAME_INFO_SIZE];
+                    int callerFramePointer = valueStack[operandStackBase - FRAME_INFO_SIZE + 1];
+                    executingFunctionIndex = valueStack[operandStackBase - FRAME_INFO_SIZE + 2];
+
+                    // The return values replace the frame of the returning function
+                    if (returnValueCount != 0) {
+                        valueStack[framePointer] = valueStack[stackPointer - 1];
                     }
+                    stackPointer = framePointer + returnValueCount;
+
+                    framePointer = callerFramePointer;
+                    executingFunction = functions[executingFunctionIndex];
+                    executingCode = executingFunction.getCode();
+                    executingBackEdgeCounters = backEdgeCounters[executingFunctionIndex];
+                    operandStackBase = framePointer + executingFunction.getParameterCount()
+                        + executingFunction.getLocalVariableCount() + FRAME_INFO_SIZE;
+                    callDepth--;
                     break;
                 case BinaryFormat.Instructions.Control.END:
-                    // End of execution of a WASM module
-                    if (dumpLinearMemory) {
-                        saveLinearMemToFile();
-                    }
+                    //NO-OP, the targets of all branches are already resolved
                     break;
                 case BinaryFormat.Instructions.Control.DROP:
-                    operandStack.pop();
+                    stackPointer--;
+                    break;
+
+                /***************************
+                 * Superinstructions, reading the immediates of the fused instructions at their original positions
+                 ****************************/
+                case Superinstructions.GET_LOCAL_GET_LOCAL_I32_ADD:
+                    valueStack[stackPointer++] = valueStack[framePointer + executingCode[instructionPointer]]
+                        + valueStack[framePointer + executingCode[instructionPointer + 2]];
+                    instructionPointer += 4;
+                    break;
+                case Superinstructions.GET_LOCAL_I32_CONST_I32_ADD:
+                    valueStack[stackPointer++] = valueStack[framePointer + executingCode[instructionPointer]]
+                        + executingCode[instructionPointer + 2];
+                    instructionPointer += 4;
+                    break;
+                case Superinstructions.GET_LOCAL_I32_CONST_I32_SUB:
+                    valueStack[stackPointer++] = valueStack[framePointer + executingCode[instructionPointer]]
+                        - executingCode[instructionPointer + 2];
+                    instructionPointer += 4;
+                    break;
+                case Superinstructions.GET_LOCAL_I32_CONST:
+                    valueStack[stackPointer++] = valueStack[framePointer + executingCode[instructionPointer]];
+                    valueStack[stackPointer++] = executingCode[instructionPointer + 2];
+                    instructionPointer += 3;
+                    break;
+                case Superinstructions.I32_CONST_I32_LT_S_BR_IF:
+                    if (valueStack[--stackPointer] >= executingCode[instructionPointer]) {
+                        instructionPointer += 7;
+                        break;
+                    }
+                    // the immediates of the branch are depth, target, arity and height
+                    newStackPointer = operandStackBase + executingCode[instructionPointer + 6];
+                    if (executingCode[instructionPointer + 5] != 0) {
+                        valueStack[newStackPointer++] = valueStack[stackPointer - 1];
+                    }
+                    stackPointer = newStackPointer;
+                    target = executingCode[instructionPointer + 4];
+                    if (target < instructionPointer && ++executingBackEdgeCounters[target] == backEdgeThreshold) {
+                        promote(executingFunctionIndex);
+                    }
+                    instructionPointer = target;
+                    break;
+                case Superinstructions.I32_CONST_I32_LT_S_IF:
+                    if (valueStack[--stackPointer] >= executingCode[instructionPointer]) {
+                        instructionPointer = executingCode[instructionPointer + 4];
+                    } else {
+                        instructionPointer += 6;
+                    }
+                    break;
+                case Superinstructions.GET_LOCAL_I32_LOAD:
+                    valueStack[stackPointer++] = linearMemory.load(
+                        valueStack[framePointer + executingCode[instructionPointer]], 0,
+                        executingCode[instructionPointer + 2], 4, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    instructionPointer += 3;
+                    break;
+                case Superinstructions.GET_LOCAL_I32_LOAD_IN_BOUNDS:
+                    valueStack[stackPointer++] = linearMemory.loadInBounds(
+                        valueStack[framePointer + executingCode[instructionPointer]]
+                            + executingCode[instructionPointer + 2], 4, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    instructionPointer += 3;
                     break;
-                case -1:
-                    throw new RuntimeException("Unexpected end of file! @code 0x10 body");
                 default:
                     throw new RuntimeException("Invalid (or not implemented) instruction!");
             }
-            instructionPointer++;
         }
     }
 
-    private int readLoopSave(ByteArrayInputStream is, ExecEnvFrame stack) {
-        int value;
-        if (stack.isFirstLoopExec()) {
-            value = readUnsignedLeb128(is);
-            stack.getIntLoopQueue().add(value);
-        } else if (stack.isSavedLoopExec()) {
-            value = stack.getIntLoopQueue().poll();
-            stack.getIntLoopQueue().add(value);
-        } else {
-            value = readUnsignedLeb128(is);
+    /**
+     * Translates a hot function with the optimizing tier, if there is one.
+     *
+     * @return the translated function or <code>null</code> if it keeps being interpreted
+     */
+    private CompiledFunction promote(int functionIndex) {
+        if (optimizingTier == null || compiledFunctions[functionIndex] != null) {
+            return compiledFunctions[functionIndex];
         }
-        return value;
+        compiledFunctions[functionIndex] = optimizingTier.compile(functionIndex);
+        return compiledFunctions[functionIndex];
     }
 
-    private void saveLinearMemToFile() {
-        // File is stored where j-wasm was executed
-        File directory = new File(".");
-        try {
-            String filename = directory.getCanonicalPath() + File.separator +
-                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd_H-m-s")) + "_linear_memory.bin";
-            FileOutputStream fos = new FileOutputStream(filename);
-            
-            for (byte[] page: module.getLinearMemory().getAllocatedPages()) {
-                fos.write(page);
-            }
-            
-            fos.close();
-            
-        } catch (IOException e) {
-            System.out.println("Error writing linear memory to file: " + e.getMessage());
+    /**
+     * Sets up the call frame of a function on the value stack: zeroes its (non-parameter) local variables and saves
+     * the caller's context behind them.
+     *
+     * @return the operand stack base of the new frame
+     * @throws TrapException if the value stack cannot hold the new frame
+     */
+    private int enterFrame(Function function, int framePointer, int returnAddress, int callerFramePointer,
+                           int callerFunctionIndex) {
+        int localVariablesEnd = framePointer + function.getParameterCount() + function.getLocalVariableCount();
+        int operandStackBase = localVariablesEnd + FRAME_INFO_SIZE;
+
+        if (operandStackBase + function.getMaxStackHeight() > valueStack.length) {
+            throw new TrapException("Call stack exhausted! Value stack size: " + valueStack.length);
         }
+
+        Arrays.fill(valueStack, framePointer + function.getParameterCount(), localVariablesEnd, 0);
+        valueStack[localVariablesEnd] = returnAddress;
+        valueStack[localVariablesEnd + 1] = callerFramePointer;
+        valueStack[localVariablesEnd + 2] = callerFunctionIndex;
+
+        return operandStackBase;
     }
 }
@@ -2,258 +2,586 @@ package parser;
 
 import constants.BinaryFormat;
 import constants.ImplementationSpecific;
+import constants.WebAssemblySpecification;
 import environment.Function;
 import environment.LinearMemory;
 import environment.Module;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
+import static util.Leb128.readSignedLeb128;
 import static util.Leb128.readUnsignedLeb128;
-import static util.Leb128.unsignedLeb128Size;
 
 public class BinaryParser {
 
-    private int previousSection = -0x01;
-    //private byte[] code;
+    /**
+     * The number of parameters and results of the function types, indexed by type index
+     */
+    private int[] typeParameterCounts = new int[0];
+    private int[] typeResultCounts = new int[0];
     private List<Function> functions = new ArrayList<>();
     private int startFunctionIndex = -1;
     private LinearMemory linearMemory;
+    private int minimumMemoryPageCount = 0;
+    private byte[][] dataSegments = new byte[0][];
+    /**
+     * The contents of every data segment and the (unsigned) address of the active ones, -1 for a passive one, indexed
+     * by segment index, as the {@link ModuleCache} needs them after the active ones have been applied to the memory
+     */
+    private byte[][] segmentContents = new byte[0][];
+    private long[] segmentAddresses = new long[0];
+    /**
+     * The number of data segments declared by the data count section, -1 if there is none
+     */
+    private int dataSegmentCount = -1;
+    /**
+     * The end of each function body in the code section, indexed by function index
+     */
+    private int[] bodyEnds = new int[0];
+    /**
+     * The tasks decoding the function bodies read from a stream, and the errors they found indexed by function index
+     */
+    private final List<DecodingTask> decodingTasks = new ArrayList<>();
+    private ParserException[] decodingErrors = new ParserException[0];
+    private final boolean superinstructions;
+    private final boolean boundsCheckElimination;
+    private final boolean eagerDecoding;
+
+    public BinaryParser() {
+        this(true);
+    }
+
+    /**
+     * @param superinstructions whether frequent instruction sequences in the decoded code are fused into
+     *                          superinstructions, see {@link Superinstructions}
+     */
+    public BinaryParser(boolean superinstructions) {
+        this(superinstructions, true);
+    }
 
+    /**
+     * @param superinstructions      whether frequent instruction sequences in the decoded code are fused into
+     *                               superinstructions, see {@link Superinstructions}
+     * @param boundsCheckElimination whether memory accesses proven to be in bounds are executed without checking
+     *                               them, see {@link BoundsCheckElimination}
+     */
+    public BinaryParser(boolean superinstructions, boolean boundsCheckElimination) {
+        this(superinstructions, boundsCheckElimination, false);
+    }
 
+    /**
+     * @param superinstructions      whether frequent instruction sequences in the decoded code are fused into
+     *                               superinstructions, see {@link Superinstructions}
+     * @param boundsCheckElimination whether memory accesses proven to be in bounds are executed without checking
+     *                               them, see {@link BoundsCheckElimination}
+     * @param eagerDecoding          whether all function bodies are decoded and validated in parallel while parsing,
+     *                               instead of each one when its function is called for the first time
+     */
+    public BinaryParser(boolean superinstructions, boolean boundsCheckElimination, boolean eagerDecoding) {
+        this.superinstructions = superinstructions;
+        this.boundsCheckElimination = boundsCheckElimination;
+        this.eagerDecoding = eagerDecoding;
+    }
+
+    /**
+     * Parses a module from a file, which is mapped into memory instead of being read, so the function bodies remain
+     * views of the mapped file.
+     */
     public Module parse(File file) throws IOException, ParserException {
-        byte[] code = Files.readAllBytes(Paths.get(file.toURI()));
-
-        ByteArrayInputStream is = new ByteArrayInputStream(code);
-
-        //test if the file has a correct header
-        byte helper[] = new byte[4];
-        is.read(helper);
-        if (!Arrays.equals(helper, BinaryFormat.Module.MAGIC)) {
-            throw new ParserException("No valid .wasm File");
-        }
-
-        helper = new byte[4];
-        is.read(helper);
-        if (!Arrays.equals(helper, BinaryFormat.Module.VERSION)) {
-            throw new ParserException("Not a valid Version!");
-        }
-        int sectionID;
-        while ((sectionID = is.read()) != -1) {
-            switch (sectionID) {
-                case BinaryFormat.Module.Section.Type.ID:
-                    if (this.previousSection >= BinaryFormat.Module.Section.Type.ID) {
-                        throw new ParserException("Wrong order of sections! @Type(0x01)");
-                    }
-                    previousSection = BinaryFormat.Module.Section.Type.ID;
-                    readTypeSection(is);
-                    break;
-                case BinaryFormat.Module.Section.Function.ID:
-                    if (this.previousSection >= BinaryFormat.Module.Section.Function.ID) {
-                        throw new ParserException("Wrong order of sections! @Function(0x03)");
-                    }
-                    previousSection = BinaryFormat.Module.Section.Function.ID;
-                    readFunctionSection(is);
-                    break;
-                case BinaryFormat.Module.Section.Memory.ID:
-                    if (this.previousSection >= BinaryFormat.Module.Section.Memory.ID) {
-                        throw new ParserException("Wrong order of sections! @Memory(0x05)");
-                    }
-                    previousSection = BinaryFormat.Module.Section.Memory.ID;
-                    readMemorySection(is);
-                    break;
-                case BinaryFormat.Module.Section.Start.ID:
-                    if (this.previousSection >= BinaryFormat.Module.Section.Start.ID) {
-                        throw new ParserException("Wrong order of sections! @Start(0x08)");
-                    }
-                    previousSection = BinaryFormat.Module.Section.Start.ID;
-                    readStartSection(is);
-                    break;
-                case BinaryFormat.Module.Section.Code.ID:
-                    if (this.previousSection >= BinaryFormat.Module.Section.Code.ID) {
-                        throw new ParserException("Wrong order of sections! @Code(0x0A)");
-                    }
-                    previousSection = BinaryFormat.Module.Section.Code.ID;
-                    readCodeSection(is);
-                    break;
-                case BinaryFormat.Module.Section.Data.ID:
-                    if (this.previousSection >= BinaryFormat.Module.Section.Data.ID) {
-                        throw new ParserException("Wrong order of sections! @Code(0x0B)");
-                    }
-                    previousSection = BinaryFormat.Module.Section.Data.ID;
-                    readDataSection(is);
-                    break;
-                case BinaryFormat.Module.Section.Custom.ID:
-                    int sectionSizeGuess = is.read();
-                    is.skip(sectionSizeGuess);
-                    break;
-                default:
-                    throw new ParserException("Not a valid section type");
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            return parse(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Parses a module from its binary encoding between the position and the limit of the buffer. The buffer is not
+     * modified and must not be modified afterwards, as the function bodies are views of it.
+     */
+    public Module parse(ByteBuffer binary) throws ParserException {
+        SectionIndex sections = new SectionIndex(binary);
+        try {
+            // the sections are read in the order they have to appear in, the data count before the code
+            readTypeSection(sections.section(BinaryFormat.Module.Section.Type.ID));
+            readFunctionSection(sections.section(BinaryFormat.Module.Section.Function.ID));
+            readMemorySection(sections.section(BinaryFormat.Module.Section.Memory.ID));
+            readStartSection(sections.section(BinaryFormat.Module.Section.Start.ID));
+            readDataCountSection(sections.section(BinaryFormat.Module.Section.DataCount.ID));
+            readCodeSection(sections.section(BinaryFormat.Module.Section.Code.ID));
+            readDataSection(sections.section(BinaryFormat.Module.Section.Data.ID));
+        } catch (BufferUnderflowException e) {
+            throw new ParserException("Section contents exceed the size of the section!", e);
+        }
+        if (eagerDecoding) {
+            decodeAll();
+        }
+        return module();
+    }
+
+    /**
+     * Parses a module while it is read from the stream, see {@link #parse(ReadableByteChannel)}.
+     */
+    public Module parse(InputStream in) throws IOException, ParserException {
+        return parse(Channels.newChannel(in));
+    }
+
+    /**
+     * Parses a module while it is read from the channel, e.g. a pipe or a socket, instead of waiting for all of it.
+     * Each section is parsed as soon as it has arrived. With eager decoding, the function bodies are decoded and
+     * validated in batches on the common fork-join pool as soon as their bytes have arrived, while the rest of the
+     * module is still being read, otherwise every body is decoded when it is needed first, like from a file. The
+     * channel is read up to its end but not closed.
+     */
+    public Module parse(ReadableByteChannel channel) throws IOException, ParserException {
+        ModuleStream stream = new ModuleStream(channel);
+        boolean codeSectionRead = false;
+        boolean dataSectionRead = false;
+        try {
+            // the stream checks the order of the sections
+            int sectionID;
+            while ((sectionID = stream.nextSection()) >= 0) {
+                switch (sectionID) {
+                    case BinaryFormat.Module.Section.Type.ID:
+                        readTypeSection(stream.readSection());
+                        break;
+                    case BinaryFormat.Module.Section.Function.ID:
+                        readFunctionSection(stream.readSection());
+                        break;
+                    case BinaryFormat.Module.Section.Memory.ID:
+                        readMemorySection(stream.readSection());
+                        break;
+                    case BinaryFormat.Module.Section.Start.ID:
+                        readStartSection(stream.readSection());
+                        break;
+                    case BinaryFormat.Module.Section.DataCount.ID:
+                        readDataCountSection(stream.readSection());
+                        break;
+                    case BinaryFormat.Module.Section.Code.ID:
+                        readCodeSection(stream);
+                        codeSectionRead = true;
+                        break;
+                    case BinaryFormat.Module.Section.Data.ID:
+                        readDataSection(stream.readSection());
+                        dataSectionRead = true;
+                        break;
+                }
             }
+        } catch (BufferUnderflowException e) {
+            throw new ParserException("Section contents exceed the size of the section!", e);
+        }
+        if (!codeSectionRead) {
+            readCodeSection((ByteBuffer) null);
+        }
+        if (!dataSectionRead) {
+            readDataSection(null);
         }
 
-        return new Module(linearMemory, functions, startFunctionIndex);
+        // only eager decoding hands out tasks
+        for (DecodingTask task : decodingTasks) {
+            task.join();
+        }
+        if (!decodingTasks.isEmpty()) {
+            throwDecodingErrors();
+        }
+        return module();
     }
 
-    private void readCodeSection(final ByteArrayInputStream is)
-        throws IOException, ParserException {
-        //section size guess for skipping purpose
-        int sectionSizeGuess = is.read();
+    private Module module() {
+        Module module = new Module(linearMemory, functions, startFunctionIndex, dataSegments);
+        module.setMinimumMemoryPageCount(minimumMemoryPageCount);
+        return module;
+    }
 
-        int numFun = is.read();
-        int currFun = 0;
+    byte[][] getSegmentContents() {
+        return segmentContents;
+    }
 
-        while (numFun > 0) {
-            //body size guess for skipping purpose
-            int bodySizeGuess = is.read();
+    long[] getSegmentAddresses() {
+        return segmentAddresses;
+    }
 
-            int localVarCount = readUnsignedLeb128(is);
-            this.functions.get(currFun).setLocalVariableCount(localVarCount);
+    private void readCodeSection(final ByteBuffer section) throws ParserException {
+        if (section == null) {
+            if (!functions.isEmpty()) {
+                throw new ParserException("Function bodies missing!");
+            }
+            return;
+        }
 
-            byte[] funcBody = new byte[bodySizeGuess - unsignedLeb128Size(localVarCount)];
-            is.read(funcBody);
-            this.functions.get(currFun).setInstructions(funcBody);
+        int numFun = readUnsignedLeb128(section);
+        if (numFun != functions.size()) {
+            throw new ParserException("Number of function bodies does not match the function section!");
+        }
 
-            //we need to start at index 0 and inc with each loop
-            currFun++;
+        bodyEnds = new int[numFun];
+        for (int currFun = 0; currFun < numFun; currFun++) {
+            int bodySize = readUnsignedLeb128(section);
+            if (bodySize < 0 || bodySize > section.remaining()) {
+                throw new ParserException("Function body exceeds the code section! [function: " + currFun + "]");
+            }
+            ByteBuffer body = section.slice();
+            body.limit(bodySize);
+            section.position(section.position() + bodySize);
+            bodyEnds[currFun] = section.position();
 
+            // the body is not copied, it stays a view of the module and is decoded when it is needed first
+            setBody(currFun, body);
+        }
+        checkSectionEnd(section);
+    }
 
-            numFun--;
+    /**
+     * Reads the code section from the stream body by body. With eager decoding, whenever the bodies that have arrived
+     * since the last batch are large enough to be worth a task, they are handed out to be decoded while the next ones
+     * are read.
+     */
+    private void readCodeSection(ModuleStream stream) throws IOException, ParserException {
+        long sectionStart = stream.position();
+        int numFun = stream.readUnsignedLeb128();
+        if (numFun != functions.size()) {
+            throw new ParserException("Number of function bodies does not match the function section!");
         }
+
+        bodyEnds = new int[numFun];
+        decodingErrors = new ParserException[numFun];
+        int batchStart = 0;
+        for (int currFun = 0; currFun < numFun; currFun++) {
+            int bodySize = stream.readUnsignedLeb128();
+            if (bodySize < 0 || bodySize > stream.sectionRemaining()) {
+                throw new ParserException("Function body exceeds the code section! [function: " + currFun + "]");
+            }
+            ByteBuffer body = stream.read(bodySize);
+            bodyEnds[currFun] = (int) (stream.position() - sectionStart);
+            setBody(currFun, body);
+            if (!eagerDecoding) {
+                continue;
+            }
+
+            int batchSize = bodyEnds[currFun] - (batchStart == 0 ? 0 : bodyEnds[batchStart - 1]);
+            if (batchSize >= ImplementationSpecific.Parser.DECODING_TASK_SIZE_MIN || currFun == numFun - 1) {
+                DecodingTask task = new DecodingTask(functions, bodyEnds, decodingErrors, batchStart, currFun + 1);
+                ForkJoinPool.commonPool().execute(task);
+                decodingTasks.add(task);
+                batchStart = currFun + 1;
+            }
+        }
+        if (stream.sectionRemaining() != 0) {
+            throw new ParserException("Section size does not match its contents!");
+        }
+    }
+
+    private void setBody(int functionIndex, ByteBuffer body) {
+        Function function = functions.get(functionIndex);
+        function.setInstructions(body);
+        function.setDecoder(decoder(functionIndex));
     }
 
-    private void readStartSection(final ByteArrayInputStream is)
-        throws IOException, ParserException {
-        //section size guess for skipping purpose
-        int sectionSizeGuess = is.read();
+    /**
+     * @return the decoder of a function body, which also eliminates bounds checks and fuses superinstructions
+     */
+    private Function.Decoder decoder(int functionIndex) {
+        // the decoder outlives the parser, so it only keeps what it needs
+        List<Function> functions = this.functions;
+        int dataSegmentCount = this.dataSegmentCount;
+        boolean superinstructions = this.superinstructions;
+        long memorySize = boundsCheckElimination
+            ? (long) minimumMemoryPageCount * WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES : -1;
+
+        return function -> {
+            try {
+                CodeDecoder.decode(function, functions, dataSegmentCount);
+            } catch (ParserException | BufferUnderflowException e) {
+                throw new ParserException(e.getMessage() + " [function: " + functionIndex + "]", e);
+            }
+            if (memorySize >= 0) {
+                BoundsCheckElimination.apply(function, functions, memorySize);
+            }
+            if (superinstructions) {
+                Superinstructions.fuse(function.getCode());
+            }
+        };
+    }
+
+    /**
+     * Decodes all function bodies on the common fork-join pool, they are independent of each other.
+     *
+     * @throws ParserException see {@link #throwDecodingErrors()}
+     */
+    private void decodeAll() {
+        if (functions.isEmpty()) {
+            return;
+        }
+        decodingErrors = new ParserException[functions.size()];
+        ForkJoinPool.commonPool().invoke(new DecodingTask(functions, bodyEnds, decodingErrors, 0, functions.size()));
+        throwDecodingErrors();
+    }
+
+    /**
+     * @throws ParserException the error of the invalid body with the lowest function index, the errors of the other
+     *                         invalid bodies are suppressed by it
+     */
+    private void throwDecodingErrors() {
+        ParserException error = null;
+        for (ParserException bodyError : decodingErrors) {
+            if (error == null) {
+                error = bodyError;
+            } else if (bodyError != null) {
+                error.addSuppressed(bodyError);
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    /**
+     * Decodes the bodies of a range of functions, splitting it in two halves of about the same size in bytes as long
+     * as it is large enough.
+     */
+    private static final class DecodingTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Function> functions;
+        private final int[] bodyEnds;
+        private final ParserException[] errors;
+        private final int from;
+        private final int to;
+
+        DecodingTask(List<Function> functions, int[] bodyEnds, ParserException[] errors, int from, int to) {
+            this.functions = functions;
+            this.bodyEnds = bodyEnds;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            int start = from == 0 ? 0 : bodyEnds[from - 1];
+            int end = bodyEnds[to - 1];
+            if (to - from > 1 && end - start > ImplementationSpecific.Parser.DECODING_TASK_SIZE_MIN) {
+                // the second half starts with the first function whose body ends behind the middle of the range
+                int middle = Arrays.binarySearch(bodyEnds, from, to, start + (end - start) / 2);
+                middle = Math.min(Math.max(middle < 0 ? -middle - 1 : middle, from + 1), to - 1);
+                invokeAll(new DecodingTask(functions, bodyEnds, errors, from, middle),
+                    new DecodingTask(functions, bodyEnds, errors, middle, to));
+                return;
+            }
+
+            for (int i = from; i < to; i++) {
+                try {
+                    functions.get(i).getCode();
+                } catch (ParserException e) {
+                    errors[i] = e;
+                }
+            }
+        }
+    }
+
+    private void readStartSection(final ByteBuffer section) throws ParserException {
+        if (section == null) {
+            return;
+        }
 
         //set the index of the start function in the module
-        this.startFunctionIndex = is.read();
+        startFunctionIndex = readUnsignedLeb128(section);
+        if (startFunctionIndex < 0 || startFunctionIndex >= functions.size()) {
+            throw new ParserException("Unknown start function! [index: " + startFunctionIndex + "]");
+        }
+        checkSectionEnd(section);
     }
 
-    private void readMemorySection(final ByteArrayInputStream is)
-        throws IOException, ParserException {
-        //section size guess for skipping purpose
-        int sectionSizeGuess = is.read();
+    private void readMemorySection(final ByteBuffer section) throws ParserException {
+        if (section == null) {
+            return;
+        }
 
         //the number of total memory specifications in the module BUT only one entry is allowed...
-        int numMem = is.read();
+        int numMem = readUnsignedLeb128(section);
         if (numMem != 1) {
             throw new ParserException("Only one memory block allowed!");
         }
 
         //this flag specifies if a max memory is given
-        int flags = is.read();
+        int flags = readUnsignedLeb128(section);
         int maxMem = ImplementationSpecific.LinearMemory.PAGE_COUNT_MAX;
-        int initMem = readUnsignedLeb128(is);
+        int initMem = readUnsignedLeb128(section);
 
         if (flags == 1) {
-            maxMem = readUnsignedLeb128(is);
+            maxMem = readUnsignedLeb128(section);
+        } else if (flags != 0) {
+            throw new ParserException("Invalid memory limits flags! [flags: " + Integer.toUnsignedString(flags) + "]");
+        }
+        checkSectionEnd(section);
+
+        // the page counts are unsigned, so values of 2^31 and above are negative
+        if (initMem < 0 || initMem > ImplementationSpecific.LinearMemory.PAGE_COUNT_MAX
+            || maxMem < 0 || maxMem > ImplementationSpecific.LinearMemory.PAGE_COUNT_MAX) {
+            throw new ParserException("Linear memory page count must not be greater than "
+                + ImplementationSpecific.LinearMemory.PAGE_COUNT_MAX + "! [initial: "
+                + Integer.toUnsignedString(initMem) + "; max: " + Integer.toUnsignedString(maxMem) + "]");
+        }
+        if (initMem > maxMem) {
+            throw new ParserException("Initial linear memory page count must not be greater than the maximum! "
+                + "[initial: " + initMem + "; max: " + maxMem + "]");
+        }
+        if (maxMem == 0) {
+            throw new ParserException("Linear memory without pages is not supported!");
         }
 
-        linearMemory = new LinearMemory(initMem, maxMem);
+        linearMemory = LinearMemory.create(initMem, maxMem);
+        minimumMemoryPageCount = initMem;
     }
 
+    private void readDataCountSection(final ByteBuffer section) throws ParserException {
+        if (section == null) {
+            return;
+        }
 
-    private void readDataSection(final ByteArrayInputStream is) throws IOException, ParserException {
-        //section size guess for skipping purpose
-        int sectionSizeGuess = is.read();
-
-        int dataSegmentCount = is.read();
+        dataSegmentCount = readUnsignedLeb128(section);
+        checkSectionEnd(section);
+    }
 
-        for (int i =  0; i < dataSegmentCount; i++) {
-            int memoryIndex = is.read();
-            if (memoryIndex != 0) {
-                throw new ParserException("Only memory index zero is supported!");
-            } else if (linearMemory == null) {
-                throw new ParserException("No linear memory defined for data!");
+    private void readDataSection(final ByteBuffer section) throws ParserException {
+        if (section == null) {
+            if (dataSegmentCount > 0) {
+                throw new ParserException("Data segment count does not match the data count section!");
             }
+            return;
+        }
 
-            int constExpr = is.read();
-            int address = is.read();
-            int endExpr = is.read();
-            int dataSegmentSize = is.read();
+        int segmentCount = readUnsignedLeb128(section);
+        if (dataSegmentCount >= 0 && segmentCount != dataSegmentCount) {
+            throw new ParserException("Data segment count does not match the data count section!");
+        }
+        dataSegments = new byte[segmentCount][];
+        segmentContents = new byte[segmentCount][];
+        segmentAddresses = new long[segmentCount];
+
+        for (int i = 0; i < segmentCount; i++) {
+            int flags = readUnsignedLeb128(section);
+            boolean active = flags != BinaryFormat.Module.Section.Data.PASSIVE;
+            int address = 0;
+            if (active) {
+                int memoryIndex = 0;
+                if (flags == BinaryFormat.Module.Section.Data.ACTIVE_EXPLICIT_MEMORY) {
+                    memoryIndex = readUnsignedLeb128(section);
+                } else if (flags != BinaryFormat.Module.Section.Data.ACTIVE) {
+                    throw new ParserException("Invalid data segment flags! [flags: " + flags + "]");
+                }
+                if (memoryIndex != 0) {
+                    throw new ParserException("Only memory index zero is supported!");
+                } else if (linearMemory == null) {
+                    throw new ParserException("No linear memory defined for data!");
+                }
 
-            if (constExpr != BinaryFormat.Instructions.Numeric.I32_CONST
-                || endExpr != BinaryFormat.Instructions.Control.END) {
-                throw new ParserException("Malformed data segment offset!");
+                if (section.get() != BinaryFormat.Instructions.Numeric.I32_CONST) {
+                    throw new ParserException("Malformed data segment offset!");
+                }
+                address = readSignedLeb128(section);
+                if (section.get() != BinaryFormat.Instructions.Control.END) {
+                    throw new ParserException("Malformed data segment offset!");
+                }
             }
 
-            for (int j = 0; j < dataSegmentSize; j++) {
-                linearMemory.store(address + j, 0, 0, 1, is.read());
+            int dataSize = readUnsignedLeb128(section);
+            if (dataSize < 0 || dataSize > section.remaining()) {
+                throw new ParserException("Data segment exceeds the data section!");
+            }
+            byte[] data = new byte[dataSize];
+            section.get(data);
+            segmentContents[i] = data;
+            segmentAddresses[i] = active ? Integer.toUnsignedLong(address) : -1;
+
+            if (active) {
+                // the address is unsigned, the memory has its initial size while the module is parsed
+                long memorySize = (long) linearMemory.currentMemory()
+                    * WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES;
+                if (Integer.toUnsignedLong(address) + dataSize > memorySize) {
+                    throw new ParserException("Data segment exceeds the linear memory! [segment: " + i + "; address: "
+                        + Integer.toUnsignedString(address) + "; length: " + dataSize + "; memory size: " + memorySize
+                        + "]");
+                }
+                // applied like memory.init followed by data.drop, a single bulk copy
+                linearMemory.init(address, data, 0, data.length);
+                dataSegments[i] = new byte[0];
+            } else {
+                dataSegments[i] = data;
             }
         }
     }
 
-    private void readFunctionSection(final ByteArrayInputStream is)
-        throws IOException, ParserException {
-        //section size guess for skipping purpose
-        int sectionSizeGuess = is.read();
-
-        int numFun = is.read();
-
-        while (numFun > 0) {
-
-            int signatureIndex = is.read();
+    private void readFunctionSection(final ByteBuffer section) throws ParserException {
+        if (section == null) {
+            return;
+        }
 
-            numFun--;
+        int numFun = readUnsignedLeb128(section);
+        for (int i = 0; i < numFun; i++) {
+            int signatureIndex = readUnsignedLeb128(section);
+            if (signatureIndex < 0 || signatureIndex >= typeParameterCounts.length) {
+                throw new ParserException("Unknown function type! [index: " + signatureIndex + "]");
+            }
+            functions.add(new Function(typeParameterCounts[signatureIndex], typeResultCounts[signatureIndex]));
         }
+        checkSectionEnd(section);
     }
 
-    private void readTypeSection(final ByteArrayInputStream is)
-        throws IOException, ParserException {
-        //section size guess for skipping purpose
-        int sectionSizeGuess = is.read();
-        //number of type (seems like the function header count?)
-        int numTypes = is.read();
+    private void readTypeSection(final ByteBuffer section) throws ParserException {
+        if (section == null) {
+            return;
+        }
+
+        int numTypes = readUnsignedLeb128(section);
+        typeParameterCounts = new int[numTypes];
+        typeResultCounts = new int[numTypes];
 
         //iterate through all the function headers
-        while (numTypes > 0) {
-            if (is.read() != BinaryFormat.Types.FUNCTION_TYPE) {
+        for (int type = 0; type < numTypes; type++) {
+            if (section.get() != BinaryFormat.Types.FUNCTION_TYPE) {
                 throw new ParserException("Function Headers are not specified correct!");
             }
             //number of parameters of the function
-            int numParams = is.read();
-            int numParamsP = numParams;
-            while (numParams > 0) {
-                //add the parameters to a list, which will be passed to a function object
-                switch ((byte) is.read()) {
-                    case BinaryFormat.Types.ValueType.I32:
-
-                        break;
-                    default:
-                        throw new ParserException("Invalid parameter type at function header!");
+            int numParams = readUnsignedLeb128(section);
+            for (int i = 0; i < numParams; i++) {
+                if (section.get() != BinaryFormat.Types.ValueType.I32) {
+                    throw new ParserException("Invalid parameter type at function header!");
                 }
-                numParams--;
             }
 
-            //this is not a list because multiple return values are not currently supported!
-
-            int numResults = is.read();
-            int numResultsP = numResults;
-
-            while (numResults > 0) {
-                //add results to a list, which will be passed to a function object
-                switch ((byte) is.read()) {
-                    case BinaryFormat.Types.ValueType.I32:
-                        //TODO: do smth
-                        break;
-                    default:
-                        throw new ParserException("Invalid (or not supported) result type at function header!");
+            //multiple return values are not currently supported!
+            int numResults = readUnsignedLeb128(section);
+            for (int i = 0; i < numResults; i++) {
+                if (section.get() != BinaryFormat.Types.ValueType.I32) {
+                    throw new ParserException("Invalid (or not supported) result type at function header!");
                 }
-                numResults--;
             }
 
-            this.functions.add(new Function(numParamsP, numResultsP));
-            numTypes--;
+            typeParameterCounts[type] = numParams;
+            typeResultCounts[type] = numResults;
         }
+        checkSectionEnd(section);
     }
 
-
-}
\ No newline at end of file
+    /**
+     * @throws ParserException if the section has contents left that have not been read
+     */
+    private static void checkSectionEnd(ByteBuffer section) {
+        if (section.hasRemaining()) {
+            throw new ParserException("Section size does not match its contents!");
+        }
+    }
+}
@@ -0,0 +1,839 @@
+package parser;
+
+import constants.BinaryFormat;
+import environment.Function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Proves memory accesses in decoded code to stay within the minimum size of the linear memory and replaces their
+ * opcodes with in-bounds variants, which the engines execute without checking the address. The linear memory never
+ * shrinks while a module is executing, so growing it keeps all proofs valid. It may only shrink in between, e.g. when it
+ * is reset, which is why the engines check once before every execution that the memory still has the minimum size the
+ * proofs rely on, see {@link environment.Module#getMinimumMemoryPageCount()}.
+ *
+ * The proofs come from an interval analysis of the local variables and operands of a function: constants are exact,
+ * the parameters may hold any value and all other local variables start at zero. Comparing a local variable with a
+ * constant narrows its interval in both branches of the following <code>if</code> or <code>br_if</code>, so the
+ * induction variable of a loop guarded by a constant limit is proven to stay below the limit. The intervals of a loop's
+ * local variables are joined over all of its iterations, growing intervals are widened to the next constant of the
+ * function to reach a fixpoint quickly. An access is in bounds if its address can only be non-negative and the address
+ * plus offset plus access width does not exceed the minimum memory size.
+ *
+ * The analysis runs on decoded code without superinstructions. The in-bounds variants keep the immediates of the
+ * original instructions.
+ */
+public class BoundsCheckElimination {
+
+    /**
+     * The opcodes of the in-bounds variants are the opcodes of the original instructions plus this base, between the
+     * superinstructions and the bulk memory instructions
+     */
+    private static final int IN_BOUNDS_BASE = 0x180;
+
+    public static final int I32_LOAD_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_LOAD;
+    public static final int I32_LOAD8_S_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_LOAD8_S;
+    public static final int I32_LOAD8_U_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_LOAD8_U;
+    public static final int I32_LOAD16_S_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_LOAD16_S;
+    public static final int I32_LOAD16_U_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_LOAD16_U;
+    public static final int I32_STORE_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_STORE;
+    public static final int I32_STORE8_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_STORE8;
+    public static final int I32_STORE16_IN_BOUNDS = IN_BOUNDS_BASE + BinaryFormat.Instructions.Memory.I32_STORE16;
+
+    /**
+     * The number of iterations of a loop after which growing intervals are widened
+     */
+    private static final int ITERATIONS_BEFORE_WIDENING = 2;
+
+    /**
+     * The number of instructions analysed per instruction of the function at most, nested loops are analysed
+     * repeatedly. A function exceeding it keeps all of its bounds checks.
+     */
+    private static final int ANALYSED_INSTRUCTIONS_PER_INSTRUCTION_MAX = 64;
+
+    private static final long INT_MIN = Integer.MIN_VALUE;
+    private static final long INT_MAX = Integer.MAX_VALUE;
+
+    /**
+     * A comparison of a local variable with a constant, <code>local relation constant</code>
+     */
+    private static final class Condition {
+        private final int local;
+        private final int relation;
+        private final long constant;
+
+        private Condition(int local, int relation, long constant) {
+            this.local = local;
+            this.relation = relation;
+            this.constant = constant;
+        }
+    }
+
+    /**
+     * The possible values of an operand: an interval, the local variable it is a copy of and the condition it is the
+     * result of, if known
+     */
+    private static final class Value {
+        private static final Value ANY = new Value(INT_MIN, INT_MAX);
+        private static final Value BOOLEAN = new Value(0, 1);
+
+        private final long min;
+        private final long max;
+        private final int local;
+        private final Condition condition;
+
+        private Value(long min, long max) {
+            this(min, max, -1, null);
+        }
+
+        private Value(long min, long max, int local, Condition condition) {
+            this.min = min;
+            this.max = max;
+            this.local = local;
+            this.condition = condition;
+        }
+
+        /**
+         * @return the interval, or any value if it exceeds the 32 bit integers, as the result wraps around then
+         */
+        private static Value of(long min, long max) {
+            return min < INT_MIN || max > INT_MAX ? ANY : new Value(min, max);
+        }
+
+        private boolean isConstant() {
+            return min == max;
+        }
+    }
+
+    /**
+     * The intervals of all local variables and the operands at one point of the function
+     */
+    private static final class State {
+        private final long[] min;
+        private final long[] max;
+        private final List<Value> stack;
+
+        private State(long[] min, long[] max, List<Value> stack) {
+            this.min = min;
+            this.max = max;
+            this.stack = stack;
+        }
+
+        private State copy() {
+            return new State(min.clone(), max.clone(), new ArrayList<>(stack));
+        }
+    }
+
+    /**
+     * A block, loop or if that is being analysed
+     */
+    private static final class Label {
+
+        /**
+         * The joined states of all branches to this label, <code>null</code> if there are none
+         */
+        private State branches;
+    }
+
+    private final Function function;
+    private final List<Function> functions;
+    private final int[] code;
+    private final long memorySize;
+
+    /**
+     * The constants of the function, plus and minus one, the thresholds intervals are widened to
+     */
+    private final long[] thresholds;
+
+    private final List<Label> labels = new ArrayList<>();
+
+    /**
+     * Per position of the decoded code: whether the access there was proven in bounds every time it was analysed
+     * ({@link Boolean#TRUE}), at least once not ({@link Boolean#FALSE}) or never analysed (<code>null</code>)
+     */
+    private final Boolean[] proven;
+
+    private int remainingInstructions;
+
+    private BoundsCheckElimination(Function function, List<Function> functions, long memorySize) {
+        this.function = function;
+        this.functions = functions;
+        this.code = function.getCode();
+        this.memorySize = Math.min(memorySize, INT_MAX);
+        this.thresholds = thresholds(code);
+        this.proven = new Boolean[code.length];
+        this.remainingInstructions = ANALYSED_INSTRUCTIONS_PER_INSTRUCTION_MAX * code.length;
+    }
+
+    /**
+     * Replaces the opcodes of the memory accesses of the function that are proven to be in bounds with their in-bounds
+     * variants.
+     *
+     * @param function   the function, whose code is already decoded, see {@link CodeDecoder}
+     * @param functions  all functions of the module, needed to resolve the signatures of called functions
+     * @param memorySize the minimum size of the linear memory in bytes, zero if the module has no memory
+     */
+    public static void apply(Function function, List<Function> functions, long memorySize) {
+        if (memorySize == 0) {
+            return;
+        }
+        new BoundsCheckElimination(function, functions, memorySize).apply();
+    }
+
+    /**
+     * @return the opcode of the checked instruction of an in-bounds variant, other opcodes unchanged
+     */
+    public static int checkedOpCode(int opCode) {
+        if (opCode >= I32_LOAD_IN_BOUNDS && opCode <= I32_STORE16_IN_BOUNDS) {
+            return opCode - IN_BOUNDS_BASE;
+        }
+        return opCode;
+    }
+
+    private void apply() {
+        int localCount = function.getParameterCount() + function.getLocalVariableCount();
+        long[] min = new long[localCount];
+        long[] max = new long[localCount];
+        // the parameters can hold any value, the other local variables are initialised with zero
+        Arrays.fill(min, 0, function.getParameterCount(), INT_MIN);
+        Arrays.fill(max, 0, function.getParameterCount(), INT_MAX);
+
+        // the function body itself is the outermost block, a branch to it is a return
+        labels.add(new Label());
+        analyse(0, code.length, new State(min, max, new ArrayList<>()));
+
+        if (remainingInstructions < 0) {
+            return;
+        }
+        for (int pc = 0; pc < code.length; pc++) {
+            if (proven[pc] == Boolean.TRUE) {
+                code[pc] += IN_BOUNDS_BASE;
+            }
+        }
+    }
+
+    /**
+     * Analyses the instructions from <code>pc</code> up to <code>endPc</code>, entering nested blocks.
+     *
+     * @return the state at <code>endPc</code>, <code>null</code> if it is unreachable
+     */
+    private State analyse(int pc, int endPc, State state) {
+        while (pc < endPc) {
+            if (state == null) {
+                // behind a block whose end is unreachable, nothing up to endPc is reached either
+                return null;
+            }
+            if (--remainingInstructions < 0) {
+                // too expensive, the results are discarded
+                return null;
+            }
+
+            int opCode = Superinstructions.baseOpCode(code[pc]);
+            int immediates = pc + 1;
+            pc += 1 + CodeDecoder.immediateCount(opCode);
+
+            switch (opCode) {
+                /***************************
+                 * Control instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Control.BLOCK: {
+                    int blockEndPc = code[immediates + 1];
+                    int height = state.stack.size();
+                    Label label = new Label();
+                    labels.add(label);
+                    State end = analyse(pc, blockEndPc - 1, state);
+                    labels.remove(labels.size() - 1);
+                    state = leaveBlock(join(end, label.branches), height, code[immediates]);
+                    pc = blockEndPc;
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.LOOP: {
+                    int loopEndPc = code[immediates + 1];
+                    state = analyseLoop(pc, loopEndPc, state, code[immediates]);
+                    pc = loopEndPc;
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.IF: {
+                    int elsePc = code[immediates + 1];
+                    int ifEndPc = code[immediates + 2];
+                    Value condition = pop(state);
+                    int height = state.stack.size();
+                    Label label = new Label();
+                    labels.add(label);
+                    State thenEnd;
+                    State elseEnd;
+                    if (elsePc == ifEndPc) {
+                        thenEnd = analyse(pc, ifEndPc - 1, refine(state, condition, true));
+                        elseEnd = refine(state, condition, false);
+                    } else {
+                        // the else instruction and its immediate precede the else branch
+                        thenEnd = analyse(pc, elsePc - 2, refine(state, condition, true));
+                        elseEnd = analyse(elsePc, ifEndPc - 1, refine(state, condition, false));
+                    }
+                    labels.remove(labels.size() - 1);
+                    state = leaveBlock(join(join(thenEnd, elseEnd), label.branches), height, code[immediates]);
+                    pc = ifEndPc;
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.BR:
+                    branch(code[immediates], state);
+                    return null;
+                case BinaryFormat.Instructions.Control.BR_IF: {
+                    Value condition = pop(state);
+                    branch(code[immediates], refine(state, condition, true));
+                    state = refine(state, condition, false);
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.RETURN:
+                case BinaryFormat.Instructions.Control.UNREACHABLE:
+                    return null;
+                case BinaryFormat.Instructions.Control.NOP:
+                    break;
+                case BinaryFormat.Instructions.Control.CALL: {
+                    Function calledFunction = functions.get(code[immediates]);
+                    for (int i = 0; i < calledFunction.getParameterCount(); i++) {
+                        pop(state);
+                    }
+                    for (int i = 0; i < calledFunction.getReturnValueCount(); i++) {
+                        state.stack.add(Value.ANY);
+                    }
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.DROP:
+                    pop(state);
+                    break;
+
+                /***************************
+                 * Variable and constant access instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Variable.GET_LOCAL: {
+                    int local = code[immediates];
+                    state.stack.add(new Value(state.min[local], state.max[local], local, null));
+                    break;
+                }
+                case BinaryFormat.Instructions.Variable.SET_LOCAL:
+                    setLocal(state, code[immediates], pop(state));
+                    break;
+                case BinaryFormat.Instructions.Variable.TEE_LOCAL: {
+                    int local = code[immediates];
+                    Value value = pop(state);
+                    setLocal(state, local, value);
+                    state.stack.add(new Value(value.min, value.max, local, null));
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_CONST:
+                    state.stack.add(new Value(code[immediates], code[immediates]));
+                    break;
+
+                /***************************
+                 * Memory instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Memory.I32_LOAD:
+                    checkAccess(immediates - 1, pop(state), code[immediates], 4);
+                    state.stack.add(Value.ANY);
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
+                    checkAccess(immediates - 1, pop(state), code[immediates], 1);
+                    state.stack.add(new Value(Byte.MIN_VALUE, Byte.MAX_VALUE));
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
+                    checkAccess(immediates - 1, pop(state), code[immediates], 1);
+                    state.stack.add(new Value(0, 0xFF));
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
+                    checkAccess(immediates - 1, pop(state), code[immediates], 2);
+                    state.stack.add(new Value(Short.MIN_VALUE, Short.MAX_VALUE));
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
+                    checkAccess(immediates - 1, pop(state), code[immediates], 2);
+                    state.stack.add(new Value(0, 0xFFFF));
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_STORE:
+                    pop(state);
+                    checkAccess(immediates - 1, pop(state), code[immediates], 4);
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_STORE8:
+                    pop(state);
+                    checkAccess(immediates - 1, pop(state), code[immediates], 1);
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_STORE16:
+                    pop(state);
+                    checkAccess(immediates - 1, pop(state), code[immediates], 2);
+                    break;
+                case BinaryFormat.Instructions.Memory.CURRENT_MEMORY:
+                    state.stack.add(new Value(0, 1L << 16));
+                    break;
+                case BinaryFormat.Instructions.Memory.GROW_MEMORY:
+                    pop(state);
+                    state.stack.add(new Value(-1, 1L << 16));
+                    break;
+                case CodeDecoder.MEMORY_INIT:
+                case CodeDecoder.MEMORY_COPY:
+                case CodeDecoder.MEMORY_FILL:
+                    pop(state);
+                    pop(state);
+                    pop(state);
+                    break;
+                case CodeDecoder.DATA_DROP:
+                    break;
+
+                /***************************
+                 * Numeric instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Numeric.I32_EQZ: {
+                    Value value = pop(state);
+                    if (value.condition != null) {
+                        state.stack.add(new Value(0, 1, -1, negate(value.condition)));
+                    } else if (value.local >= 0) {
+                        state.stack.add(new Value(0, 1, -1,
+                            new Condition(value.local, BinaryFormat.Instructions.Numeric.I32_EQ, 0)));
+                    } else {
+                        state.stack.add(Value.BOOLEAN);
+                    }
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_EQ:
+                case BinaryFormat.Instructions.Numeric.I32_NE:
+                case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                case BinaryFormat.Instructions.Numeric.I32_LT_U:
+                case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                case BinaryFormat.Instructions.Numeric.I32_GT_U:
+                case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                case BinaryFormat.Instructions.Numeric.I32_LE_U:
+                case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                case BinaryFormat.Instructions.Numeric.I32_GE_U: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    Condition condition = null;
+                    if (left.local >= 0 && right.isConstant()) {
+                        condition = new Condition(left.local, opCode, right.min);
+                    } else if (right.local >= 0 && left.isConstant()) {
+                        condition = new Condition(right.local, swapOperands(opCode), left.min);
+                    }
+                    state.stack.add(new Value(0, 1, -1, condition));
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_CLZ:
+                case BinaryFormat.Instructions.Numeric.I32_CTZ:
+                case BinaryFormat.Instructions.Numeric.I32_POPCNT:
+                    pop(state);
+                    state.stack.add(new Value(0, 32));
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_ADD: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    state.stack.add(Value.of(left.min + right.min, left.max + right.max));
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_SUB: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    state.stack.add(Value.of(left.min - right.max, left.max - right.min));
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_MUL: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    state.stack.add(multiply(left, right));
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_AND: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    if (left.min >= 0 && right.min >= 0) {
+                        state.stack.add(new Value(0, Math.min(left.max, right.max)));
+                    } else if (left.min >= 0 || right.min >= 0) {
+                        state.stack.add(new Value(0, left.min >= 0 ? left.max : right.max));
+                    } else {
+                        state.stack.add(Value.ANY);
+                    }
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_SHL: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    if (right.isConstant()) {
+                        int shift = (int) right.min & 31;
+                        state.stack.add(Value.of(left.min << shift, left.max << shift));
+                    } else {
+                        state.stack.add(Value.ANY);
+                    }
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_SHR_U: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    int shift = (int) right.min & 31;
+                    if (!right.isConstant() || shift == 0 && left.min < 0) {
+                        state.stack.add(Value.ANY);
+                    } else if (left.min >= 0) {
+                        state.stack.add(new Value(left.min >> shift, left.max >> shift));
+                    } else {
+                        state.stack.add(new Value(0, 0xFFFFFFFFL >>> shift));
+                    }
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_REM_U: {
+                    Value right = pop(state);
+                    Value left = pop(state);
+                    long divisor = right.min & 0xFFFFFFFFL;
+                    if (right.isConstant() && divisor != 0 && divisor <= INT_MAX + 1) {
+                        state.stack.add(new Value(0, left.min >= 0 ? Math.min(left.max, divisor - 1) : divisor - 1));
+                    } else {
+                        state.stack.add(Value.ANY);
+                    }
+                    break;
+                }
+                case BinaryFormat.Instructions.Numeric.I32_DIV_S:
+                case BinaryFormat.Instructions.Numeric.I32_DIV_U:
+                case BinaryFormat.Instructions.Numeric.I32_REM_S:
+                case BinaryFormat.Instructions.Numeric.I32_OR:
+                case BinaryFormat.Instructions.Numeric.I32_XOR:
+                case BinaryFormat.Instructions.Numeric.I32_SHR_S:
+                case BinaryFormat.Instructions.Numeric.I32_ROTL:
+                case BinaryFormat.Instructions.Numeric.I32_ROTR:
+                    pop(state);
+                    pop(state);
+                    state.stack.add(Value.ANY);
+                    break;
+                default:
+                    throw new ParserException("Invalid (or not implemented) instruction! [opcode: 0x"
+                        + Integer.toHexString(opCode) + "]");
+            }
+
+            if (state == null) {
+                // the rest of the block is unreachable
+                return null;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Analyses the body of a loop until the intervals at its start cover all iterations.
+     *
+     * @return the state behind the loop, <code>null</code> if it is unreachable
+     */
+    private State analyseLoop(int pc, int loopEndPc, State entry, int arity) {
+        int height = entry.stack.size();
+        Label label = new Label();
+        labels.add(label);
+
+        State start = entry;
+        State end;
+        int iteration = 0;
+        while (true) {
+            label.branches = null;
+            end = analyse(pc, loopEndPc - 1, start.copy());
+            State next = join(entry, label.branches);
+            if (covers(start, next) || remainingInstructions < 0) {
+                break;
+            }
+            iteration++;
+            start = iteration >= ITERATIONS_BEFORE_WIDENING ? widen(start, next) : join(start, next);
+        }
+
+        labels.remove(labels.size() - 1);
+        return leaveBlock(end, height, arity);
+    }
+
+    private void branch(int depth, State state) {
+        if (state == null || depth == labels.size() - 1) {
+            // a branch to the function body's label is a return
+            return;
+        }
+        Label label = labels.get(labels.size() - 1 - depth);
+        label.branches = join(label.branches, state);
+    }
+
+    /**
+     * @return the state behind a block with the given result count, whose operands are unknown
+     */
+    private static State leaveBlock(State state, int height, int arity) {
+        if (state == null) {
+            return null;
+        }
+        List<Value> stack = new ArrayList<>(state.stack.subList(0, Math.min(height, state.stack.size())));
+        for (int i = 0; i < arity; i++) {
+            stack.add(Value.ANY);
+        }
+        return new State(state.min, state.max, stack);
+    }
+
+    /**
+     * Records whether a memory access is in bounds, see the class documentation.
+     */
+    private void checkAccess(int pc, Value address, int offset, int byteCount) {
+        boolean inBounds = address.min >= 0
+            && address.max + Integer.toUnsignedLong(offset) + byteCount <= memorySize;
+        proven[pc] = (proven[pc] == null || proven[pc]) && inBounds;
+    }
+
+    private static Value pop(State state) {
+        // the decoder has validated the operand stack, only unreachable code may pop more than was pushed
+        return state.stack.isEmpty() ? Value.ANY : state.stack.remove(state.stack.size() - 1);
+    }
+
+    private static void setLocal(State state, int local, Value value) {
+        state.min[local] = value.min;
+        state.max[local] = value.max;
+        // the operands copied from the old value of the local variable no longer tell anything about it
+        for (int i = 0; i < state.stack.size(); i++) {
+            Value operand = state.stack.get(i);
+            if (operand.local == local || operand.condition != null && operand.condition.local == local) {
+                state.stack.set(i, new Value(operand.min, operand.max));
+            }
+        }
+    }
+
+    /**
+     * @return a copy of the state in which the value is (not) zero, <code>null</code> if that is impossible
+     */
+    private static State refine(State state, Value value, boolean nonZero) {
+        if (state == null) {
+            return null;
+        }
+        Condition condition = value.condition;
+        if (condition == null) {
+            if (value.local < 0 || nonZero) {
+                return state.copy();
+            }
+            condition = new Condition(value.local, BinaryFormat.Instructions.Numeric.I32_EQ, 0);
+        } else if (!nonZero) {
+            condition = negate(condition);
+        }
+
+        int local = condition.local;
+        long min = state.min[local];
+        long max = state.max[local];
+        long constant = condition.constant;
+        long unsignedConstant = constant & 0xFFFFFFFFL;
+        switch (condition.relation) {
+            case BinaryFormat.Instructions.Numeric.I32_EQ:
+                min = Math.max(min, constant);
+                max = Math.min(max, constant);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                max = Math.min(max, constant - 1);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                max = Math.min(max, constant);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                min = Math.max(min, constant + 1);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                min = Math.max(min, constant);
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LT_U:
+            case BinaryFormat.Instructions.Numeric.I32_LE_U: {
+                // a small unsigned limit excludes the negative values
+                long limit = condition.relation == BinaryFormat.Instructions.Numeric.I32_LT_U
+                    ? unsignedConstant - 1 : unsignedConstant;
+                if (limit <= INT_MAX) {
+                    min = Math.max(min, 0);
+                    max = Math.min(max, limit);
+                }
+                break;
+            }
+            default:
+                // no information about the signed interval
+                break;
+        }
+        if (min > max) {
+            return null;
+        }
+
+        State refined = state.copy();
+        refined.min[local] = min;
+        refined.max[local] = max;
+        return refined;
+    }
+
+    private static Condition negate(Condition condition) {
+        int relation;
+        switch (condition.relation) {
+            case BinaryFormat.Instructions.Numeric.I32_EQ:
+                relation = BinaryFormat.Instructions.Numeric.I32_NE;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_NE:
+                relation = BinaryFormat.Instructions.Numeric.I32_EQ;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                relation = BinaryFormat.Instructions.Numeric.I32_GE_S;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                relation = BinaryFormat.Instructions.Numeric.I32_LT_S;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                relation = BinaryFormat.Instructions.Numeric.I32_GT_S;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                relation = BinaryFormat.Instructions.Numeric.I32_LE_S;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LT_U:
+                relation = BinaryFormat.Instructions.Numeric.I32_GE_U;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_GE_U:
+                relation = BinaryFormat.Instructions.Numeric.I32_LT_U;
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_LE_U:
+                relation = BinaryFormat.Instructions.Numeric.I32_GT_U;
+                break;
+            default:
+                relation = BinaryFormat.Instructions.Numeric.I32_LE_U;
+                break;
+        }
+        return new Condition(condition.local, relation, condition.constant);
+    }
+
+    /**
+     * @return the relation with its operands swapped, e.g. <code>gt</code> for <code>lt</code>
+     */
+    private static int swapOperands(int relation) {
+        switch (relation) {
+            case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                return BinaryFormat.Instructions.Numeric.I32_GT_S;
+            case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                return BinaryFormat.Instructions.Numeric.I32_LT_S;
+            case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                return BinaryFormat.Instructions.Numeric.I32_GE_S;
+            case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                return BinaryFormat.Instructions.Numeric.I32_LE_S;
+            case BinaryFormat.Instructions.Numeric.I32_LT_U:
+                return BinaryFormat.Instructions.Numeric.I32_GT_U;
+            case BinaryFormat.Instructions.Numeric.I32_GT_U:
+                return BinaryFormat.Instructions.Numeric.I32_LT_U;
+            case BinaryFormat.Instructions.Numeric.I32_LE_U:
+                return BinaryFormat.Instructions.Numeric.I32_GE_U;
+            case BinaryFormat.Instructions.Numeric.I32_GE_U:
+                return BinaryFormat.Instructions.Numeric.I32_LE_U;
+            default:
+                return relation;
+        }
+    }
+
+    private static Value multiply(Value left, Value right) {
+        if (Math.max(Math.abs(left.min), Math.abs(left.max)) > INT_MAX
+            || Math.max(Math.abs(right.min), Math.abs(right.max)) > INT_MAX) {
+            return Value.ANY;
+        }
+        // the products of 32 bit values fit into a long
+        long a = left.min * right.min;
+        long b = left.min * right.max;
+        long c = left.max * right.min;
+        long d = left.max * right.max;
+        return Value.of(Math.min(Math.min(a, b), Math.min(c, d)), Math.max(Math.max(a, b), Math.max(c, d)));
+    }
+
+    /**
+     * @return the local variables and the operands of both states, the operands the states have in common
+     */
+    private static State join(State first, State second) {
+        if (first == null) {
+            return second == null ? null : second.copy();
+        }
+        if (second == null) {
+            return first.copy();
+        }
+        State joined = first.copy();
+        for (int local = 0; local < joined.min.length; local++) {
+            joined.min[local] = Math.min(joined.min[local], second.min[local]);
+            joined.max[local] = Math.max(joined.max[local], second.max[local]);
+        }
+        // the operands above the shorter stack are left behind by a branch, the label's arity decides what remains
+        int height = Math.min(first.stack.size(), second.stack.size());
+        joined.stack.subList(height, joined.stack.size()).clear();
+        for (int i = 0; i < height; i++) {
+            joined.stack.set(i, join(first.stack.get(i), second.stack.get(i)));
+        }
+        return joined;
+    }
+
+    /**
+     * @return the interval of both operands, and the local variable and condition only if both of them are bound to
+     * the same one, as one path may have assigned the local variable after the other one copied it
+     */
+    private static Value join(Value first, Value second) {
+        if (first == second) {
+            return first;
+        }
+        return new Value(Math.min(first.min, second.min), Math.max(first.max, second.max),
+            first.local == second.local ? first.local : -1,
+            first.condition == second.condition ? first.condition : null);
+    }
+
+    /**
+     * @return whether the intervals of the first state contain the intervals of the second one, and the second one
+     * keeps every binding of the operands of the first one
+     */
+    private static boolean covers(State state, State other) {
+        for (int local = 0; local < state.min.length; local++) {
+            if (other.min[local] < state.min[local] || other.max[local] > state.max[local]) {
+                return false;
+            }
+        }
+        for (int i = 0; i < Math.min(state.stack.size(), other.stack.size()); i++) {
+            Value operand = state.stack.get(i);
+            Value otherOperand = other.stack.get(i);
+            if (otherOperand.min < operand.min || otherOperand.max > operand.max
+                || operand.local >= 0 && operand.local != otherOperand.local
+                || operand.condition != null && operand.condition != otherOperand.condition) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the state with the intervals growing to the next state widened to the next threshold
+     */
+    private State widen(State state, State next) {
+        State widened = join(state, next);
+        for (int local = 0; local < widened.min.length; local++) {
+            if (next.min[local] < state.min[local]) {
+                widened.min[local] = thresholdBelow(next.min[local]);
+            }
+            if (next.max[local] > state.max[local]) {
+                widened.max[local] = thresholdAbove(next.max[local]);
+            }
+        }
+        return widened;
+    }
+
+    private long thresholdBelow(long value) {
+        int index = Arrays.binarySearch(thresholds, value);
+        return index >= 0 ? thresholds[index] : thresholds[-index - 2];
+    }
+
+    private long thresholdAbove(long value) {
+        int index = Arrays.binarySearch(thresholds, value);
+        return index >= 0 ? thresholds[index] : thresholds[-index - 1];
+    }
+
+    /**
+     * @return the sorted constants of the code, each of them plus and minus one, and the bounds of the 32 bit integers
+     */
+    private static long[] thresholds(int[] code) {
+        TreeSet<Long> thresholds = new TreeSet<>();
+        thresholds.add(INT_MIN);
+        thresholds.add(INT_MAX);
+        for (int pc = 0; pc < code.length; pc += 1 + CodeDecoder.immediateCount(code[pc])) {
+            if (Superinstructions.baseOpCode(code[pc]) == BinaryFormat.Instructions.Numeric.I32_CONST) {
+                long constant = code[pc + 1];
+                for (long threshold = constant - 1; threshold <= constant + 1; threshold++) {
+                    thresholds.add(Math.max(INT_MIN, Math.min(INT_MAX, threshold)));
+                }
+            }
+        }
+        long[] sorted = new long[thresholds.size()];
+        int i = 0;
+        for (long threshold : thresholds) {
+            sorted[i++] = threshold;
+        }
+        return sorted;
+    }
+}
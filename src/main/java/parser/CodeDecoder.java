@@ -0,0 +1,559 @@
+package parser;
+
+import constants.BinaryFormat;
+import environment.Function;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Stack;
+
+import static util.Leb128.readSignedLeb128;
+import static util.Leb128.readUnsignedLeb128;
+
+/**
+ * Translates the binary encoded instructions of a function body into a compact int array. Every instruction occupies
+ * one int for its opcode, directly followed by one int per immediate argument, which is already LEB128 decoded.
+ * This is done once at load time, so the interpreter can execute a function with a plain int program counter instead
+ * of reading (and decoding) the byte stream on every execution of an instruction.
+ *
+ * While decoding, the structured control flow of the body is validated and resolved into a side table that is stored
+ * as immediates of the control instructions. Every branch can therefore be executed as a single jump:
+ * <ul>
+ * <li><code>block arity endPc</code></li>
+ * <li><code>loop arity endPc</code></li>
+ * <li><code>if arity elsePc endPc</code> (<code>elsePc == endPc</code> if there is no else branch)</li>
+ * <li><code>else endPc</code></li>
+ * <li><code>br depth targetPc arity height</code></li>
+ * <li><code>br_if depth targetPc arity height</code></li>
+ * </ul>
+ * <code>endPc</code> points behind the <code>end</code> of a block, <code>elsePc</code> behind the <code>else</code>
+ * of an if. A branch continues at <code>targetPc</code> with the operand stack unwound to <code>height</code> values
+ * (counted from the base of the function's operands) plus the <code>arity</code> values on top of the stack.
+ * The <code>end</code> closing the function body is translated into a <code>return</code>.
+ *
+ * Alignment hints of memory instructions are dropped, as they are ignored by the linear memory anyway. The reserved
+ * zero bytes of <code>current_memory</code>, <code>grow_memory</code> and the bulk memory instructions are dropped as
+ * well. The prefix and sub-opcode of a bulk memory instruction are decoded into a single opcode, see
+ * {@link #MEMORY_INIT}, {@link #DATA_DROP}, {@link #MEMORY_COPY} and {@link #MEMORY_FILL}:
+ * <ul>
+ * <li><code>memory.init segmentIndex</code></li>
+ * <li><code>data.drop segmentIndex</code></li>
+ * </ul>
+ */
+public class CodeDecoder {
+
+    /**
+     * The decoded opcodes of the bulk memory instructions are their sub-opcode plus this base, above the opcodes of
+     * the superinstructions
+     */
+    private static final int BULK_MEMORY_BASE = 0x1F0;
+
+    public static final int MEMORY_INIT = BULK_MEMORY_BASE | BinaryFormat.Instructions.BulkMemory.MEMORY_INIT;
+    public static final int DATA_DROP = BULK_MEMORY_BASE | BinaryFormat.Instructions.BulkMemory.DATA_DROP;
+    public static final int MEMORY_COPY = BULK_MEMORY_BASE | BinaryFormat.Instructions.BulkMemory.MEMORY_COPY;
+    public static final int MEMORY_FILL = BULK_MEMORY_BASE | BinaryFormat.Instructions.BulkMemory.MEMORY_FILL;
+
+    /**
+     * A block, loop or if whose end has not been decoded yet
+     */
+    private static class ControlFrame {
+        private final int opCode;
+        private final int arity;
+        private final int height;
+        private final int pc;
+
+        /**
+         * Positions in the decoded code that must be patched with the end of this block
+         */
+        private final List<Integer> endFixups = new ArrayList<>();
+
+        private boolean unreachable = false;
+
+        private ControlFrame(int opCode, int arity, int height, int pc) {
+            this.opCode = opCode;
+            this.arity = arity;
+            this.height = height;
+            this.pc = pc;
+        }
+
+        /**
+         * @return the number of values a branch to this frame's label carries
+         */
+        private int labelArity() {
+            return opCode == BinaryFormat.Instructions.Control.LOOP ? 0 : arity;
+        }
+    }
+
+    /**
+     * The binary encoded function body, a view of its own
+     */
+    private final ByteBuffer instructions;
+    private final Function function;
+    private final List<Function> functions;
+    private final int dataSegmentCount;
+
+    private final Stack<ControlFrame> controlStack = new Stack<>();
+    private int height = 0;
+    private int maxHeight = 0;
+
+    private int[] code;
+    private int codeLength = 0;
+
+    private CodeDecoder(Function function, List<Function> functions, int dataSegmentCount) {
+        this.instructions = function.getInstructions().duplicate();
+        this.function = function;
+        this.functions = functions;
+        this.dataSegmentCount = dataSegmentCount;
+        this.code = new int[instructions.remaining() + 1];
+    }
+
+    /**
+     * Decodes and validates a single function body and stores the result, as well as the number of local variables
+     * and the maximum height of its operand stack, in the function.
+     *
+     * @param function  the function, whose binary encoded body (local variable declarations and instructions) is set
+     * @param functions all functions of the module, needed to resolve the signatures of called functions
+     * @throws ParserException if the body contains an invalid (or not implemented) instruction or is malformed
+     */
+    public static void decode(Function function, List<Function> functions) {
+        decode(function, functions, -1);
+    }
+
+    /**
+     * Decodes and validates the instructions of a single function body like {@link #decode(Function, List)}, with
+     * the number of data segments declared by the data count section, which is needed to validate
+     * <code>memory.init</code> and <code>data.drop</code>.
+     *
+     * @param dataSegmentCount the number of data segments, -1 if the module has no data count section
+     * @throws ParserException if the body contains an invalid (or not implemented) instruction or is malformed
+     */
+    public static void decode(Function function, List<Function> functions, int dataSegmentCount) {
+        CodeDecoder decoder = new CodeDecoder(function, functions, dataSegmentCount);
+        function.setCode(decoder.decode());
+        function.setMaxStackHeight(decoder.maxHeight);
+    }
+
+    /**
+     * Returns the number of immediate arguments following the given opcode in decoded code. For a superinstruction
+     * this is the number of immediates of the first instruction of its sequence, an in-bounds memory instruction (see
+     * {@link BoundsCheckElimination}) has the immediates of the checked one.
+     *
+     * @param opCode the opcode of a decoded instruction
+     * @return the number of ints between this opcode and the next one
+     */
+    public static int immediateCount(int opCode) {
+        switch (BoundsCheckElimination.checkedOpCode(Superinstructions.baseOpCode(opCode))) {
+            case BinaryFormat.Instructions.Control.BR:
+            case BinaryFormat.Instructions.Control.BR_IF:
+                return 4;
+            case BinaryFormat.Instructions.Control.IF:
+                return 3;
+            case BinaryFormat.Instructions.Control.BLOCK:
+            case BinaryFormat.Instructions.Control.LOOP:
+                return 2;
+            case BinaryFormat.Instructions.Control.ELSE:
+            case BinaryFormat.Instructions.Control.CALL:
+            case BinaryFormat.Instructions.Variable.GET_LOCAL:
+            case BinaryFormat.Instructions.Variable.SET_LOCAL:
+            case BinaryFormat.Instructions.Variable.TEE_LOCAL:
+            case BinaryFormat.Instructions.Numeric.I32_CONST:
+            case BinaryFormat.Instructions.Memory.I32_LOAD:
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
+            case BinaryFormat.Instructions.Memory.I32_STORE:
+            case BinaryFormat.Instructions.Memory.I32_STORE8:
+            case BinaryFormat.Instructions.Memory.I32_STORE16:
+            case MEMORY_INIT:
+            case DATA_DROP:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    private int[] decode() {
+        readLocalVariableDeclarations();
+
+        // the function body itself is the outermost block, a branch to it is a return
+        controlStack.push(new ControlFrame(BinaryFormat.Instructions.Control.BLOCK,
+            function.getReturnValueCount(), 0, 0));
+
+        while (instructions.hasRemaining()) {
+            int opCode = instructions.get() & 0xFF;
+            if (controlStack.isEmpty()) {
+                throw new ParserException("Instructions after the end of the function body!");
+            }
+
+            switch ((byte) opCode) {
+                /***************************
+                 * Control instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Control.BLOCK:
+                case BinaryFormat.Instructions.Control.LOOP:
+                    controlStack.push(new ControlFrame(opCode, readBlockArity(), height, codeLength));
+                    emit(opCode);
+                    emit(controlStack.peek().arity);
+                    controlStack.peek().endFixups.add(codeLength);
+                    emit(-1);
+                    break;
+                case BinaryFormat.Instructions.Control.IF:
+                    pop(1);
+                    controlStack.push(new ControlFrame(opCode, readBlockArity(), height, codeLength));
+                    emit(opCode);
+                    emit(controlStack.peek().arity);
+                    // the else target is patched when the else (or end) is decoded
+                    emit(-1);
+                    controlStack.peek().endFixups.add(codeLength);
+                    emit(-1);
+                    break;
+                case BinaryFormat.Instructions.Control.ELSE: {
+                    ControlFrame frame = controlStack.peek();
+                    if (frame.opCode != BinaryFormat.Instructions.Control.IF) {
+                        throw new ParserException("Else without matching if!");
+                    }
+                    checkBlockResult(frame);
+                    emit(opCode);
+                    frame.endFixups.add(codeLength);
+                    emit(-1);
+                    code[frame.pc + 2] = codeLength;
+                    height = frame.height;
+                    frame.unreachable = false;
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.END: {
+                    ControlFrame frame = controlStack.pop();
+                    checkBlockResult(frame);
+                    if (controlStack.isEmpty()) {
+                        // a branch to the function body's label returns from the function
+                        for (int fixup : frame.endFixups) {
+                            code[fixup] = codeLength;
+                        }
+                        emit(BinaryFormat.Instructions.Control.RETURN);
+                        break;
+                    }
+                    emit(opCode);
+                    for (int fixup : frame.endFixups) {
+                        code[fixup] = codeLength;
+                    }
+                    if (frame.opCode == BinaryFormat.Instructions.Control.IF && code[frame.pc + 2] == -1) {
+                        // no else branch
+                        code[frame.pc + 2] = codeLength;
+                    }
+                    height = frame.height + frame.arity;
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.BR:
+                case BinaryFormat.Instructions.Control.BR_IF: {
+                    int depth = readUnsignedLeb128(instructions);
+                    if (depth >= controlStack.size()) {
+                        throw new ParserException("Invalid branch depth! [depth: " + depth + "]");
+                    }
+                    if (opCode == BinaryFormat.Instructions.Control.BR_IF) {
+                        pop(1);
+                    }
+                    ControlFrame target = controlStack.get(controlStack.size() - 1 - depth);
+                    pop(target.labelArity());
+                    push(target.labelArity());
+
+                    emit(opCode);
+                    emit(depth);
+                    if (target.opCode == BinaryFormat.Instructions.Control.LOOP) {
+                        // a branch to a loop continues right behind the loop instruction
+                        emit(target.pc + 1 + immediateCount(BinaryFormat.Instructions.Control.LOOP));
+                    } else {
+                        target.endFixups.add(codeLength);
+                        emit(-1);
+                    }
+                    emit(target.labelArity());
+                    emit(target.height);
+
+                    if (opCode == BinaryFormat.Instructions.Control.BR) {
+                        setUnreachable();
+                    }
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.RETURN:
+                    pop(function.getReturnValueCount());
+                    emit(opCode);
+                    setUnreachable();
+                    break;
+                case BinaryFormat.Instructions.Control.UNREACHABLE:
+                    emit(opCode);
+                    setUnreachable();
+                    break;
+                case BinaryFormat.Instructions.Control.NOP:
+                    emit(opCode);
+                    break;
+                case BinaryFormat.Instructions.Control.CALL: {
+                    int calledFunctionIndex = readUnsignedLeb128(instructions);
+                    if (calledFunctionIndex >= functions.size()) {
+                        throw new ParserException("Call to unknown function! [index: " + calledFunctionIndex + "]");
+                    }
+                    Function calledFunction = functions.get(calledFunctionIndex);
+                    pop(calledFunction.getParameterCount());
+                    push(calledFunction.getReturnValueCount());
+                    emit(opCode);
+                    emit(calledFunctionIndex);
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.DROP:
+                    pop(1);
+                    emit(opCode);
+                    break;
+
+                /***************************
+                 * Variable and constant access instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Variable.GET_LOCAL:
+                    emit(opCode);
+                    emit(readLocalIndex());
+                    push(1);
+                    break;
+                case BinaryFormat.Instructions.Variable.SET_LOCAL:
+                    pop(1);
+                    emit(opCode);
+                    emit(readLocalIndex());
+                    break;
+                case BinaryFormat.Instructions.Variable.TEE_LOCAL:
+                    pop(1);
+                    push(1);
+                    emit(opCode);
+                    emit(readLocalIndex());
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_CONST:
+                    emit(opCode);
+                    emit(readSignedLeb128(instructions));
+                    push(1);
+                    break;
+
+                /***************************
+                 * Memory instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Memory.I32_LOAD:
+                case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
+                case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
+                case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
+                case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
+                    pop(1);
+                    push(1);
+                    emitMemoryInstruction(opCode);
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_STORE:
+                case BinaryFormat.Instructions.Memory.I32_STORE8:
+                case BinaryFormat.Instructions.Memory.I32_STORE16:
+                    pop(2);
+                    emitMemoryInstruction(opCode);
+                    break;
+                case BinaryFormat.Instructions.Memory.CURRENT_MEMORY:
+                    // an all zero byte is reserved for future use, so just skip it
+                    skip(1);
+                    emit(opCode);
+                    push(1);
+                    break;
+                case BinaryFormat.Instructions.Memory.GROW_MEMORY:
+                    // an all zero byte is reserved for future use, so just skip it
+                    skip(1);
+                    pop(1);
+                    push(1);
+                    emit(opCode);
+                    break;
+                case BinaryFormat.Instructions.BulkMemory.PREFIX:
+                    decodeBulkMemoryInstruction();
+                    break;
+
+                /***************************
+                 * Numeric instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Numeric.I32_EQZ:
+                case BinaryFormat.Instructions.Numeric.I32_CLZ:
+                case BinaryFormat.Instructions.Numeric.I32_CTZ:
+                case BinaryFormat.Instructions.Numeric.I32_POPCNT:
+                    pop(1);
+                    push(1);
+                    emit(opCode);
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_EQ:
+                case BinaryFormat.Instructions.Numeric.I32_NE:
+                case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                case BinaryFormat.Instructions.Numeric.I32_LT_U:
+                case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                case BinaryFormat.Instructions.Numeric.I32_GT_U:
+                case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                case BinaryFormat.Instructions.Numeric.I32_LE_U:
+                case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                case BinaryFormat.Instructions.Numeric.I32_GE_U:
+                case BinaryFormat.Instructions.Numeric.I32_ADD:
+                case BinaryFormat.Instructions.Numeric.I32_SUB:
+                case BinaryFormat.Instructions.Numeric.I32_MUL:
+                case BinaryFormat.Instructions.Numeric.I32_DIV_S:
+                case BinaryFormat.Instructions.Numeric.I32_DIV_U:
+                case BinaryFormat.Instructions.Numeric.I32_REM_S:
+                case BinaryFormat.Instructions.Numeric.I32_REM_U:
+                case BinaryFormat.Instructions.Numeric.I32_AND:
+                case BinaryFormat.Instructions.Numeric.I32_OR:
+                case BinaryFormat.Instructions.Numeric.I32_XOR:
+                case BinaryFormat.Instructions.Numeric.I32_SHL:
+                case BinaryFormat.Instructions.Numeric.I32_SHR_S:
+                case BinaryFormat.Instructions.Numeric.I32_SHR_U:
+                case BinaryFormat.Instructions.Numeric.I32_ROTL:
+                case BinaryFormat.Instructions.Numeric.I32_ROTR:
+                    pop(2);
+                    push(1);
+                    emit(opCode);
+                    break;
+                default:
+                    throw new ParserException("Invalid (or not implemented) instruction! [opcode: 0x"
+                        + Integer.toHexString(opCode) + "]");
+            }
+        }
+
+        if (!controlStack.isEmpty()) {
+            throw new ParserException("Function body is not terminated by an end!");
+        }
+
+        return Arrays.copyOf(code, codeLength);
+    }
+
+    /**
+     * Reads the declarations of the local variables, a vector of (count, type) entries, at the start of the body
+     */
+    private void readLocalVariableDeclarations() {
+        int entryCount = readUnsignedLeb128(instructions);
+        long localVariableCount = 0;
+        for (int i = 0; i < entryCount; i++) {
+            localVariableCount += Integer.toUnsignedLong(readUnsignedLeb128(instructions));
+            if (!instructions.hasRemaining() || instructions.get() != BinaryFormat.Types.ValueType.I32) {
+                throw new ParserException("Invalid (or not supported) local variable type!");
+            }
+        }
+        if (localVariableCount > Integer.MAX_VALUE - function.getParameterCount()) {
+            throw new ParserException("Too many local variables! [count: " + localVariableCount + "]");
+        }
+        function.setLocalVariableCount((int) localVariableCount);
+    }
+
+    private int readBlockArity() {
+        byte blockType = instructions.get();
+        switch (blockType) {
+            case BinaryFormat.Types.RESULT_TYPE_EMPTY:
+                return 0;
+            case BinaryFormat.Types.ValueType.I32:
+                return 1;
+            default:
+                throw new ParserException("Invalid (or not supported) block type!");
+        }
+    }
+
+    private int readLocalIndex() {
+        int index = readUnsignedLeb128(instructions);
+        if (index >= function.getParameterCount() + function.getLocalVariableCount()) {
+            throw new ParserException("Access to unknown local variable! [index: " + index + "]");
+        }
+        return index;
+    }
+
+    private void decodeBulkMemoryInstruction() {
+        int subOpCode = readUnsignedLeb128(instructions);
+        switch (subOpCode) {
+            case BinaryFormat.Instructions.BulkMemory.MEMORY_INIT:
+                pop(3);
+                emit(MEMORY_INIT);
+                emit(readDataSegmentIndex());
+                // the reserved memory index
+                skip(1);
+                break;
+            case BinaryFormat.Instructions.BulkMemory.DATA_DROP:
+                emit(DATA_DROP);
+                emit(readDataSegmentIndex());
+                break;
+            case BinaryFormat.Instructions.BulkMemory.MEMORY_COPY:
+                // the reserved destination and source memory indices
+                skip(2);
+                pop(3);
+                emit(MEMORY_COPY);
+                break;
+            case BinaryFormat.Instructions.BulkMemory.MEMORY_FILL:
+                skip(1);
+                pop(3);
+                emit(MEMORY_FILL);
+                break;
+            default:
+                throw new ParserException("Invalid (or not implemented) instruction! [opcode: 0x"
+                    + Integer.toHexString(BinaryFormat.Instructions.BulkMemory.PREFIX & 0xFF) + " "
+                    + subOpCode + "]");
+        }
+    }
+
+    private int readDataSegmentIndex() {
+        if (dataSegmentCount < 0) {
+            throw new ParserException("Data segment access without a data count section!");
+        }
+        int index = readUnsignedLeb128(instructions);
+        if (index >= dataSegmentCount) {
+            throw new ParserException("Access to unknown data segment! [index: " + index + "]");
+        }
+        return index;
+    }
+
+    private void emitMemoryInstruction(int opCode) {
+        emit(opCode);
+        // the alignment hint is ignored, only the offset is kept
+        readUnsignedLeb128(instructions);
+        emit(readUnsignedLeb128(instructions));
+    }
+
+    /**
+     * Checks that exactly the result values of the given block are left on the operand stack at its end.
+     */
+    private void checkBlockResult(ControlFrame frame) {
+        if (frame.unreachable) {
+            // the operand stack is polymorphic after an unconditional branch
+            return;
+        }
+        if (height != frame.height + frame.arity) {
+            throw new ParserException("Wrong number of values on the operand stack at the end of a block! Expected: "
+                + frame.arity + ", actual: " + (height - frame.height));
+        }
+    }
+
+    private void setUnreachable() {
+        ControlFrame frame = controlStack.peek();
+        frame.unreachable = true;
+        height = frame.height;
+    }
+
+    private void pop(int count) {
+        ControlFrame frame = controlStack.peek();
+        if (height - count < frame.height) {
+            if (!frame.unreachable) {
+                throw new ParserException("Operand stack underflow!");
+            }
+            height = frame.height;
+        } else {
+            height -= count;
+        }
+    }
+
+    private void push(int count) {
+        height += count;
+        maxHeight = Math.max(maxHeight, height);
+    }
+
+    private void skip(int count) {
+        if (instructions.remaining() < count) {
+            throw new ParserException("Function body is not terminated by an end!");
+        }
+        instructions.position(instructions.position() + count);
+    }
+
+    private void emit(int value) {
+        if (codeLength == code.length) {
+            code = Arrays.copyOf(code, Math.max(1, code.length * 2));
+        }
+        code[codeLength++] = value;
+    }
+}
@@ -0,0 +1,328 @@
+package parser;
+
+import constants.ImplementationSpecific;
+import constants.WebAssemblySpecification;
+import environment.Function;
+import environment.LinearMemory;
+import environment.Module;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A cache of parsed modules in a directory, so a module that has been run before is not parsed and decoded again.
+ * A module is cached in a file named after the SHA-256 hash of its binary encoding and the parser options, which holds
+ * the decoded code, the local variable counts and stack heights of its functions, the function signatures, its start
+ * function, its memory limits and its data segments. A cached module is loaded by mapping the file, the code of a
+ * function is copied out of the mapping when the function is called for the first time.
+ *
+ * The cached code is not validated again, so the directory has to be trusted like the class path. A module that is not
+ * cached yet is parsed with all function bodies decoded and validated eagerly, as all of them are written.
+ *
+ * The format of a file, big endian:
+ * <pre>
+ * int magic, int version, byte[32] key
+ * int startFunctionIndex, int memoryPageCount (-1 without a memory), int maxMemoryPageCount
+ * int functionCount, per function: int parameterCount, int returnValueCount, int localVariableCount,
+ *     int maxStackHeight, int codeLength
+ * int segmentCount, per segment: long address (-1 for a passive segment), int length, byte[length] contents
+ * zeros up to the next multiple of 4, followed by the code of all functions
+ * </pre>
+ */
+public class ModuleCache {
+
+    /**
+     * "JWMC" in ASCII
+     */
+    private static final int MAGIC = 0x4A574D43;
+
+    /**
+     * Has to be increased whenever the format or the decoded code changes, e.g. by new opcodes or immediates, as a
+     * cached module of another version is parsed again
+     */
+    private static final int VERSION = 1;
+
+    private static final String FILE_EXTENSION = ".jwmc";
+
+    /**
+     * The number of bytes of the signature, counts and code length of a function
+     */
+    private static final int FUNCTION_SIZE = 5 * Integer.BYTES;
+
+    /**
+     * The number of bytes of the address and length of a data segment, without its contents
+     */
+    private static final int SEGMENT_SIZE = Long.BYTES + Integer.BYTES;
+
+    private final File directory;
+    private final boolean superinstructions;
+    private final boolean boundsCheckElimination;
+
+    public ModuleCache(File directory) {
+        this(directory, true, true);
+    }
+
+    /**
+     * @param directory              the directory holding the cached modules, created when the first one is cached
+     * @param superinstructions      see {@link BinaryParser#BinaryParser(boolean, boolean, boolean)}
+     * @param boundsCheckElimination see {@link BinaryParser#BinaryParser(boolean, boolean, boolean)}
+     */
+    public ModuleCache(File directory, boolean superinstructions, boolean boundsCheckElimination) {
+        this.directory = directory;
+        this.superinstructions = superinstructions;
+        this.boundsCheckElimination = boundsCheckElimination;
+    }
+
+    /**
+     * Loads a module from the cache, or parses and caches it if it is not cached yet.
+     *
+     * @throws IOException     if reading the module or reading or writing the cache fails
+     * @throws ParserException if the module is not cached and invalid
+     */
+    public Module load(File file) throws IOException, ParserException {
+        ByteBuffer binary;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            binary = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        byte[] key = key(binary);
+        File cacheFile = new File(directory, hex(key) + FILE_EXTENSION);
+
+        if (cacheFile.isFile()) {
+            Module module = read(cacheFile, key);
+            if (module != null) {
+                return module;
+            }
+        }
+
+        BinaryParser parser = new BinaryParser(superinstructions, boundsCheckElimination, true);
+        Module module = parser.parse(binary);
+        write(cacheFile, key, module, parser);
+        return module;
+    }
+
+    /**
+     * @return the hash of the binary encoding and the parser options, which both decide the decoded code
+     */
+    private byte[] key(ByteBuffer binary) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has to support SHA-256
+            throw new IllegalStateException(e);
+        }
+        digest.update(binary.duplicate());
+        digest.update((byte) (superinstructions ? 1 : 0));
+        digest.update((byte) (boundsCheckElimination ? 1 : 0));
+        return digest.digest();
+    }
+
+    /**
+     * @return the cached module, <code>null</code> if the file is of another version, another module, incomplete or
+     * inconsistent
+     */
+    private static Module read(File cacheFile, byte[] key) throws IOException {
+        ByteBuffer cache;
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            // the mapping stays valid after the channel is closed
+            cache = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        try {
+            if (cache.getInt() != MAGIC || cache.getInt() != VERSION) {
+                return null;
+            }
+            byte[] cachedKey = new byte[key.length];
+            cache.get(cachedKey);
+            if (!Arrays.equals(cachedKey, key)) {
+                return null;
+            }
+
+            int startFunctionIndex = cache.getInt();
+            int memoryPageCount = cache.getInt();
+            int maxMemoryPageCount = cache.getInt();
+            boolean memoryLimitsValid = memoryPageCount >= 0 && maxMemoryPageCount >= Math.max(memoryPageCount, 1)
+                && maxMemoryPageCount <= ImplementationSpecific.LinearMemory.PAGE_COUNT_MAX;
+            if (memoryPageCount != -1 && !memoryLimitsValid) {
+                return null;
+            }
+
+            int functionCount = readCount(cache, FUNCTION_SIZE);
+            if (functionCount < 0 || startFunctionIndex < -1 || startFunctionIndex >= functionCount) {
+                return null;
+            }
+            List<Function> functions = new ArrayList<>(functionCount);
+            int[] codeLengths = new int[functionCount];
+            for (int i = 0; i < functionCount; i++) {
+                int parameterCount = cache.getInt();
+                int returnValueCount = cache.getInt();
+                int localVariableCount = cache.getInt();
+                int maxStackHeight = cache.getInt();
+                codeLengths[i] = cache.getInt();
+                if (parameterCount < 0 || returnValueCount < 0 || localVariableCount < 0 || maxStackHeight < 0
+                    || codeLengths[i] < 0) {
+                    return null;
+                }
+                Function function = new Function(parameterCount, returnValueCount);
+                function.setLocalVariableCount(localVariableCount);
+                function.setMaxStackHeight(maxStackHeight);
+                functions.add(function);
+            }
+
+            LinearMemory linearMemory = memoryPageCount < 0 ? null
+                : LinearMemory.create(memoryPageCount, maxMemoryPageCount);
+            long memorySize = linearMemory == null ? 0
+                : (long) memoryPageCount * WebAssemblySpecification.LinearMemory.PAGE_SIZE_BYTES;
+            int segmentCount = readCount(cache, SEGMENT_SIZE);
+            if (segmentCount < 0) {
+                return null;
+            }
+            byte[][] dataSegments = new byte[segmentCount][];
+            for (int i = 0; i < dataSegments.length; i++) {
+                long address = cache.getLong();
+                int length = readCount(cache, 1);
+                if (length < 0 || address < -1 || (address >= 0 && (linearMemory == null
+                    || address + length > memorySize))) {
+                    return null;
+                }
+                byte[] contents = new byte[length];
+                cache.get(contents);
+                if (address >= 0) {
+                    linearMemory.init((int) address, contents, 0, contents.length);
+                    dataSegments[i] = new byte[0];
+                } else {
+                    dataSegments[i] = contents;
+                }
+            }
+
+            int codeStart = (cache.position() + Integer.BYTES - 1) & -Integer.BYTES;
+            if (codeStart > cache.limit()) {
+                return null;
+            }
+            cache.position(codeStart);
+            IntBuffer code = cache.slice().asIntBuffer();
+            long codeLength = 0;
+            for (int length : codeLengths) {
+                codeLength += length;
+            }
+            if (codeLength != code.remaining()) {
+                return null;
+            }
+            int functionCodeStart = 0;
+            for (int i = 0; i < functionCount; i++) {
+                functions.get(i).setDecoder(decoder(code, functionCodeStart, codeLengths[i]));
+                functionCodeStart += codeLengths[i];
+            }
+
+            Module module = new Module(linearMemory, functions, startFunctionIndex, dataSegments);
+            module.setMinimumMemoryPageCount(Math.max(memoryPageCount, 0));
+            return module;
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the number of elements that follow, checking it against the rest of the file, so a corrupt count cannot
+     * allocate more than the file's size.
+     *
+     * @param elementSize the minimum number of bytes of every element
+     * @return the number of elements, -1 if it is negative or the file is too short to hold them
+     */
+    private static int readCount(ByteBuffer cache, int elementSize) {
+        int count = cache.getInt();
+        return count < 0 || (long) count * elementSize > cache.remaining() ? -1 : count;
+    }
+
+    /**
+     * @return a decoder copying the code of a function out of the mapped file, it only sets the code as the cache
+     * already holds the local variable count and stack height
+     */
+    private static Function.Decoder decoder(IntBuffer code, int start, int length) {
+        return function -> {
+            int[] functionCode = new int[length];
+            IntBuffer functionView = code.duplicate();
+            functionView.position(start);
+            functionView.get(functionCode);
+            function.setCode(functionCode);
+        };
+    }
+
+    /**
+     * Writes the module to a temporary file first, which then replaces the cache file, so other processes loading the
+     * module meanwhile never see an incomplete file.
+     */
+    private void write(File cacheFile, byte[] key, Module module, BinaryParser parser) throws IOException {
+        Files.createDirectories(directory.toPath());
+        Path temporaryFile = Files.createTempFile(directory.toPath(), hex(key), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temporaryFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.write(key);
+
+                out.writeInt(module.getStartFunctionIndex());
+                LinearMemory linearMemory = module.getLinearMemory();
+                out.writeInt(linearMemory == null ? -1 : module.getMinimumMemoryPageCount());
+                out.writeInt(linearMemory == null ? -1 : linearMemory.getMaxPageCount());
+
+                List<Function> functions = module.getFunctions();
+                out.writeInt(functions.size());
+                for (Function function : functions) {
+                    out.writeInt(function.getParameterCount());
+                    out.writeInt(function.getReturnValueCount());
+                    out.writeInt(function.getLocalVariableCount());
+                    out.writeInt(function.getMaxStackHeight());
+                    out.writeInt(function.getCode().length);
+                }
+
+                byte[][] segmentContents = parser.getSegmentContents();
+                long[] segmentAddresses = parser.getSegmentAddresses();
+                out.writeInt(segmentContents.length);
+                for (int i = 0; i < segmentContents.length; i++) {
+                    out.writeLong(segmentAddresses[i]);
+                    out.writeInt(segmentContents[i].length);
+                    out.write(segmentContents[i]);
+                }
+
+                // the code is aligned, so it is read as a view of ints
+                while (out.size() % Integer.BYTES != 0) {
+                    out.writeByte(0);
+                }
+                for (Function function : functions) {
+                    for (int value : function.getCode()) {
+                        out.writeInt(value);
+                    }
+                }
+            }
+            Files.move(temporaryFile, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(2 * bytes.length);
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+}
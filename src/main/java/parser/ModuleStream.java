@@ -0,0 +1,195 @@
+package parser;
+
+import constants.BinaryFormat;
+import util.Leb128;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads a module in its binary encoding [WASM 5.5.2] from a channel, e.g. a pipe or a socket, section by section as
+ * its bytes arrive. Unlike the {@link SectionIndex} it never looks ahead of the section being read, so the sections
+ * can be parsed while the rest of the module is still on its way. The channel has to be in blocking mode.
+ */
+final class ModuleStream {
+
+    /**
+     * The size of the buffer the channel is read into
+     */
+    private static final int BUFFER_SIZE = 64 << 10;
+
+    /**
+     * The maximum number of bytes of an unsigned LEB128 encoded 32 bit integer
+     */
+    private static final int LEB128_SIZE_MAX = 5;
+
+    private final ReadableByteChannel channel;
+
+    /**
+     * The bytes read from the channel that have not been consumed yet, between the position and the limit
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * The number of bytes of the module consumed so far
+     */
+    private long position = 0;
+
+    /**
+     * The position behind the contents of the current section
+     */
+    private long sectionEnd = 0;
+
+    private int previousOrder = -1;
+
+    /**
+     * Reads and checks the header of the module.
+     *
+     * @throws ParserException if the header is invalid
+     */
+    ModuleStream(ReadableByteChannel channel) throws IOException {
+        this.channel = channel;
+        buffer.flip();
+        checkHeader(BinaryFormat.Module.MAGIC, "No valid .wasm File");
+        checkHeader(BinaryFormat.Module.VERSION, "Not a valid Version!");
+    }
+
+    /**
+     * Reads the header of the next section, skipping custom sections and what is left of the current section.
+     *
+     * @return the ID of the section, -1 at the end of the module
+     * @throws ParserException if the section is unknown, not supported or out of order
+     */
+    int nextSection() throws IOException {
+        skip(sectionEnd - position);
+        while (fill(1)) {
+            int sectionID = buffer.get();
+            position++;
+            int size = readUnsignedLeb128();
+            if (size < 0) {
+                throw new ParserException("Section exceeds the end of the file! [ID: " + sectionID + "]");
+            }
+            sectionEnd = position + size;
+
+            if (sectionID == BinaryFormat.Module.Section.Custom.ID) {
+                skip(size);
+                continue;
+            }
+            int order = SectionIndex.order(sectionID);
+            if (order <= previousOrder) {
+                throw new ParserException("Wrong order of sections! @" + String.format("0x%02X", sectionID));
+            }
+            previousOrder = order;
+            return sectionID;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of bytes of the module consumed so far
+     */
+    long position() {
+        return position;
+    }
+
+    /**
+     * @return the number of bytes of the current section that have not been consumed yet
+     */
+    long sectionRemaining() {
+        return sectionEnd - position;
+    }
+
+    /**
+     * @return the next unsigned LEB128 encoded integer
+     */
+    int readUnsignedLeb128() throws IOException {
+        fill(LEB128_SIZE_MAX);
+        int start = buffer.position();
+        int value = Leb128.readUnsignedLeb128(buffer);
+        position += buffer.position() - start;
+        return value;
+    }
+
+    /**
+     * @return the rest of the current section
+     */
+    ByteBuffer readSection() throws IOException {
+        return read((int) sectionRemaining());
+    }
+
+    /**
+     * Reads the next bytes of the current section into a buffer of their own, waiting until all of them have arrived.
+     *
+     * @return the bytes, from the position up to the limit of the buffer
+     * @throws ParserException if the bytes exceed the current section or the module ends before them
+     */
+    ByteBuffer read(int count) throws IOException {
+        if (count < 0 || count > sectionRemaining()) {
+            throw new ParserException("Section contents exceed the size of the section!");
+        }
+        // grows with the bytes that have arrived, so a corrupt size cannot allocate more than the module's size
+        byte[] bytes = new byte[Math.min(count, BUFFER_SIZE)];
+        int length = 0;
+        while (length < count) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(count, 2L * bytes.length));
+            }
+            ByteBuffer destination = ByteBuffer.wrap(bytes, length, bytes.length - length);
+            if (buffer.hasRemaining()) {
+                ByteBuffer chunk = buffer.duplicate();
+                chunk.limit(chunk.position() + Math.min(chunk.remaining(), destination.remaining()));
+                destination.put(chunk);
+                buffer.position(chunk.position());
+            } else if (channel.read(destination) < 0) {
+                // once the buffer is drained, the rest is read directly without passing through it
+                throw new ParserException("Section exceeds the end of the file!");
+            }
+            length = destination.position();
+        }
+        position += count;
+        return ByteBuffer.wrap(bytes);
+    }
+
+    private void skip(long count) throws IOException {
+        while (count > 0) {
+            if (!fill(1)) {
+                throw new ParserException("Section exceeds the end of the file!");
+            }
+            int chunk = (int) Math.min(count, buffer.remaining());
+            buffer.position(buffer.position() + chunk);
+            position += chunk;
+            count -= chunk;
+        }
+    }
+
+    /**
+     * Reads from the channel until the buffer holds at least <code>count</code> bytes or the channel has ended.
+     *
+     * @return whether the buffer holds at least <code>count</code> bytes
+     */
+    private boolean fill(int count) throws IOException {
+        while (buffer.remaining() < count) {
+            buffer.compact();
+            int read = channel.read(buffer);
+            buffer.flip();
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkHeader(byte[] expected, String message) throws IOException {
+        if (!fill(expected.length)) {
+            throw new ParserException(message);
+        }
+        byte[] actual = new byte[expected.length];
+        buffer.get(actual);
+        position += actual.length;
+        if (!Arrays.equals(actual, expected)) {
+            throw new ParserException(message);
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package parser;
 
 public class ParserException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
 
     public ParserException() {
     }
@@ -0,0 +1,118 @@
+package parser;
+
+import constants.BinaryFormat;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static util.Leb128.readUnsignedLeb128;
+
+/**
+ * The offsets and sizes of the sections of a module in its binary encoding [WASM 5.5.2]. They are found in a single
+ * pass that only reads the section headers and skips the contents, so building the index does not depend on the size
+ * of the sections. The contents of a section are handed out as a view of the module's buffer, e.g. of the mapped module
+ * file, without copying them.
+ */
+final class SectionIndex {
+
+    /**
+     * One more than the highest section ID
+     */
+    private static final int SECTION_ID_COUNT = BinaryFormat.Module.Section.DataCount.ID + 1;
+
+    private final ByteBuffer module;
+
+    /**
+     * The offset of the contents of each section in the module, -1 if there is no such section, indexed by section ID
+     */
+    private final int[] offsets = new int[SECTION_ID_COUNT];
+
+    /**
+     * The size of the contents of each section in bytes, indexed by section ID
+     */
+    private final int[] sizes = new int[SECTION_ID_COUNT];
+
+    /**
+     * Checks the header of the module and indexes its sections. Custom sections are skipped.
+     *
+     * @param module the binary encoding of the module from its current position to its limit, not modified
+     * @throws ParserException if the header is invalid, a section is unknown, not supported, out of order or exceeds
+     *                         the end of the module
+     */
+    SectionIndex(ByteBuffer module) {
+        this.module = module.slice();
+        Arrays.fill(offsets, -1);
+
+        ByteBuffer headers = this.module.duplicate();
+        checkHeader(headers, BinaryFormat.Module.MAGIC, "No valid .wasm File");
+        checkHeader(headers, BinaryFormat.Module.VERSION, "Not a valid Version!");
+
+        int previousOrder = -1;
+        while (headers.hasRemaining()) {
+            int sectionID = headers.get();
+            int size = readUnsignedLeb128(headers);
+            int offset = headers.position();
+            if (size < 0 || size > headers.remaining()) {
+                throw new ParserException("Section exceeds the end of the file! [ID: " + sectionID + "]");
+            }
+            headers.position(offset + size);
+
+            if (sectionID == BinaryFormat.Module.Section.Custom.ID) {
+                continue;
+            }
+            int order = order(sectionID);
+            if (order <= previousOrder) {
+                throw new ParserException("Wrong order of sections! @" + String.format("0x%02X", sectionID));
+            }
+            previousOrder = order;
+            offsets[sectionID] = offset;
+            sizes[sectionID] = size;
+        }
+    }
+
+    /**
+     * @return the contents of the section as a view of the module, positioned at their start and limited to their
+     * end, or <code>null</code> if the module has no such section
+     */
+    ByteBuffer section(int sectionID) {
+        if (offsets[sectionID] < 0) {
+            return null;
+        }
+        ByteBuffer contents = module.duplicate();
+        contents.limit(offsets[sectionID] + sizes[sectionID]);
+        contents.position(offsets[sectionID]);
+        return contents.slice();
+    }
+
+    /**
+     * @return the position of the section among the sections of a module, which have to be ordered by it
+     * @throws ParserException if the section is unknown or not supported
+     */
+    static int order(int sectionID) {
+        switch (sectionID) {
+            case BinaryFormat.Module.Section.Type.ID:
+            case BinaryFormat.Module.Section.Function.ID:
+            case BinaryFormat.Module.Section.Memory.ID:
+            case BinaryFormat.Module.Section.Start.ID:
+            case BinaryFormat.Module.Section.Code.ID:
+            case BinaryFormat.Module.Section.Data.ID:
+                return 2 * sectionID;
+            case BinaryFormat.Module.Section.DataCount.ID:
+                // the data count section comes right before the code section, despite its ID
+                return 2 * BinaryFormat.Module.Section.Code.ID - 1;
+            default:
+                throw new ParserException("Not a valid section type");
+        }
+    }
+
+    private static void checkHeader(ByteBuffer headers, byte[] expected, String message) {
+        byte[] actual = new byte[expected.length];
+        if (headers.remaining() < actual.length) {
+            throw new ParserException(message);
+        }
+        headers.get(actual);
+        if (!Arrays.equals(actual, expected)) {
+            throw new ParserException(message);
+        }
+    }
+}
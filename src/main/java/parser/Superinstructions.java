@@ -0,0 +1,146 @@
+package parser;
+
+import constants.BinaryFormat;
+
+/**
+ * Fuses frequent sequences of instructions in decoded code into superinstructions, so the interpreter dispatches once
+ * per sequence instead of once per instruction. The sequences were chosen from the opcode pair statistics of the
+ * interpreter (see <code>WasmInterpreter.collectOpCodePairStatistics()</code>) on our workloads: loading a local
+ * variable followed by a constant is the most frequent pair, followed by comparisons with a constant feeding an
+ * <code>if</code> and the argument computations of recursive calls.
+ *
+ * Fusion happens in place: the opcode of the first instruction of a sequence is replaced by the opcode of the
+ * superinstruction, all other opcodes and immediates stay where they are. The superinstruction reads its immediates
+ * from their original positions and continues behind the last instruction of the sequence. Therefore the positions of
+ * all instructions and branch targets are unchanged, a branch into a sequence would still execute its remaining
+ * original instructions and engines that do not handle superinstructions can just execute the first instruction of
+ * the sequence instead, see {@link #baseOpCode(int)}.
+ */
+public class Superinstructions {
+
+    /**
+     * <code>get_local a; get_local b; i32.add</code>
+     */
+    public static final int GET_LOCAL_GET_LOCAL_I32_ADD = 0x100;
+
+    /**
+     * <code>get_local a; i32.const c; i32.add</code>
+     */
+    public static final int GET_LOCAL_I32_CONST_I32_ADD = 0x101;
+
+    /**
+     * <code>get_local a; i32.const c; i32.sub</code>
+     */
+    public static final int GET_LOCAL_I32_CONST_I32_SUB = 0x102;
+
+    /**
+     * <code>get_local a; i32.const c</code>
+     */
+    public static final int GET_LOCAL_I32_CONST = 0x103;
+
+    /**
+     * <code>i32.const c; i32.lt_s; br_if ...</code>
+     */
+    public static final int I32_CONST_I32_LT_S_BR_IF = 0x104;
+
+    /**
+     * <code>i32.const c; i32.lt_s; if ...</code>
+     */
+    public static final int I32_CONST_I32_LT_S_IF = 0x105;
+
+    /**
+     * <code>get_local a; i32.load offset</code>
+     */
+    public static final int GET_LOCAL_I32_LOAD = 0x106;
+
+    /**
+     * <code>get_local a; i32.load offset</code> with a load proven in bounds, see {@link BoundsCheckElimination}
+     */
+    public static final int GET_LOCAL_I32_LOAD_IN_BOUNDS = 0x107;
+
+    /**
+     * The instruction sequences of the superinstructions, the superinstruction opcode minus
+     * {@link #GET_LOCAL_GET_LOCAL_I32_ADD} being the index.
+     */
+    private static final int[][] SEQUENCES = {
+        {BinaryFormat.Instructions.Variable.GET_LOCAL, BinaryFormat.Instructions.Variable.GET_LOCAL,
+            BinaryFormat.Instructions.Numeric.I32_ADD},
+        {BinaryFormat.Instructions.Variable.GET_LOCAL, BinaryFormat.Instructions.Numeric.I32_CONST,
+            BinaryFormat.Instructions.Numeric.I32_ADD},
+        {BinaryFormat.Instructions.Variable.GET_LOCAL, BinaryFormat.Instructions.Numeric.I32_CONST,
+            BinaryFormat.Instructions.Numeric.I32_SUB},
+        {BinaryFormat.Instructions.Variable.GET_LOCAL, BinaryFormat.Instructions.Numeric.I32_CONST},
+        {BinaryFormat.Instructions.Numeric.I32_CONST, BinaryFormat.Instructions.Numeric.I32_LT_S,
+            BinaryFormat.Instructions.Control.BR_IF},
+        {BinaryFormat.Instructions.Numeric.I32_CONST, BinaryFormat.Instructions.Numeric.I32_LT_S,
+            BinaryFormat.Instructions.Control.IF},
+        {BinaryFormat.Instructions.Variable.GET_LOCAL, BinaryFormat.Instructions.Memory.I32_LOAD},
+        {BinaryFormat.Instructions.Variable.GET_LOCAL, BoundsCheckElimination.I32_LOAD_IN_BOUNDS},
+    };
+
+    /**
+     * Replaces the first opcode of every fused sequence in the decoded code with the superinstruction's opcode.
+     * Where sequences overlap, the sequences resulting in the fewest dispatches are chosen.
+     *
+     * @param code decoded code without superinstructions
+     */
+    public static void fuse(int[] code) {
+        // dispatches[pc] is the minimal number of dispatches executing the code from pc to its end straight through
+        int[] dispatches = new int[code.length + 1];
+        int[] chosenSequence = new int[code.length];
+
+        int[] instructionStarts = new int[code.length];
+        int instructionCount = 0;
+        for (int pc = 0; pc < code.length; pc += 1 + CodeDecoder.immediateCount(code[pc])) {
+            instructionStarts[instructionCount++] = pc;
+        }
+
+        for (int i = instructionCount - 1; i >= 0; i--) {
+            int pc = instructionStarts[i];
+            dispatches[pc] = 1 + dispatches[pc + 1 + CodeDecoder.immediateCount(code[pc])];
+            chosenSequence[pc] = -1;
+            for (int sequence = 0; sequence < SEQUENCES.length; sequence++) {
+                int end = matchEnd(code, pc, SEQUENCES[sequence]);
+                if (end >= 0 && 1 + dispatches[end] < dispatches[pc]) {
+                    dispatches[pc] = 1 + dispatches[end];
+                    chosenSequence[pc] = sequence;
+                }
+            }
+        }
+
+        int pc = 0;
+        while (pc < code.length) {
+            int sequence = chosenSequence[pc];
+            if (sequence < 0) {
+                pc += 1 + CodeDecoder.immediateCount(code[pc]);
+            } else {
+                int start = pc;
+                pc = matchEnd(code, pc, SEQUENCES[sequence]);
+                code[start] = GET_LOCAL_GET_LOCAL_I32_ADD + sequence;
+            }
+        }
+    }
+
+    /**
+     * @return the opcode of the first instruction of a superinstruction's sequence, other opcodes unchanged
+     */
+    public static int baseOpCode(int opCode) {
+        if (opCode < GET_LOCAL_GET_LOCAL_I32_ADD || opCode >= GET_LOCAL_GET_LOCAL_I32_ADD + SEQUENCES.length) {
+            return opCode;
+        }
+        return SEQUENCES[opCode - GET_LOCAL_GET_LOCAL_I32_ADD][0];
+    }
+
+    /**
+     * @return the position behind the sequence if the code at pc starts with it, -1 otherwise
+     */
+    private static int matchEnd(int[] code, int pc, int[] sequence) {
+        for (int opCode : sequence) {
+            if (pc >= code.length || code[pc] != opCode) {
+                return -1;
+            }
+            pc += 1 + CodeDecoder.immediateCount(opCode);
+        }
+        return pc;
+    }
+}
@@ -0,0 +1,76 @@
+package register;
+
+import environment.Function;
+
+/**
+ * A WASM function translated into register code. The code is translated when the function is called for the first
+ * time.
+ *
+ * The frame of a call is a fixed window of slots: the local variables (starting with the parameters), one slot per
+ * operand stack height and the constants used by the code.
+ */
+final class RegisterFunction {
+    private final Function function;
+    private final RegisterTranslator translator;
+    private final int parameterCount;
+
+    /**
+     * Set when the function is translated, as the WASM function is only decoded then
+     */
+    private int localVariableCount;
+
+    private int[] code;
+
+    /**
+     * The number of slots of a frame of this function
+     */
+    private int frameSize;
+
+    /**
+     * The values of the constant slots, which are the last slots of the frame
+     */
+    private int[] constants;
+
+    RegisterFunction(Function function, RegisterTranslator translator) {
+        this.function = function;
+        this.translator = translator;
+        this.parameterCount = function.getParameterCount();
+    }
+
+    Function getFunction() {
+        return function;
+    }
+
+    /**
+     * @return the register code, translating the function if it has not been yet
+     */
+    int[] getCode() {
+        if (code == null) {
+            translator.translate(this);
+            localVariableCount = function.getLocalVariableCount();
+        }
+        return code;
+    }
+
+    int getParameterCount() {
+        return parameterCount;
+    }
+
+    int getLocalVariableCount() {
+        return localVariableCount;
+    }
+
+    int getFrameSize() {
+        return frameSize;
+    }
+
+    int[] getConstants() {
+        return constants;
+    }
+
+    void setCode(int[] code, int frameSize, int[] constants) {
+        this.code = code;
+        this.frameSize = frameSize;
+        this.constants = constants;
+    }
+}
@@ -0,0 +1,46 @@
+package register;
+
+/**
+ * The opcodes of register code that have no WASM counterpart. All other instructions keep the opcode of the WASM
+ * instruction they were translated from, with slot operands instead of operand stack accesses:
+ *
+ * <ul>
+ * <li>unary operations, <code>grow_memory</code>: <code>op dst src</code></li>
+ * <li>binary operations and comparisons: <code>op dst left right</code></li>
+ * <li>loads: <code>op dst address offset</code>, stores: <code>op address value offset</code>, also when proven to be
+ * in bounds by {@link parser.BoundsCheckElimination}</li>
+ * <li><code>current_memory dst</code></li>
+ * <li><code>memory.init dst offset length segmentIndex</code>, <code>data.drop segmentIndex</code></li>
+ * <li><code>memory.copy dst src length</code>, <code>memory.fill dst value length</code></li>
+ * <li><code>call functionIndex dst argument...</code>, dst being -1 if the function has no return value</li>
+ * <li><code>return src</code>, src being -1 if the function has no return value</li>
+ * <li><code>unreachable</code></li>
+ * </ul>
+ *
+ * Slots are relative to the frame of the executing function, jump targets are positions in its register code.
+ */
+final class RegisterInstructions {
+
+    /**
+     * <code>move dst src</code>
+     */
+    static final int MOVE = 0x100;
+
+    /**
+     * <code>jump target</code>
+     */
+    static final int JUMP = 0x101;
+
+    /**
+     * <code>jump_if condition target</code>, jumps if the condition slot is not zero
+     */
+    static final int JUMP_IF = 0x102;
+
+    /**
+     * <code>jump_if_not condition target</code>, jumps if the condition slot is zero
+     */
+    static final int JUMP_IF_NOT = 0x103;
+
+    private RegisterInstructions() {
+    }
+}
@@ -0,0 +1,400 @@
+package register;
+
+import constants.BinaryFormat;
+import constants.ImplementationSpecific;
+import environment.Function;
+import environment.LinearMemory;
+import environment.Module;
+import interpreter.ExecutionEngine;
+import interpreter.TrapException;
+import parser.BoundsCheckElimination;
+import parser.CodeDecoder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes a WASM module by translating every function into register code when it is called for the first time, see
+ * {@link RegisterTranslator}. Instructions read their operands from and store their results into the slots of the
+ * frame directly, so a computation needs fewer dispatches than with the operand stack of the interpreter. Gives the
+ * same results as the interpreter, including traps.
+ */
+public class RegisterInterpreter extends ExecutionEngine {
+
+    /**
+     * The maximum number of nested function calls, exceeding it traps
+     */
+    private final int maxCallDepth;
+
+    /**
+     * The frames of all active functions, the frame of a called function follows the frame of its caller
+     */
+    private final int[] slots;
+
+    public RegisterInterpreter(Module module) {
+        this(module, ImplementationSpecific.Interpreter.CALL_DEPTH_MAX);
+    }
+
+    public RegisterInterpreter(Module module, int maxCallDepth) {
+        super(module);
+        this.maxCallDepth = maxCallDepth;
+        this.slots = new int[ImplementationSpecific.Interpreter.VALUE_STACK_SIZE];
+    }
+
+    @Override
+    protected void run() {
+        final LinearMemory linearMemory = module.getLinearMemory();
+        final int[] slots = this.slots;
+
+        List<RegisterFunction> functionList = new ArrayList<>();
+        RegisterTranslator translator = new RegisterTranslator(functionList);
+        for (Function function : module.getFunctions()) {
+            functionList.add(new RegisterFunction(function, translator));
+        }
+        final RegisterFunction[] functions = functionList.toArray(new RegisterFunction[0]);
+
+        /* The callers of the active functions, indexed by the call depth of the called function: where they
+         * continue after the call, the slot the return value is stored in, their frame and their code */
+        final int[] callerReturnPcs = new int[maxCallDepth + 1];
+        final int[] callerDestinations = new int[maxCallDepth + 1];
+        final int[] callerFramePointers = new int[maxCallDepth + 1];
+        final int[] callerFrameSizes = new int[maxCallDepth + 1];
+        final int[][] callerCodes = new int[maxCallDepth + 1][];
+
+        // Like in the interpreter, the parameters of the start function are zero and it starts at call depth 0
+        RegisterFunction startFunction = functions[module.getStartFunctionIndex()];
+        int[] code = startFunction.getCode();
+        int frameSize = startFunction.getFrameSize();
+        int fp = 0;
+        int callDepth = 0;
+        enterFrame(startFunction, fp);
+
+        int pc = 0;
+        while (true) {
+            switch (code[pc]) {
+                case RegisterInstructions.MOVE:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]];
+                    pc += 3;
+                    break;
+
+                /***************************
+                 * Memory instructions
+                 ****************************/
+                case BinaryFormat.Instructions.Memory.I32_LOAD:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .load(slots[fp + code[pc + 2]], 0, code[pc + 3], 4, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .load(slots[fp + code[pc + 2]], 0, code[pc + 3], 1, LinearMemory.SIGNEDNESS.SIGNED);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .load(slots[fp + code[pc + 2]], 0, code[pc + 3], 1, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .load(slots[fp + code[pc + 2]], 0, code[pc + 3], 2, LinearMemory.SIGNEDNESS.SIGNED);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .load(slots[fp + code[pc + 2]], 0, code[pc + 3], 2, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_STORE:
+                    linearMemory.store(slots[fp + code[pc + 1]], 0, code[pc + 3], 4, slots[fp + code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_STORE8:
+                    linearMemory.store(slots[fp + code[pc + 1]], 0, code[pc + 3], 1, slots[fp + code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.I32_STORE16:
+                    linearMemory.store(slots[fp + code[pc + 1]], 0, code[pc + 3], 2, slots[fp + code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_LOAD_IN_BOUNDS:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .loadInBounds(slots[fp + code[pc + 2]] + code[pc + 3], 4, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_LOAD8_S_IN_BOUNDS:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .loadInBounds(slots[fp + code[pc + 2]] + code[pc + 3], 1, LinearMemory.SIGNEDNESS.SIGNED);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_LOAD8_U_IN_BOUNDS:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .loadInBounds(slots[fp + code[pc + 2]] + code[pc + 3], 1, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_LOAD16_S_IN_BOUNDS:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .loadInBounds(slots[fp + code[pc + 2]] + code[pc + 3], 2, LinearMemory.SIGNEDNESS.SIGNED);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_LOAD16_U_IN_BOUNDS:
+                    slots[fp + code[pc + 1]] = linearMemory
+                        .loadInBounds(slots[fp + code[pc + 2]] + code[pc + 3], 2, LinearMemory.SIGNEDNESS.UNSIGNED);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_STORE_IN_BOUNDS:
+                    linearMemory.storeInBounds(slots[fp + code[pc + 1]] + code[pc + 3], 4, slots[fp + code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_STORE8_IN_BOUNDS:
+                    linearMemory.storeInBounds(slots[fp + code[pc + 1]] + code[pc + 3], 1, slots[fp + code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case BoundsCheckElimination.I32_STORE16_IN_BOUNDS:
+                    linearMemory.storeInBounds(slots[fp + code[pc + 1]] + code[pc + 3], 2, slots[fp + code[pc + 2]]);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Memory.CURRENT_MEMORY:
+                    slots[fp + code[pc + 1]] = linearMemory.currentMemory();
+                    pc += 2;
+                    break;
+                case BinaryFormat.Instructions.Memory.GROW_MEMORY:
+                    slots[fp + code[pc + 1]] = linearMemory.growMemory(slots[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case CodeDecoder.MEMORY_INIT:
+                    module.initMemory(code[pc + 4], slots[fp + code[pc + 1]], slots[fp + code[pc + 2]],
+                        slots[fp + code[pc + 3]]);
+                    pc += 5;
+                    break;
+                case CodeDecoder.DATA_DROP:
+                    module.dropDataSegment(code[pc + 1]);
+                    pc += 2;
+                    break;
+                case CodeDecoder.MEMORY_COPY:
+                    linearMemory.copy(slots[fp + code[pc + 1]], slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case CodeDecoder.MEMORY_FILL:
+                    linearMemory.fill(slots[fp + code[pc + 1]], slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]);
+                    pc += 4;
+                    break;
+
+                /*****************************
+                 * Numeric instructions
+                 *****************************/
+                case BinaryFormat.Instructions.Numeric.I32_EQZ:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] == 0 ? 1 : 0;
+                    pc += 3;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_CLZ:
+                    slots[fp + code[pc + 1]] = Integer.numberOfLeadingZeros(slots[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_CTZ:
+                    slots[fp + code[pc + 1]] = Integer.numberOfTrailingZeros(slots[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_POPCNT:
+                    slots[fp + code[pc + 1]] = Integer.bitCount(slots[fp + code[pc + 2]]);
+                    pc += 3;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_EQ:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] == slots[fp + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_NE:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] != slots[fp + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] < slots[fp + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_LT_U:
+                    slots[fp + code[pc + 1]] =
+                        Integer.compareUnsigned(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]) < 0 ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] > slots[fp + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_GT_U:
+                    slots[fp + code[pc + 1]] =
+                        Integer.compareUnsigned(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]) > 0 ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] <= slots[fp + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_LE_U:
+                    slots[fp + code[pc + 1]] =
+                        Integer.compareUnsigned(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]) <= 0 ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] >= slots[fp + code[pc + 3]] ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_GE_U:
+                    slots[fp + code[pc + 1]] =
+                        Integer.compareUnsigned(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]) >= 0 ? 1 : 0;
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_ADD:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] + slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_SUB:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] - slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_MUL:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] * slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_DIV_S:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] / slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_DIV_U:
+                    slots[fp + code[pc + 1]] =
+                        Integer.divideUnsigned(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_REM_S:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] % slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_REM_U:
+                    slots[fp + code[pc + 1]] =
+                        Integer.remainderUnsigned(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_AND:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] & slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_OR:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] | slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_XOR:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] ^ slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_SHL:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] << slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_SHR_S:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] >> slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_SHR_U:
+                    slots[fp + code[pc + 1]] = slots[fp + code[pc + 2]] >>> slots[fp + code[pc + 3]];
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_ROTL:
+                    slots[fp + code[pc + 1]] =
+                        Integer.rotateLeft(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]);
+                    pc += 4;
+                    break;
+                case BinaryFormat.Instructions.Numeric.I32_ROTR:
+                    slots[fp + code[pc + 1]] =
+                        Integer.rotateRight(slots[fp + code[pc + 2]], slots[fp + code[pc + 3]]);
+                    pc += 4;
+                    break;
+
+                /******************************
+                 * Control instructions
+                 *****************************/
+                case RegisterInstructions.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case RegisterInstructions.JUMP_IF:
+                    pc = slots[fp + code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+                    break;
+                case RegisterInstructions.JUMP_IF_NOT:
+                    pc = slots[fp + code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+                    break;
+                case BinaryFormat.Instructions.Control.CALL: {
+                    if (callDepth == maxCallDepth) {
+                        throw new TrapException("Call stack exhausted! Maximum call depth: " + maxCallDepth);
+                    }
+                    int calledFunctionIndex = code[pc + 1];
+                    RegisterFunction calledFunction = functions[calledFunctionIndex];
+                    int[] calledCode = calledFunction.getCode();
+
+                    // the frame of the called function follows this frame, the arguments become its first slots
+                    int calledFramePointer = fp + frameSize;
+                    int parameterCount = calledFunction.getParameterCount();
+                    for (int i = 0; i < parameterCount; i++) {
+                        slots[calledFramePointer + i] = slots[fp + code[pc + 3 + i]];
+                    }
+
+                    callDepth++;
+                    callerReturnPcs[callDepth] = pc + 3 + parameterCount;
+                    callerDestinations[callDepth] = code[pc + 2];
+                    callerFramePointers[callDepth] = fp;
+                    callerFrameSizes[callDepth] = frameSize;
+                    callerCodes[callDepth] = code;
+
+                    code = calledCode;
+                    frameSize = calledFunction.getFrameSize();
+                    fp = calledFramePointer;
+                    enterFrame(calledFunction, fp);
+                    pc = 0;
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.RETURN: {
+                    int returnValue = code[pc + 1] < 0 ? 0 : slots[fp + code[pc + 1]];
+                    if (callDepth == 0) {
+                        return;
+                    }
+
+                    // continue behind the call, storing the return value in its destination
+                    pc = callerReturnPcs[callDepth];
+                    fp = callerFramePointers[callDepth];
+                    frameSize = callerFrameSizes[callDepth];
+                    code = callerCodes[callDepth];
+                    if (callerDestinations[callDepth] >= 0) {
+                        slots[fp + callerDestinations[callDepth]] = returnValue;
+                    }
+                    callerCodes[callDepth] = null;
+                    callDepth--;
+                    break;
+                }
+                case BinaryFormat.Instructions.Control.UNREACHABLE:
+                    throw new TrapException("You reached unreachable code!");
+                default:
+                    throw new RuntimeException("Invalid (or not implemented) instruction!");
+            }
+        }
+    }
+
+    /**
+     * Initializes the frame of a called function, whose arguments have been stored in its first slots already: the
+     * other local variables start out zero and the constants are stored in the last slots of the frame.
+     */
+    private void enterFrame(RegisterFunction function, int framePointer) {
+        int frameSize = function.getFrameSize();
+        if (framePointer + frameSize > slots.length) {
+            throw new TrapException("Call stack exhausted! No space left for the frame of the called function");
+        }
+
+        // most functions have few local variables and constants, so simple loops are faster than bulk copies
+        int localsStart = framePointer + function.getParameterCount();
+        int localsEnd = localsStart + function.getLocalVariableCount();
+        for (int slot = localsStart; slot < localsEnd; slot++) {
+            slots[slot] = 0;
+        }
+        int[] constants = function.getConstants();
+        int constantsStart = framePointer + frameSize - constants.length;
+        for (int i = 0; i < constants.length; i++) {
+            slots[constantsStart + i] = constants[i];
+        }
+    }
+}
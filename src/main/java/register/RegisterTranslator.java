@@ -0,0 +1,564 @@
+package register;
+
+import constants.BinaryFormat;
+import environment.Function;
+import parser.BoundsCheckElimination;
+import parser.CodeDecoder;
+import parser.Superinstructions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Translates the decoded stack code of a function (see {@link CodeDecoder}) into register code, see
+ * {@link RegisterInstructions}. The operand at stack height h lives in the slot <code>localCount + h</code> of the
+ * frame, so the operands of an instruction are known when it is translated and the pushes and pops disappear.
+ *
+ * The simulated operand stack holds the slot each operand can be read from. Local variable accesses and constants are
+ * not copied to the operand's own slot but read from the local variable's or constant's slot by the instruction using
+ * them (copy propagation). Such an operand is copied to its own slot before the local variable is set and before
+ * control flow joins (at the start of every block), so all paths into a block leave the enclosing operands in their
+ * own slots. An instruction whose result is stored into a local variable right away stores it there directly.
+ */
+final class RegisterTranslator {
+
+    /**
+     * A block, loop or if whose end has not been translated yet
+     */
+    private static class ControlFrame {
+        private final int opCode;
+        private final int arity;
+        private final int height;
+        private final int elseOpCodePc;
+        private final int endOpCodePc;
+
+        /**
+         * The start of a loop in the register code, the target of all branches to it
+         */
+        private final int loopStart;
+
+        /**
+         * The positions in the register code of the targets of the jumps to the end of the block
+         */
+        private final List<Integer> endJumps = new ArrayList<>();
+
+        /**
+         * The position in the register code of the target of the jump of an if to its else branch, -1 once bound
+         */
+        private int elseJump = -1;
+
+        private boolean inElse = false;
+        private boolean branchedTo = false;
+
+        /**
+         * Whether the rest of the (then or else branch of the) block can only be reached by a branch to its label
+         */
+        private boolean unreachable = false;
+
+        private ControlFrame(int opCode, int arity, int height, int elseOpCodePc, int endOpCodePc, int loopStart) {
+            this.opCode = opCode;
+            this.arity = arity;
+            this.height = height;
+            this.elseOpCodePc = elseOpCodePc;
+            this.endOpCodePc = endOpCodePc;
+            this.loopStart = loopStart;
+        }
+    }
+
+    private final List<RegisterFunction> functions;
+
+    private int[] code;
+    private int localCount;
+    private int constantBase;
+    private final Map<Integer, Integer> constantSlots = new HashMap<>();
+    private final List<Integer> stack = new ArrayList<>();
+    private final List<ControlFrame> controlStack = new ArrayList<>();
+
+    private int[] registerCode = new int[64];
+    private int length;
+
+    /**
+     * The position of the destination slot operand of the last emitted instruction if it produced a value into a
+     * temporary slot, -1 otherwise. Such an instruction can be changed to store its result somewhere else.
+     */
+    private int lastResult;
+
+    RegisterTranslator(List<RegisterFunction> functions) {
+        this.functions = functions;
+    }
+
+    /**
+     * Translates the function and stores the register code in the function.
+     */
+    void translate(RegisterFunction registerFunction) {
+        Function function = registerFunction.getFunction();
+        code = function.getCode();
+        localCount = function.getParameterCount() + function.getLocalVariableCount();
+        constantBase = localCount + function.getMaxStackHeight();
+        constantSlots.clear();
+        stack.clear();
+        controlStack.clear();
+        length = 0;
+        lastResult = -1;
+
+        // the function body itself is the outermost block, a branch to it is a return
+        controlStack.add(new ControlFrame(BinaryFormat.Instructions.Control.BLOCK, function.getReturnValueCount(),
+            0, code.length, code.length, -1));
+
+        int pc = 0;
+        while (pc < code.length) {
+            ControlFrame frame = currentFrame();
+            if (frame.unreachable) {
+                // skip the dead code up to the else or end of the innermost block
+                if (!frame.inElse && frame.elseOpCodePc != frame.endOpCodePc) {
+                    pc = frame.elseOpCodePc;
+                } else {
+                    pc = frame.endOpCodePc;
+                }
+                if (pc >= code.length) {
+                    break;
+                }
+            }
+
+            // superinstructions are translated as their first instruction, the others follow on their own
+            int opCode = Superinstructions.baseOpCode(code[pc]);
+            translateInstruction(opCode, pc + 1);
+            pc += 1 + CodeDecoder.immediateCount(opCode);
+        }
+
+        int[] constants = new int[constantSlots.size()];
+        for (Map.Entry<Integer, Integer> constant : constantSlots.entrySet()) {
+            constants[constant.getValue() - constantBase] = constant.getKey();
+        }
+        registerFunction.setCode(Arrays.copyOf(registerCode, length), constantBase + constants.length, constants);
+    }
+
+    /**
+     * @param opCode      the opcode of the instruction
+     * @param immediates  the position of the first immediate of the instruction
+     */
+    private void translateInstruction(int opCode, int immediates) {
+        switch (opCode) {
+            /***************************
+             * Variable and constant access instructions
+             ****************************/
+            case BinaryFormat.Instructions.Numeric.I32_CONST:
+                push(constantSlot(code[immediates]));
+                break;
+            case BinaryFormat.Instructions.Variable.GET_LOCAL:
+                push(code[immediates]);
+                break;
+            case BinaryFormat.Instructions.Variable.SET_LOCAL:
+                setLocal(code[immediates], pop());
+                break;
+            case BinaryFormat.Instructions.Variable.TEE_LOCAL: {
+                int local = code[immediates];
+                setLocal(local, pop());
+                push(local);
+                break;
+            }
+
+            /***************************
+             * Memory instructions
+             ****************************/
+            case BinaryFormat.Instructions.Memory.I32_LOAD:
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
+            case BoundsCheckElimination.I32_LOAD_IN_BOUNDS:
+            case BoundsCheckElimination.I32_LOAD8_S_IN_BOUNDS:
+            case BoundsCheckElimination.I32_LOAD8_U_IN_BOUNDS:
+            case BoundsCheckElimination.I32_LOAD16_S_IN_BOUNDS:
+            case BoundsCheckElimination.I32_LOAD16_U_IN_BOUNDS: {
+                int address = pop();
+                emitResult(opCode, address, code[immediates]);
+                break;
+            }
+            case BinaryFormat.Instructions.Memory.I32_STORE:
+            case BinaryFormat.Instructions.Memory.I32_STORE8:
+            case BinaryFormat.Instructions.Memory.I32_STORE16:
+            case BoundsCheckElimination.I32_STORE_IN_BOUNDS:
+            case BoundsCheckElimination.I32_STORE8_IN_BOUNDS:
+            case BoundsCheckElimination.I32_STORE16_IN_BOUNDS: {
+                int value = pop();
+                int address = pop();
+                emit(opCode, address, value, code[immediates]);
+                break;
+            }
+            case BinaryFormat.Instructions.Memory.CURRENT_MEMORY:
+                emitResult(opCode);
+                break;
+            case BinaryFormat.Instructions.Memory.GROW_MEMORY:
+                emitResult(opCode, pop());
+                break;
+            case CodeDecoder.MEMORY_INIT:
+            case CodeDecoder.MEMORY_COPY:
+            case CodeDecoder.MEMORY_FILL: {
+                int lengthSlot = pop();
+                int sourceSlot = pop();
+                int destinationSlot = pop();
+                if (opCode == CodeDecoder.MEMORY_INIT) {
+                    emit(opCode, destinationSlot, sourceSlot, lengthSlot, code[immediates]);
+                } else {
+                    emit(opCode, destinationSlot, sourceSlot, lengthSlot);
+                }
+                break;
+            }
+            case CodeDecoder.DATA_DROP:
+                emit(opCode, code[immediates]);
+                break;
+
+            /*****************************
+             * Numeric instructions
+             *****************************/
+            case BinaryFormat.Instructions.Numeric.I32_EQZ:
+            case BinaryFormat.Instructions.Numeric.I32_CLZ:
+            case BinaryFormat.Instructions.Numeric.I32_CTZ:
+            case BinaryFormat.Instructions.Numeric.I32_POPCNT:
+                emitResult(opCode, pop());
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_EQ:
+            case BinaryFormat.Instructions.Numeric.I32_NE:
+            case BinaryFormat.Instructions.Numeric.I32_LT_S:
+            case BinaryFormat.Instructions.Numeric.I32_LT_U:
+            case BinaryFormat.Instructions.Numeric.I32_GT_S:
+            case BinaryFormat.Instructions.Numeric.I32_GT_U:
+            case BinaryFormat.Instructions.Numeric.I32_LE_S:
+            case BinaryFormat.Instructions.Numeric.I32_LE_U:
+            case BinaryFormat.Instructions.Numeric.I32_GE_S:
+            case BinaryFormat.Instructions.Numeric.I32_GE_U:
+            case BinaryFormat.Instructions.Numeric.I32_ADD:
+            case BinaryFormat.Instructions.Numeric.I32_SUB:
+            case BinaryFormat.Instructions.Numeric.I32_MUL:
+            case BinaryFormat.Instructions.Numeric.I32_DIV_S:
+            case BinaryFormat.Instructions.Numeric.I32_DIV_U:
+            case BinaryFormat.Instructions.Numeric.I32_REM_S:
+            case BinaryFormat.Instructions.Numeric.I32_REM_U:
+            case BinaryFormat.Instructions.Numeric.I32_AND:
+            case BinaryFormat.Instructions.Numeric.I32_OR:
+            case BinaryFormat.Instructions.Numeric.I32_XOR:
+            case BinaryFormat.Instructions.Numeric.I32_SHL:
+            case BinaryFormat.Instructions.Numeric.I32_SHR_S:
+            case BinaryFormat.Instructions.Numeric.I32_SHR_U:
+            case BinaryFormat.Instructions.Numeric.I32_ROTL:
+            case BinaryFormat.Instructions.Numeric.I32_ROTR: {
+                int right = pop();
+                int left = pop();
+                emitResult(opCode, left, right);
+                break;
+            }
+
+            /******************************
+             * Control instructions
+             *****************************/
+            case BinaryFormat.Instructions.Control.UNREACHABLE:
+                emit(opCode);
+                currentFrame().unreachable = true;
+                break;
+            case BinaryFormat.Instructions.Control.NOP:
+                break;
+            case BinaryFormat.Instructions.Control.BLOCK:
+                enterBlock(opCode, code[immediates], code[immediates + 1] - 1, code[immediates + 1] - 1);
+                break;
+            case BinaryFormat.Instructions.Control.LOOP:
+                enterBlock(opCode, code[immediates], code[immediates + 1] - 1, code[immediates + 1] - 1);
+                break;
+            case BinaryFormat.Instructions.Control.IF: {
+                int condition = pop();
+                // the else target points behind the immediate of the else instruction
+                int elsePc = code[immediates + 1];
+                int endPc = code[immediates + 2];
+                enterBlock(opCode, code[immediates], elsePc == endPc ? endPc - 1 : elsePc - 2, endPc - 1);
+                emit(RegisterInstructions.JUMP_IF_NOT, condition, -1);
+                currentFrame().elseJump = length - 1;
+                break;
+            }
+            case BinaryFormat.Instructions.Control.ELSE: {
+                ControlFrame frame = currentFrame();
+                if (!frame.unreachable) {
+                    storeBlockResult(frame);
+                    emit(RegisterInstructions.JUMP, -1);
+                    frame.endJumps.add(length - 1);
+                }
+                truncateStack(frame.height);
+                bind(frame.elseJump);
+                frame.elseJump = -1;
+                frame.inElse = true;
+                frame.unreachable = false;
+                break;
+            }
+            case BinaryFormat.Instructions.Control.END:
+                exitBlock();
+                break;
+            case BinaryFormat.Instructions.Control.BR:
+                translateBranch(code[immediates]);
+                currentFrame().unreachable = true;
+                break;
+            case BinaryFormat.Instructions.Control.BR_IF:
+                translateConditionalBranch(code[immediates], pop());
+                break;
+            case BinaryFormat.Instructions.Control.RETURN:
+                emitReturn();
+                currentFrame().unreachable = true;
+                break;
+            case BinaryFormat.Instructions.Control.CALL: {
+                int calledFunctionIndex = code[immediates];
+                Function calledFunction = functions.get(calledFunctionIndex).getFunction();
+                int[] arguments = new int[calledFunction.getParameterCount()];
+                for (int i = arguments.length - 1; i >= 0; i--) {
+                    arguments[i] = pop();
+                }
+                if (calledFunction.getReturnValueCount() == 0) {
+                    emit(opCode, calledFunctionIndex, -1);
+                } else {
+                    emit(opCode, calledFunctionIndex, temporarySlot(stack.size()));
+                }
+                for (int argument : arguments) {
+                    emit(argument);
+                }
+                if (calledFunction.getReturnValueCount() != 0) {
+                    lastResult = length - arguments.length - 1;
+                    push(temporarySlot(stack.size()));
+                }
+                break;
+            }
+            case BinaryFormat.Instructions.Control.DROP:
+                // the value has been computed already, nothing reads it
+                pop();
+                break;
+            default:
+                throw new RuntimeException("Invalid (or not implemented) instruction! [opcode: 0x"
+                    + Integer.toHexString(opCode) + "]");
+        }
+    }
+
+    /***************************
+     * Simulated operand stack
+     ****************************/
+
+    private void push(int slot) {
+        stack.add(slot);
+    }
+
+    private int pop() {
+        return stack.remove(stack.size() - 1);
+    }
+
+    /**
+     * @return the slot of the operand at the given stack height
+     */
+    private int temporarySlot(int height) {
+        return localCount + height;
+    }
+
+    private int constantSlot(int value) {
+        Integer slot = constantSlots.get(value);
+        if (slot == null) {
+            slot = constantBase + constantSlots.size();
+            constantSlots.put(value, slot);
+        }
+        return slot;
+    }
+
+    private void truncateStack(int height) {
+        while (stack.size() > height) {
+            pop();
+        }
+    }
+
+    /**
+     * Copies every operand that is read from a local variable or constant slot into its own slot
+     */
+    private void materializeStack() {
+        for (int height = 0; height < stack.size(); height++) {
+            materialize(height);
+        }
+    }
+
+    private void materialize(int height) {
+        int slot = temporarySlot(height);
+        if (stack.get(height) != slot) {
+            emit(RegisterInstructions.MOVE, slot, stack.get(height));
+            stack.set(height, slot);
+        }
+    }
+
+    private void setLocal(int local, int value) {
+        // operands still reading the old value of the local variable get their own copy first
+        for (int height = 0; height < stack.size(); height++) {
+            if (stack.get(height) == local) {
+                materialize(height);
+            }
+        }
+        move(local, value);
+    }
+
+    /**
+     * Copies a value into a slot. If the value is the result of the last instruction, that instruction stores it
+     * into the slot directly instead.
+     */
+    private void move(int destination, int source) {
+        if (destination == source) {
+            return;
+        }
+        if (lastResult >= 0 && registerCode[lastResult] == source) {
+            registerCode[lastResult] = destination;
+            lastResult = -1;
+            return;
+        }
+        emit(RegisterInstructions.MOVE, destination, source);
+    }
+
+    /***************************
+     * Register code
+     ****************************/
+
+    private void emit(int... values) {
+        lastResult = -1;
+        for (int value : values) {
+            if (length == registerCode.length) {
+                registerCode = Arrays.copyOf(registerCode, 2 * length);
+            }
+            registerCode[length++] = value;
+        }
+    }
+
+    /**
+     * Emits an instruction storing its result into the slot of the next operand and pushes it
+     */
+    private void emitResult(int opCode, int... operands) {
+        int destination = temporarySlot(stack.size());
+        emit(opCode, destination);
+        emit(operands);
+        lastResult = length - operands.length - 1;
+        push(destination);
+    }
+
+    /**
+     * Makes the jump whose target is at the given position jump to the current end of the register code
+     */
+    private void bind(int jumpTarget) {
+        if (jumpTarget >= 0) {
+            registerCode[jumpTarget] = length;
+        }
+        // the next instruction can be reached from elsewhere
+        lastResult = -1;
+    }
+
+    /***************************
+     * Structured control flow
+     ****************************/
+
+    private ControlFrame currentFrame() {
+        return controlStack.get(controlStack.size() - 1);
+    }
+
+    private void enterBlock(int opCode, int arity, int elseOpCodePc, int endOpCodePc) {
+        // all paths into the block leave the enclosing operands in their own slots
+        materializeStack();
+        bind(-1);
+        controlStack.add(new ControlFrame(opCode, arity, stack.size(), elseOpCodePc, endOpCodePc, length));
+    }
+
+    /**
+     * Moves the result of the block (if any) into the slot of the operand at the block's height
+     */
+    private void storeBlockResult(ControlFrame frame) {
+        if (frame.arity != 0) {
+            move(temporarySlot(frame.height), pop());
+        }
+    }
+
+    private void exitBlock() {
+        ControlFrame frame = currentFrame();
+        if (!frame.unreachable) {
+            storeBlockResult(frame);
+        }
+        truncateStack(frame.height);
+        controlStack.remove(controlStack.size() - 1);
+
+        boolean reachable = !frame.unreachable || frame.branchedTo;
+        if (frame.elseJump >= 0) {
+            // without an else branch a false condition continues behind the end
+            bind(frame.elseJump);
+            reachable = true;
+        }
+        for (int endJump : frame.endJumps) {
+            bind(endJump);
+        }
+        bind(-1);
+
+        if (frame.arity != 0) {
+            push(temporarySlot(frame.height));
+        }
+        if (!reachable) {
+            currentFrame().unreachable = true;
+        }
+    }
+
+    private void emitReturn() {
+        if (controlStack.get(0).arity != 0) {
+            emit(BinaryFormat.Instructions.Control.RETURN, pop());
+        } else {
+            emit(BinaryFormat.Instructions.Control.RETURN, -1);
+        }
+    }
+
+    /**
+     * Emits an unconditional jump to the label at the given depth, moving the value it carries (if any) into the
+     * slot of the label's result
+     */
+    private void translateBranch(int depth) {
+        ControlFrame target = controlStack.get(controlStack.size() - 1 - depth);
+        if (depth == controlStack.size() - 1) {
+            emitReturn();
+            return;
+        }
+        if (target.opCode == BinaryFormat.Instructions.Control.LOOP) {
+            emit(RegisterInstructions.JUMP, target.loopStart);
+            return;
+        }
+        target.branchedTo = true;
+        if (target.arity != 0) {
+            move(temporarySlot(target.height), pop());
+        }
+        emit(RegisterInstructions.JUMP, -1);
+        target.endJumps.add(length - 1);
+    }
+
+    private void translateConditionalBranch(int depth, int condition) {
+        ControlFrame target = controlStack.get(controlStack.size() - 1 - depth);
+        boolean carriesValue = target.opCode != BinaryFormat.Instructions.Control.LOOP && target.arity != 0;
+        if (depth != controlStack.size() - 1 && (!carriesValue || stack.get(stack.size() - 1)
+            == temporarySlot(target.height))) {
+            // the value (if any) already is where the target expects it
+            if (target.opCode == BinaryFormat.Instructions.Control.LOOP) {
+                emit(RegisterInstructions.JUMP_IF, condition, target.loopStart);
+            } else {
+                target.branchedTo = true;
+                emit(RegisterInstructions.JUMP_IF, condition, -1);
+                target.endJumps.add(length - 1);
+            }
+            return;
+        }
+
+        // the value stays on the stack if the branch is not taken, so it is copied on the taken path only
+        emit(RegisterInstructions.JUMP_IF_NOT, condition, -1);
+        int skip = length - 1;
+        // a branch without a value only gets here if it returns, its operand stack may be empty
+        int value = carriesValue ? stack.get(stack.size() - 1) : -1;
+        if (depth == controlStack.size() - 1) {
+            emit(BinaryFormat.Instructions.Control.RETURN, value);
+        } else {
+            target.branchedTo = true;
+            emit(RegisterInstructions.MOVE, temporarySlot(target.height), value);
+            emit(RegisterInstructions.JUMP, -1);
+            target.endJumps.add(length - 1);
+        }
+        bind(skip);
+    }
+}
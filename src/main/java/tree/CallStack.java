@@ -0,0 +1,26 @@
+package tree;
+
+import interpreter.TrapException;
+
+/**
+ * Tracks the depth of nested function calls, exceeding the maximum traps like in the interpreter.
+ */
+final class CallStack {
+    private final int maxCallDepth;
+    private int callDepth = 0;
+
+    CallStack(int maxCallDepth) {
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    void enter() {
+        if (callDepth == maxCallDepth) {
+            throw new TrapException("Call stack exhausted! Maximum call depth: " + maxCallDepth);
+        }
+        callDepth++;
+    }
+
+    void exit() {
+        callDepth--;
+    }
+}
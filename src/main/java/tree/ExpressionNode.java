@@ -0,0 +1,14 @@
+package tree;
+
+/**
+ * A node of a function's tree that computes an i32 value. Its children are evaluated directly by calling them, from
+ * left to right, which is the order their values were pushed on the operand stack.
+ */
+abstract class ExpressionNode {
+
+    /**
+     * @param slots the local variables and temporaries of the executing function
+     * @return the value of the expression
+     */
+    abstract int evaluate(int[] slots);
+}
@@ -0,0 +1,518 @@
+package tree;
+
+import environment.LinearMemory;
+
+/**
+ * The expression nodes. Every operation has its own node class, so the calls of a node to its children are
+ * monomorphic where the tree is, and HotSpot can inline them.
+ */
+final class Expressions {
+
+    private Expressions() {
+    }
+
+    /***************************
+     * Variable and constant access
+     ****************************/
+
+    static final class Constant extends ExpressionNode {
+        private final int value;
+
+        Constant(int value) {
+            this.value = value;
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return value;
+        }
+    }
+
+    static final class GetLocal extends ExpressionNode {
+        final int slot;
+
+        GetLocal(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return slots[slot];
+        }
+    }
+
+    static final class TeeLocal extends ExpressionNode {
+        private final int slot;
+        private final ExpressionNode value;
+
+        TeeLocal(int slot, ExpressionNode value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return slots[slot] = value.evaluate(slots);
+        }
+    }
+
+    /***************************
+     * Function call
+     ****************************/
+
+    static final class Call extends ExpressionNode {
+        private final TreeFunction function;
+        private final ExpressionNode[] arguments;
+        private final CallStack callStack;
+
+        Call(TreeFunction function, ExpressionNode[] arguments, CallStack callStack) {
+            this.function = function;
+            this.arguments = arguments;
+            this.callStack = callStack;
+        }
+
+        /**
+         * @return the return value of the called function, 0 if it has none
+         */
+        @Override
+        int evaluate(int[] slots) {
+            int[] calledSlots = function.newSlots();
+            for (int i = 0; i < arguments.length; i++) {
+                calledSlots[i] = arguments[i].evaluate(slots);
+            }
+
+            callStack.enter();
+            int returnValue = function.invoke(calledSlots);
+            callStack.exit();
+            return returnValue;
+        }
+    }
+
+    /***************************
+     * Memory access
+     ****************************/
+
+    static final class Load extends ExpressionNode {
+        private final LinearMemory linearMemory;
+        private final int offset;
+        private final int byteCount;
+        private final LinearMemory.SIGNEDNESS signedness;
+        private final ExpressionNode address;
+
+        Load(LinearMemory linearMemory, int offset, int byteCount, LinearMemory.SIGNEDNESS signedness,
+             ExpressionNode address) {
+            this.linearMemory = linearMemory;
+            this.offset = offset;
+            this.byteCount = byteCount;
+            this.signedness = signedness;
+            this.address = address;
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return linearMemory.load(address.evaluate(slots), 0, offset, byteCount, signedness);
+        }
+    }
+
+    /**
+     * A load proven to be in bounds, see {@link parser.BoundsCheckElimination}
+     */
+    static final class LoadInBounds extends ExpressionNode {
+        private final LinearMemory linearMemory;
+        private final int offset;
+        private final int byteCount;
+        private final LinearMemory.SIGNEDNESS signedness;
+        private final ExpressionNode address;
+
+        LoadInBounds(LinearMemory linearMemory, int offset, int byteCount, LinearMemory.SIGNEDNESS signedness,
+                     ExpressionNode address) {
+            this.linearMemory = linearMemory;
+            this.offset = offset;
+            this.byteCount = byteCount;
+            this.signedness = signedness;
+            this.address = address;
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return linearMemory.loadInBounds(address.evaluate(slots) + offset, byteCount, signedness);
+        }
+    }
+
+    static final class CurrentMemory extends ExpressionNode {
+        private final LinearMemory linearMemory;
+
+        CurrentMemory(LinearMemory linearMemory) {
+            this.linearMemory = linearMemory;
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return linearMemory.currentMemory();
+        }
+    }
+
+    static final class GrowMemory extends ExpressionNode {
+        private final LinearMemory linearMemory;
+        private final ExpressionNode deltaPages;
+
+        GrowMemory(LinearMemory linearMemory, ExpressionNode deltaPages) {
+            this.linearMemory = linearMemory;
+            this.deltaPages = deltaPages;
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return linearMemory.growMemory(deltaPages.evaluate(slots));
+        }
+    }
+
+    /***************************
+     * Unary operations
+     ****************************/
+
+    abstract static class UnaryNode extends ExpressionNode {
+        final ExpressionNode operand;
+
+        UnaryNode(ExpressionNode operand) {
+            this.operand = operand;
+        }
+    }
+
+    static final class Eqz extends UnaryNode {
+        Eqz(ExpressionNode operand) {
+            super(operand);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return operand.evaluate(slots) == 0 ? 1 : 0;
+        }
+    }
+
+    static final class Clz extends UnaryNode {
+        Clz(ExpressionNode operand) {
+            super(operand);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.numberOfLeadingZeros(operand.evaluate(slots));
+        }
+    }
+
+    static final class Ctz extends UnaryNode {
+        Ctz(ExpressionNode operand) {
+            super(operand);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.numberOfTrailingZeros(operand.evaluate(slots));
+        }
+    }
+
+    static final class Popcnt extends UnaryNode {
+        Popcnt(ExpressionNode operand) {
+            super(operand);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.bitCount(operand.evaluate(slots));
+        }
+    }
+
+    /***************************
+     * Binary operations
+     ****************************/
+
+    abstract static class BinaryNode extends ExpressionNode {
+        final ExpressionNode left;
+        final ExpressionNode right;
+
+        BinaryNode(ExpressionNode left, ExpressionNode right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    static final class Add extends BinaryNode {
+        Add(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) + right.evaluate(slots);
+        }
+    }
+
+    static final class Sub extends BinaryNode {
+        Sub(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) - right.evaluate(slots);
+        }
+    }
+
+    static final class Mul extends BinaryNode {
+        Mul(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) * right.evaluate(slots);
+        }
+    }
+
+    static final class DivS extends BinaryNode {
+        DivS(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) / right.evaluate(slots);
+        }
+    }
+
+    static final class DivU extends BinaryNode {
+        DivU(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.divideUnsigned(left.evaluate(slots), right.evaluate(slots));
+        }
+    }
+
+    static final class RemS extends BinaryNode {
+        RemS(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) % right.evaluate(slots);
+        }
+    }
+
+    static final class RemU extends BinaryNode {
+        RemU(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.remainderUnsigned(left.evaluate(slots), right.evaluate(slots));
+        }
+    }
+
+    static final class And extends BinaryNode {
+        And(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) & right.evaluate(slots);
+        }
+    }
+
+    static final class Or extends BinaryNode {
+        Or(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) | right.evaluate(slots);
+        }
+    }
+
+    static final class Xor extends BinaryNode {
+        Xor(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) ^ right.evaluate(slots);
+        }
+    }
+
+    static final class Shl extends BinaryNode {
+        Shl(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) << right.evaluate(slots);
+        }
+    }
+
+    static final class ShrS extends BinaryNode {
+        ShrS(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) >> right.evaluate(slots);
+        }
+    }
+
+    static final class ShrU extends BinaryNode {
+        ShrU(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) >>> right.evaluate(slots);
+        }
+    }
+
+    static final class Rotl extends BinaryNode {
+        Rotl(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.rotateLeft(left.evaluate(slots), right.evaluate(slots));
+        }
+    }
+
+    static final class Rotr extends BinaryNode {
+        Rotr(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.rotateRight(left.evaluate(slots), right.evaluate(slots));
+        }
+    }
+
+    /***************************
+     * Comparisons
+     ****************************/
+
+    static final class Eq extends BinaryNode {
+        Eq(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) == right.evaluate(slots) ? 1 : 0;
+        }
+    }
+
+    static final class Ne extends BinaryNode {
+        Ne(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) != right.evaluate(slots) ? 1 : 0;
+        }
+    }
+
+    static final class LtS extends BinaryNode {
+        LtS(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) < right.evaluate(slots) ? 1 : 0;
+        }
+    }
+
+    static final class LtU extends BinaryNode {
+        LtU(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.compareUnsigned(left.evaluate(slots), right.evaluate(slots)) < 0 ? 1 : 0;
+        }
+    }
+
+    static final class GtS extends BinaryNode {
+        GtS(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) > right.evaluate(slots) ? 1 : 0;
+        }
+    }
+
+    static final class GtU extends BinaryNode {
+        GtU(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.compareUnsigned(left.evaluate(slots), right.evaluate(slots)) > 0 ? 1 : 0;
+        }
+    }
+
+    static final class LeS extends BinaryNode {
+        LeS(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) <= right.evaluate(slots) ? 1 : 0;
+        }
+    }
+
+    static final class LeU extends BinaryNode {
+        LeU(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.compareUnsigned(left.evaluate(slots), right.evaluate(slots)) <= 0 ? 1 : 0;
+        }
+    }
+
+    static final class GeS extends BinaryNode {
+        GeS(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return left.evaluate(slots) >= right.evaluate(slots) ? 1 : 0;
+        }
+    }
+
+    static final class GeU extends BinaryNode {
+        GeU(ExpressionNode left, ExpressionNode right) {
+            super(left, right);
+        }
+
+        @Override
+        int evaluate(int[] slots) {
+            return Integer.compareUnsigned(left.evaluate(slots), right.evaluate(slots)) >= 0 ? 1 : 0;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package tree;
+
+/**
+ * A node of a function's tree that is executed for its effect. It completes normally or signals a branch, which the
+ * enclosing block, loop and if nodes handle.
+ */
+abstract class StatementNode {
+
+    /**
+     * The statement completed normally, execution continues with the next statement
+     */
+    static final int NORMAL = -1;
+
+    /**
+     * The function returns
+     */
+    static final int RETURN = Integer.MAX_VALUE;
+
+    /**
+     * @param slots the local variables and temporaries of the executing function
+     * @return {@link #NORMAL}, {@link #RETURN} or the depth of the label to branch to, counted from the innermost
+     * enclosing block, loop or if
+     */
+    abstract int execute(int[] slots);
+}
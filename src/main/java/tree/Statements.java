@@ -0,0 +1,347 @@
+package tree;
+
+import environment.LinearMemory;
+import environment.Module;
+import interpreter.TrapException;
+
+/**
+ * The statement nodes. The structured control instructions own the statements of their bodies and consume the
+ * branch signals targeting their own label.
+ */
+final class Statements {
+    private static final int NORMAL = StatementNode.NORMAL;
+    private static final int RETURN = StatementNode.RETURN;
+
+    private Statements() {
+    }
+
+    /**
+     * Executes statements until one of them signals a branch or return.
+     *
+     * @return the signal of the statement that stopped the execution or {@link StatementNode#NORMAL}
+     */
+    private static int executeAll(StatementNode[] statements, int[] slots) {
+        for (StatementNode statement : statements) {
+            int signal = statement.execute(slots);
+            if (signal != NORMAL) {
+                return signal;
+            }
+        }
+        return NORMAL;
+    }
+
+    /**
+     * Translates the signal leaving the body of a block, loop or if into the signal for the enclosing statements:
+     * a branch to the label of this block completes it normally, branches to outer labels are one level closer.
+     */
+    private static int leaveLabel(int signal) {
+        if (signal == NORMAL || signal == 0) {
+            return NORMAL;
+        }
+        return signal == RETURN ? RETURN : signal - 1;
+    }
+
+    /***************************
+     * Variables and memory
+     ****************************/
+
+    static final class SetLocal extends StatementNode {
+        private final int slot;
+        private final ExpressionNode value;
+
+        SetLocal(int slot, ExpressionNode value) {
+            this.slot = slot;
+            this.value = value;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            slots[slot] = value.evaluate(slots);
+            return NORMAL;
+        }
+    }
+
+    static final class Store extends StatementNode {
+        private final LinearMemory linearMemory;
+        private final int offset;
+        private final int byteCount;
+        private final ExpressionNode address;
+        private final ExpressionNode value;
+
+        Store(LinearMemory linearMemory, int offset, int byteCount, ExpressionNode address, ExpressionNode value) {
+            this.linearMemory = linearMemory;
+            this.offset = offset;
+            this.byteCount = byteCount;
+            this.address = address;
+            this.value = value;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            int effectiveAddress = address.evaluate(slots);
+            linearMemory.store(effectiveAddress, 0, offset, byteCount, value.evaluate(slots));
+            return NORMAL;
+        }
+    }
+
+    /**
+     * A store proven to be in bounds, see {@link parser.BoundsCheckElimination}
+     */
+    static final class StoreInBounds extends StatementNode {
+        private final LinearMemory linearMemory;
+        private final int offset;
+        private final int byteCount;
+        private final ExpressionNode address;
+        private final ExpressionNode value;
+
+        StoreInBounds(LinearMemory linearMemory, int offset, int byteCount, ExpressionNode address,
+                      ExpressionNode value) {
+            this.linearMemory = linearMemory;
+            this.offset = offset;
+            this.byteCount = byteCount;
+            this.address = address;
+            this.value = value;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            int effectiveAddress = address.evaluate(slots) + offset;
+            linearMemory.storeInBounds(effectiveAddress, byteCount, value.evaluate(slots));
+            return NORMAL;
+        }
+    }
+
+    static final class MemoryInit extends StatementNode {
+        private final Module module;
+        private final int segmentIndex;
+        private final ExpressionNode destination;
+        private final ExpressionNode offset;
+        private final ExpressionNode length;
+
+        MemoryInit(Module module, int segmentIndex, ExpressionNode destination, ExpressionNode offset,
+                   ExpressionNode length) {
+            this.module = module;
+            this.segmentIndex = segmentIndex;
+            this.destination = destination;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            int destinationAddress = destination.evaluate(slots);
+            int segmentOffset = offset.evaluate(slots);
+            module.initMemory(segmentIndex, destinationAddress, segmentOffset, length.evaluate(slots));
+            return NORMAL;
+        }
+    }
+
+    static final class DataDrop extends StatementNode {
+        private final Module module;
+        private final int segmentIndex;
+
+        DataDrop(Module module, int segmentIndex) {
+            this.module = module;
+            this.segmentIndex = segmentIndex;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            module.dropDataSegment(segmentIndex);
+            return NORMAL;
+        }
+    }
+
+    static final class MemoryCopy extends StatementNode {
+        private final LinearMemory linearMemory;
+        private final ExpressionNode destination;
+        private final ExpressionNode source;
+        private final ExpressionNode length;
+
+        MemoryCopy(LinearMemory linearMemory, ExpressionNode destination, ExpressionNode source,
+                   ExpressionNode length) {
+            this.linearMemory = linearMemory;
+            this.destination = destination;
+            this.source = source;
+            this.length = length;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            int destinationAddress = destination.evaluate(slots);
+            int sourceAddress = source.evaluate(slots);
+            linearMemory.copy(destinationAddress, sourceAddress, length.evaluate(slots));
+            return NORMAL;
+        }
+    }
+
+    static final class MemoryFill extends StatementNode {
+        private final LinearMemory linearMemory;
+        private final ExpressionNode destination;
+        private final ExpressionNode value;
+        private final ExpressionNode length;
+
+        MemoryFill(LinearMemory linearMemory, ExpressionNode destination, ExpressionNode value,
+                   ExpressionNode length) {
+            this.linearMemory = linearMemory;
+            this.destination = destination;
+            this.value = value;
+            this.length = length;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            int destinationAddress = destination.evaluate(slots);
+            int fillValue = value.evaluate(slots);
+            linearMemory.fill(destinationAddress, fillValue, length.evaluate(slots));
+            return NORMAL;
+        }
+    }
+
+    /**
+     * Evaluates an expression for its side effects only, e.g. a call of a function without return value
+     */
+    static final class Evaluate extends StatementNode {
+        private final ExpressionNode expression;
+
+        Evaluate(ExpressionNode expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            expression.evaluate(slots);
+            return NORMAL;
+        }
+    }
+
+    /***************************
+     * Structured control flow
+     ****************************/
+
+    static final class Block extends StatementNode {
+        private final StatementNode[] body;
+
+        Block(StatementNode[] body) {
+            this.body = body;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            return leaveLabel(executeAll(body, slots));
+        }
+    }
+
+    static final class Loop extends StatementNode {
+        private final StatementNode[] body;
+
+        Loop(StatementNode[] body) {
+            this.body = body;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            int signal;
+            do {
+                // a branch to the label of a loop starts its next iteration
+                signal = executeAll(body, slots);
+            } while (signal == 0);
+            return signal == NORMAL || signal == RETURN ? signal : signal - 1;
+        }
+    }
+
+    static final class If extends StatementNode {
+        private final ExpressionNode condition;
+        private final StatementNode[] thenBody;
+        private final StatementNode[] elseBody;
+
+        If(ExpressionNode condition, StatementNode[] thenBody, StatementNode[] elseBody) {
+            this.condition = condition;
+            this.thenBody = thenBody;
+            this.elseBody = elseBody;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            if (condition.evaluate(slots) != 0) {
+                return leaveLabel(executeAll(thenBody, slots));
+            }
+            return leaveLabel(executeAll(elseBody, slots));
+        }
+    }
+
+    /**
+     * An unconditional branch, the value it carries (if any) has already been stored in the result slot of the
+     * target
+     */
+    static final class Br extends StatementNode {
+        private final int depth;
+
+        Br(int depth) {
+            this.depth = depth;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            return depth;
+        }
+    }
+
+    static final class BrIf extends StatementNode {
+        private final ExpressionNode condition;
+        private final int depth;
+
+        BrIf(ExpressionNode condition, int depth) {
+            this.condition = condition;
+            this.depth = depth;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            return condition.evaluate(slots) != 0 ? depth : NORMAL;
+        }
+    }
+
+    /**
+     * A conditional branch carrying a value: if taken, the value is copied into the result slot of the target
+     */
+    static final class BrIfWithValue extends StatementNode {
+        private final ExpressionNode condition;
+        private final int depth;
+        private final int valueSlot;
+        private final int resultSlot;
+
+        BrIfWithValue(ExpressionNode condition, int depth, int valueSlot, int resultSlot) {
+            this.condition = condition;
+            this.depth = depth;
+            this.valueSlot = valueSlot;
+            this.resultSlot = resultSlot;
+        }
+
+        @Override
+        int execute(int[] slots) {
+            if (condition.evaluate(slots) == 0) {
+                return NORMAL;
+            }
+            slots[resultSlot] = slots[valueSlot];
+            return depth;
+        }
+    }
+
+    /**
+     * Returns from the function, the return value (if any) has already been stored in its result slot
+     */
+    static final class Return extends StatementNode {
+        @Override
+        int execute(int[] slots) {
+            return RETURN;
+        }
+    }
+
+    static final class Unreachable extends StatementNode {
+        @Override
+        int execute(int[] slots) {
+            throw new TrapException("You reached unreachable code!");
+        }
+    }
+}
@@ -0,0 +1,568 @@
+package tree;
+
+import constants.BinaryFormat;
+import environment.Function;
+import environment.LinearMemory;
+import environment.Module;
+import parser.BoundsCheckElimination;
+import parser.CodeDecoder;
+import parser.Superinstructions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the tree of a function from its decoded code (see {@link CodeDecoder}) by simulating the operand stack with
+ * expression nodes: instructions producing a value push an expression built from the expressions they pop, all other
+ * instructions become statements.
+ *
+ * An expression left on the simulated stack is evaluated only when it is popped, i.e. after all statements built in
+ * between. Therefore all pending expressions (except constants and temporaries) are spilled into fresh temporary slots
+ * before a statement is added, which keeps the order of side effects and local variable accesses of the stack code.
+ * Every block with a result gets a result slot, which the value is stored into at the end of the block and by every
+ * branch to it.
+ */
+final class TreeBuilder {
+
+    /**
+     * A block, loop or if whose end has not been translated yet
+     */
+    private static class ControlFrame {
+        private final int opCode;
+        private final int arity;
+        private final int height;
+        private final int resultSlot;
+        private final int elseOpCodePc;
+        private final int endOpCodePc;
+
+        private final ExpressionNode condition;
+        private List<StatementNode> statements = new ArrayList<>();
+        private List<StatementNode> thenStatements;
+        private boolean branchedTo = false;
+
+        /**
+         * Whether the rest of the (then or else branch of the) block can only be reached by a branch to its label
+         */
+        private boolean unreachable = false;
+
+        private ControlFrame(int opCode, int arity, int height, int resultSlot, int elseOpCodePc, int endOpCodePc,
+                             ExpressionNode condition) {
+            this.opCode = opCode;
+            this.arity = arity;
+            this.height = height;
+            this.resultSlot = resultSlot;
+            this.elseOpCodePc = elseOpCodePc;
+            this.endOpCodePc = endOpCodePc;
+            this.condition = condition;
+        }
+
+        private boolean inElse() {
+            return thenStatements != null;
+        }
+    }
+
+    private final List<TreeFunction> functions;
+    private final Module module;
+    private final LinearMemory linearMemory;
+    private final CallStack callStack;
+
+    private Function function;
+    private int[] code;
+    private int localSlotCount;
+    private int slotCount;
+    private final List<ExpressionNode> stack = new ArrayList<>();
+    private final List<ControlFrame> controlStack = new ArrayList<>();
+
+    TreeBuilder(List<TreeFunction> functions, Module module, CallStack callStack) {
+        this.functions = functions;
+        this.module = module;
+        this.linearMemory = module.getLinearMemory();
+        this.callStack = callStack;
+    }
+
+    /**
+     * Builds the tree of the function and stores it in the function.
+     */
+    void build(TreeFunction treeFunction) {
+        function = treeFunction.getFunction();
+        code = function.getCode();
+        localSlotCount = function.getParameterCount() + function.getLocalVariableCount();
+        slotCount = localSlotCount;
+        stack.clear();
+        controlStack.clear();
+
+        // the function body itself is the outermost block, a branch to it is a return
+        int resultSlot = function.getReturnValueCount() == 0 ? -1 : newSlot();
+        controlStack.add(new ControlFrame(BinaryFormat.Instructions.Control.BLOCK, function.getReturnValueCount(),
+            0, resultSlot, code.length, code.length, null));
+
+        int pc = 0;
+        while (pc < code.length) {
+            ControlFrame frame = currentFrame();
+            if (frame.unreachable) {
+                // skip the dead code up to the else or end of the innermost block
+                if (!frame.inElse() && frame.elseOpCodePc != frame.endOpCodePc) {
+                    pc = frame.elseOpCodePc;
+                } else {
+                    pc = frame.endOpCodePc;
+                }
+                if (pc >= code.length) {
+                    break;
+                }
+            }
+
+            // superinstructions are translated as their first instruction, the others follow on their own
+            int opCode = Superinstructions.baseOpCode(code[pc]);
+            translateInstruction(opCode, pc + 1);
+            pc += 1 + CodeDecoder.immediateCount(opCode);
+        }
+
+        StatementNode body = new Statements.Block(toArray(controlStack.get(0).statements));
+        treeFunction.setTree(body, slotCount, resultSlot);
+    }
+
+    /**
+     * @param opCode      the opcode of the instruction
+     * @param immediates  the position of the first immediate of the instruction
+     */
+    private void translateInstruction(int opCode, int immediates) {
+        switch (opCode) {
+            /***************************
+             * Variable and constant access instructions
+             ****************************/
+            case BinaryFormat.Instructions.Numeric.I32_CONST:
+                push(new Expressions.Constant(code[immediates]));
+                break;
+            case BinaryFormat.Instructions.Variable.GET_LOCAL:
+                push(new Expressions.GetLocal(code[immediates]));
+                break;
+            case BinaryFormat.Instructions.Variable.SET_LOCAL:
+                addStatement(new Statements.SetLocal(code[immediates], pop()));
+                break;
+            case BinaryFormat.Instructions.Variable.TEE_LOCAL:
+                push(new Expressions.TeeLocal(code[immediates], pop()));
+                break;
+
+            /***************************
+             * Memory instructions
+             ****************************/
+            case BinaryFormat.Instructions.Memory.I32_LOAD:
+                pushLoad(code[immediates], 4, LinearMemory.SIGNEDNESS.UNSIGNED);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_S:
+                pushLoad(code[immediates], 1, LinearMemory.SIGNEDNESS.SIGNED);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD8_U:
+                pushLoad(code[immediates], 1, LinearMemory.SIGNEDNESS.UNSIGNED);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_S:
+                pushLoad(code[immediates], 2, LinearMemory.SIGNEDNESS.SIGNED);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_LOAD16_U:
+                pushLoad(code[immediates], 2, LinearMemory.SIGNEDNESS.UNSIGNED);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_STORE:
+                addStore(code[immediates], 4);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_STORE8:
+                addStore(code[immediates], 1);
+                break;
+            case BinaryFormat.Instructions.Memory.I32_STORE16:
+                addStore(code[immediates], 2);
+                break;
+            case BoundsCheckElimination.I32_LOAD_IN_BOUNDS:
+                push(new Expressions.LoadInBounds(linearMemory, code[immediates], 4, LinearMemory.SIGNEDNESS.UNSIGNED,
+                    pop()));
+                break;
+            case BoundsCheckElimination.I32_LOAD8_S_IN_BOUNDS:
+                push(new Expressions.LoadInBounds(linearMemory, code[immediates], 1, LinearMemory.SIGNEDNESS.SIGNED,
+                    pop()));
+                break;
+            case BoundsCheckElimination.I32_LOAD8_U_IN_BOUNDS:
+                push(new Expressions.LoadInBounds(linearMemory, code[immediates], 1, LinearMemory.SIGNEDNESS.UNSIGNED,
+                    pop()));
+                break;
+            case BoundsCheckElimination.I32_LOAD16_S_IN_BOUNDS:
+                push(new Expressions.LoadInBounds(linearMemory, code[immediates], 2, LinearMemory.SIGNEDNESS.SIGNED,
+                    pop()));
+                break;
+            case BoundsCheckElimination.I32_LOAD16_U_IN_BOUNDS:
+                push(new Expressions.LoadInBounds(linearMemory, code[immediates], 2, LinearMemory.SIGNEDNESS.UNSIGNED,
+                    pop()));
+                break;
+            case BoundsCheckElimination.I32_STORE_IN_BOUNDS:
+                addStoreInBounds(code[immediates], 4);
+                break;
+            case BoundsCheckElimination.I32_STORE8_IN_BOUNDS:
+                addStoreInBounds(code[immediates], 1);
+                break;
+            case BoundsCheckElimination.I32_STORE16_IN_BOUNDS:
+                addStoreInBounds(code[immediates], 2);
+                break;
+            case BinaryFormat.Instructions.Memory.CURRENT_MEMORY:
+                push(new Expressions.CurrentMemory(linearMemory));
+                break;
+            case BinaryFormat.Instructions.Memory.GROW_MEMORY:
+                push(new Expressions.GrowMemory(linearMemory, pop()));
+                break;
+            case CodeDecoder.MEMORY_INIT: {
+                ExpressionNode length = pop();
+                ExpressionNode offset = pop();
+                ExpressionNode destination = pop();
+                addStatement(new Statements.MemoryInit(module, code[immediates], destination, offset, length));
+                break;
+            }
+            case CodeDecoder.DATA_DROP:
+                addStatement(new Statements.DataDrop(module, code[immediates]));
+                break;
+            case CodeDecoder.MEMORY_COPY: {
+                ExpressionNode length = pop();
+                ExpressionNode source = pop();
+                ExpressionNode destination = pop();
+                addStatement(new Statements.MemoryCopy(linearMemory, destination, source, length));
+                break;
+            }
+            case CodeDecoder.MEMORY_FILL: {
+                ExpressionNode length = pop();
+                ExpressionNode value = pop();
+                ExpressionNode destination = pop();
+                addStatement(new Statements.MemoryFill(linearMemory, destination, value, length));
+                break;
+            }
+
+            /*****************************
+             * Numeric instructions
+             *****************************/
+            case BinaryFormat.Instructions.Numeric.I32_EQZ:
+                push(new Expressions.Eqz(pop()));
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_CLZ:
+                push(new Expressions.Clz(pop()));
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_CTZ:
+                push(new Expressions.Ctz(pop()));
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_POPCNT:
+                push(new Expressions.Popcnt(pop()));
+                break;
+            case BinaryFormat.Instructions.Numeric.I32_EQ:
+            case BinaryFormat.Instructions.Numeric.I32_NE:
+            case BinaryFormat.Instructions.Numeric.I32_LT_S:
+            case BinaryFormat.Instructions.Numeric.I32_LT_U:
+            case BinaryFormat.Instructions.Numeric.I32_GT_S:
+            case BinaryFormat.Instructions.Numeric.I32_GT_U:
+            case BinaryFormat.Instructions.Numeric.I32_LE_S:
+            case BinaryFormat.Instructions.Numeric.I32_LE_U:
+            case BinaryFormat.Instructions.Numeric.I32_GE_S:
+            case BinaryFormat.Instructions.Numeric.I32_GE_U:
+            case BinaryFormat.Instructions.Numeric.I32_ADD:
+            case BinaryFormat.Instructions.Numeric.I32_SUB:
+            case BinaryFormat.Instructions.Numeric.I32_MUL:
+            case BinaryFormat.Instructions.Numeric.I32_DIV_S:
+            case BinaryFormat.Instructions.Numeric.I32_DIV_U:
+            case BinaryFormat.Instructions.Numeric.I32_REM_S:
+            case BinaryFormat.Instructions.Numeric.I32_REM_U:
+            case BinaryFormat.Instructions.Numeric.I32_AND:
+            case BinaryFormat.Instructions.Numeric.I32_OR:
+            case BinaryFormat.Instructions.Numeric.I32_XOR:
+            case BinaryFormat.Instructions.Numeric.I32_SHL:
+            case BinaryFormat.Instructions.Numeric.I32_SHR_S:
+            case BinaryFormat.Instructions.Numeric.I32_SHR_U:
+            case BinaryFormat.Instructions.Numeric.I32_ROTL:
+            case BinaryFormat.Instructions.Numeric.I32_ROTR: {
+                ExpressionNode right = pop();
+                ExpressionNode left = pop();
+                push(binaryNode(opCode, left, right));
+                break;
+            }
+
+            /******************************
+             * Control instructions
+             *****************************/
+            case BinaryFormat.Instructions.Control.UNREACHABLE:
+                addStatement(new Statements.Unreachable());
+                currentFrame().unreachable = true;
+                break;
+            case BinaryFormat.Instructions.Control.NOP:
+                break;
+            case BinaryFormat.Instructions.Control.BLOCK:
+            case BinaryFormat.Instructions.Control.LOOP:
+                enterBlock(opCode, code[immediates], code[immediates + 1] - 1, code[immediates + 1] - 1, null);
+                break;
+            case BinaryFormat.Instructions.Control.IF: {
+                ExpressionNode condition = pop();
+                // the else target points behind the immediate of the else instruction
+                int elsePc = code[immediates + 1];
+                int endPc = code[immediates + 2];
+                enterBlock(opCode, code[immediates], elsePc == endPc ? endPc - 1 : elsePc - 2, endPc - 1,
+                    condition);
+                break;
+            }
+            case BinaryFormat.Instructions.Control.ELSE: {
+                ControlFrame frame = currentFrame();
+                storeBlockResult(frame);
+                frame.thenStatements = frame.statements;
+                frame.statements = new ArrayList<>();
+                frame.unreachable = false;
+                break;
+            }
+            case BinaryFormat.Instructions.Control.END:
+                exitBlock();
+                break;
+            case BinaryFormat.Instructions.Control.BR:
+                addBranch(code[immediates]);
+                currentFrame().unreachable = true;
+                break;
+            case BinaryFormat.Instructions.Control.BR_IF:
+                addConditionalBranch(code[immediates], pop());
+                break;
+            case BinaryFormat.Instructions.Control.RETURN: {
+                ControlFrame functionFrame = controlStack.get(0);
+                if (functionFrame.arity != 0) {
+                    addStatement(new Statements.SetLocal(functionFrame.resultSlot, pop()));
+                }
+                addStatement(new Statements.Return());
+                currentFrame().unreachable = true;
+                break;
+            }
+            case BinaryFormat.Instructions.Control.CALL: {
+                Function calledFunction = functions.get(code[immediates]).getFunction();
+                ExpressionNode[] arguments = new ExpressionNode[calledFunction.getParameterCount()];
+                for (int i = arguments.length - 1; i >= 0; i--) {
+                    arguments[i] = pop();
+                }
+                ExpressionNode call = new Expressions.Call(functions.get(code[immediates]), arguments, callStack);
+                if (calledFunction.getReturnValueCount() == 0) {
+                    addStatement(new Statements.Evaluate(call));
+                } else {
+                    push(call);
+                }
+                break;
+            }
+            case BinaryFormat.Instructions.Control.DROP: {
+                ExpressionNode value = pop();
+                if (!isPure(value)) {
+                    addStatement(new Statements.Evaluate(value));
+                }
+                break;
+            }
+            default:
+                throw new RuntimeException("Invalid (or not implemented) instruction! [opcode: 0x"
+                    + Integer.toHexString(opCode) + "]");
+        }
+    }
+
+    private ExpressionNode binaryNode(int opCode, ExpressionNode left, ExpressionNode right) {
+        switch (opCode) {
+            case BinaryFormat.Instructions.Numeric.I32_EQ:
+                return new Expressions.Eq(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_NE:
+                return new Expressions.Ne(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_LT_S:
+                return new Expressions.LtS(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_LT_U:
+                return new Expressions.LtU(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_GT_S:
+                return new Expressions.GtS(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_GT_U:
+                return new Expressions.GtU(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_LE_S:
+                return new Expressions.LeS(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_LE_U:
+                return new Expressions.LeU(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_GE_S:
+                return new Expressions.GeS(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_GE_U:
+                return new Expressions.GeU(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_ADD:
+                return new Expressions.Add(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_SUB:
+                return new Expressions.Sub(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_MUL:
+                return new Expressions.Mul(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_DIV_S:
+                return new Expressions.DivS(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_DIV_U:
+                return new Expressions.DivU(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_REM_S:
+                return new Expressions.RemS(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_REM_U:
+                return new Expressions.RemU(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_AND:
+                return new Expressions.And(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_OR:
+                return new Expressions.Or(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_XOR:
+                return new Expressions.Xor(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_SHL:
+                return new Expressions.Shl(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_SHR_S:
+                return new Expressions.ShrS(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_SHR_U:
+                return new Expressions.ShrU(left, right);
+            case BinaryFormat.Instructions.Numeric.I32_ROTL:
+                return new Expressions.Rotl(left, right);
+            default:
+                return new Expressions.Rotr(left, right);
+        }
+    }
+
+    /***************************
+     * Simulated operand stack
+     ****************************/
+
+    private void push(ExpressionNode expression) {
+        stack.add(expression);
+    }
+
+    private ExpressionNode pop() {
+        return stack.remove(stack.size() - 1);
+    }
+
+    private int newSlot() {
+        return slotCount++;
+    }
+
+    /**
+     * @return whether evaluating the expression neither has side effects nor depends on state statements can change
+     */
+    private boolean isPure(ExpressionNode expression) {
+        return expression instanceof Expressions.Constant
+            || expression instanceof Expressions.GetLocal && ((Expressions.GetLocal) expression).slot >= localSlotCount;
+    }
+
+    /**
+     * Adds a statement to the innermost block, after spilling the pending expressions on the simulated stack, so
+     * they are evaluated before the statement like in the stack code.
+     */
+    private void addStatement(StatementNode statement) {
+        spillStack();
+        currentFrame().statements.add(statement);
+    }
+
+    private void spillStack() {
+        for (int i = 0; i < stack.size(); i++) {
+            ExpressionNode expression = stack.get(i);
+            if (!isPure(expression)) {
+                int slot = newSlot();
+                currentFrame().statements.add(new Statements.SetLocal(slot, expression));
+                stack.set(i, new Expressions.GetLocal(slot));
+            }
+        }
+    }
+
+    private void pushLoad(int offset, int byteCount, LinearMemory.SIGNEDNESS signedness) {
+        push(new Expressions.Load(linearMemory, offset, byteCount, signedness, pop()));
+    }
+
+    private void addStore(int offset, int byteCount) {
+        ExpressionNode value = pop();
+        ExpressionNode address = pop();
+        addStatement(new Statements.Store(linearMemory, offset, byteCount, address, value));
+    }
+
+    private void addStoreInBounds(int offset, int byteCount) {
+        ExpressionNode value = pop();
+        ExpressionNode address = pop();
+        addStatement(new Statements.StoreInBounds(linearMemory, offset, byteCount, address, value));
+    }
+
+    /***************************
+     * Structured control flow
+     ****************************/
+
+    private ControlFrame currentFrame() {
+        return controlStack.get(controlStack.size() - 1);
+    }
+
+    private void enterBlock(int opCode, int arity, int elseOpCodePc, int endOpCodePc, ExpressionNode condition) {
+        // the enclosing pending expressions are evaluated before the block
+        spillStack();
+
+        int resultSlot = arity == 0 ? -1 : newSlot();
+        controlStack.add(new ControlFrame(opCode, arity, stack.size(), resultSlot, elseOpCodePc, endOpCodePc,
+            condition));
+    }
+
+    /**
+     * Stores the result of the block (if any) in its result slot at the end of the (then or else branch of the) block
+     */
+    private void storeBlockResult(ControlFrame frame) {
+        if (!frame.unreachable && frame.arity != 0) {
+            addStatement(new Statements.SetLocal(frame.resultSlot, pop()));
+        }
+        // drop what is left of dead code
+        while (stack.size() > frame.height) {
+            pop();
+        }
+    }
+
+    private void exitBlock() {
+        ControlFrame frame = currentFrame();
+        storeBlockResult(frame);
+        controlStack.remove(controlStack.size() - 1);
+
+        StatementNode[] body = toArray(frame.statements);
+        boolean reachable = !frame.unreachable || frame.branchedTo;
+        StatementNode block;
+        switch (frame.opCode) {
+            case BinaryFormat.Instructions.Control.LOOP:
+                block = new Statements.Loop(body);
+                break;
+            case BinaryFormat.Instructions.Control.IF:
+                if (frame.inElse()) {
+                    block = new Statements.If(frame.condition, toArray(frame.thenStatements), body);
+                } else {
+                    // without an else branch a false condition continues behind the end
+                    block = new Statements.If(frame.condition, body, new StatementNode[0]);
+                    reachable = true;
+                }
+                break;
+            default:
+                block = new Statements.Block(body);
+                break;
+        }
+
+        currentFrame().statements.add(block);
+        if (frame.arity != 0) {
+            push(new Expressions.GetLocal(frame.resultSlot));
+        }
+        if (!reachable) {
+            currentFrame().unreachable = true;
+        }
+    }
+
+    /**
+     * Adds an unconditional branch, storing the value it carries (if any) in the result slot of the target
+     */
+    private void addBranch(int depth) {
+        ControlFrame target = controlStack.get(controlStack.size() - 1 - depth);
+        if (target.opCode != BinaryFormat.Instructions.Control.LOOP) {
+            target.branchedTo = true;
+            if (target.arity != 0) {
+                addStatement(new Statements.SetLocal(target.resultSlot, pop()));
+            }
+        }
+        addStatement(new Statements.Br(depth));
+    }
+
+    private void addConditionalBranch(int depth, ExpressionNode condition) {
+        ControlFrame target = controlStack.get(controlStack.size() - 1 - depth);
+        if (target.opCode == BinaryFormat.Instructions.Control.LOOP || target.arity == 0) {
+            target.branchedTo |= target.opCode != BinaryFormat.Instructions.Control.LOOP;
+            addStatement(new Statements.BrIf(condition, depth));
+            return;
+        }
+
+        // the value stays on the stack if the branch is not taken, so it is evaluated before the condition
+        target.branchedTo = true;
+        int valueSlot = newSlot();
+        addStatement(new Statements.SetLocal(valueSlot, pop()));
+        push(new Expressions.GetLocal(valueSlot));
+        addStatement(new Statements.BrIfWithValue(condition, depth, valueSlot, target.resultSlot));
+    }
+
+    private static StatementNode[] toArray(List<StatementNode> statements) {
+        return statements.toArray(new StatementNode[0]);
+    }
+}
@@ -0,0 +1,57 @@
+package tree;
+
+import environment.Function;
+
+/**
+ * A WASM function compiled into a tree of nodes. The tree is built when the function is called for the first time.
+ */
+final class TreeFunction {
+    private final Function function;
+    private final TreeBuilder builder;
+
+    private StatementNode body;
+
+    /**
+     * The number of local variables and temporaries of the function
+     */
+    private int slotCount;
+
+    /**
+     * The slot holding the return value of the function, -1 if it has none
+     */
+    private int resultSlot;
+
+    TreeFunction(Function function, TreeBuilder builder) {
+        this.function = function;
+        this.builder = builder;
+    }
+
+    Function getFunction() {
+        return function;
+    }
+
+    /**
+     * @return zeroed slots for a call of this function, the arguments must be stored in the first slots
+     */
+    int[] newSlots() {
+        if (body == null) {
+            builder.build(this);
+        }
+        return new int[slotCount];
+    }
+
+    /**
+     * @param slots the slots returned by {@link #newSlots()} with the arguments stored in them
+     * @return the return value of the function, 0 if it has none
+     */
+    int invoke(int[] slots) {
+        body.execute(slots);
+        return resultSlot < 0 ? 0 : slots[resultSlot];
+    }
+
+    void setTree(StatementNode body, int slotCount, int resultSlot) {
+        this.body = body;
+        this.slotCount = slotCount;
+        this.resultSlot = resultSlot;
+    }
+}
@@ -0,0 +1,45 @@
+package tree;
+
+import constants.ImplementationSpecific;
+import environment.Function;
+import environment.Module;
+import interpreter.ExecutionEngine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executes a WASM module by compiling every function into a tree of executable nodes when it is called for the first
+ * time, see {@link TreeBuilder}. Every node executes its children by calling them directly, so instead of one large
+ * dispatch loop there are many small methods, which HotSpot can compile and inline individually. Gives the same
+ * results as the interpreter, including traps.
+ */
+public class TreeInterpreter extends ExecutionEngine {
+
+    /**
+     * The maximum number of nested function calls, exceeding it traps
+     */
+    private final int maxCallDepth;
+
+    public TreeInterpreter(Module module) {
+        this(module, ImplementationSpecific.Interpreter.CALL_DEPTH_MAX);
+    }
+
+    public TreeInterpreter(Module module, int maxCallDepth) {
+        super(module);
+        this.maxCallDepth = maxCallDepth;
+    }
+
+    @Override
+    protected void run() {
+        List<TreeFunction> functions = new ArrayList<>();
+        TreeBuilder builder = new TreeBuilder(functions, module, new CallStack(maxCallDepth));
+        for (Function function : module.getFunctions()) {
+            functions.add(new TreeFunction(function, builder));
+        }
+
+        // Like in the interpreter, the parameters of the start function are zero and it starts at call depth 0
+        TreeFunction startFunction = functions.get(module.getStartFunctionIndex());
+        startFunction.invoke(startFunction.newSlots());
+    }
+}
@@ -2,7 +2,7 @@ package util;
 
 import parser.ParserException;
 
-import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
 
 public class Leb128 {
     /**
@@ -10,13 +10,13 @@ public class Leb128 {
      * Thank you android dex for the source!
      * https://github.com/facebook/buck/blob/master/third-party/java/dx/src/com/android/dex/Leb128.java
      */
-    public static int readUnsignedLeb128(ByteArrayInputStream in) {
+    public static int readUnsignedLeb128(ByteBuffer in) {
         int result = 0;
         int cur;
         int count = 0;
 
         do {
-            cur = in.read() & 0xff;
+            cur = readByte(in) & 0xff;
             result |= (cur & 0x7f) << (count * 7);
             count++;
         } while (((cur & 0x80) == 0x80) && count < 5);
@@ -28,6 +28,43 @@ public class Leb128 {
         return result;
     }
 
+    /**
+     * Reads a signed integer from {@code in}.
+     * Thank you android dex for the source!
+     * https://github.com/facebook/buck/blob/master/third-party/java/dx/src/com/android/dex/Leb128.java
+     */
+    public static int readSignedLeb128(ByteBuffer in) {
+        int result = 0;
+        int cur;
+        int count = 0;
+        int signBits = -1;
+
+        do {
+            cur = readByte(in) & 0xff;
+            result |= (cur & 0x7f) << (count * 7);
+            signBits <<= 7;
+            count++;
+        } while (((cur & 0x80) == 0x80) && count < 5);
+
+        if ((cur & 0x80) == 0x80) {
+            throw new ParserException("invalid LEB128 sequence");
+        }
+
+        // Sign extend if appropriate
+        if (((signBits >> 1) & result) != 0) {
+            result |= signBits;
+        }
+
+        return result;
+    }
+
+    private static byte readByte(ByteBuffer in) {
+        if (!in.hasRemaining()) {
+            throw new ParserException("unexpected end of a LEB128 sequence");
+        }
+        return in.get();
+    }
+
     /**
      * Gets the number of bytes in the unsigned LEB128 encoding of the
      * given value.
@@ -1,10 +1,13 @@
 package benchmark;
 
+import environment.LinearMemory;
 import environment.Module;
+import environment.ModuleSnapshot;
 import interpreter.WasmInterpreter;
 import org.apache.commons.math3.stat.descriptive.DescriptiveStatistics;
 import parser.BinaryParser;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
@@ -23,18 +26,19 @@ public class Benchmarker {
             "fibonacci.wasm",
             benchmarkMultipleExecution("fibonacci.wasm", BENCHMARK_ROUNDS_FIBONACCI)
         );
+        printBenchmarkResults(
+            "factorial.wasm (forked)",
+            benchmarkForkedExecution("factorial.wasm", BENCHMARK_ROUNDS_FACTORIAL)
+        );
+        printBenchmarkResults(
+            "fibonacci.wasm (forked)",
+            benchmarkForkedExecution("fibonacci.wasm", BENCHMARK_ROUNDS_FIBONACCI)
+        );
     }
 
-    private static double benchmarkSingleExecution(String filename) {
-        WasmInterpreter interpreter;
-        try {
-            BinaryParser factorialParser = new BinaryParser();
-            Module module = factorialParser.parse(new File(filename));
-            interpreter = new WasmInterpreter(module);
-
-        } catch (IOException e) {
-            throw new RuntimeException(e);
-        }
+    private static double benchmarkSingleExecution(Module module, WasmInterpreter interpreter) {
+        // restores the module's state after parsing instead of parsing it again
+        module.reset();
 
         double startTime = System.nanoTime();
         interpreter.execute(false);
@@ -42,14 +46,65 @@ public class Benchmarker {
     }
 
     private static double[] benchmarkMultipleExecution(String filename, int passes) {
+        Module module = parse(filename);
+        module.markBaseline();
+        WasmInterpreter interpreter = new WasmInterpreter(module);
+
         double[] values = new double[passes];
         System.out.println("'" + filename + "' - Benchmark start");
         for (int i = 0; i < passes; i++) {
-            values[i] = benchmarkSingleExecution(filename);
+            values[i] = benchmarkSingleExecution(module, interpreter);
         }
         return values;
     }
 
+    /**
+     * Forks a new instance from a snapshot taken after parsing for every pass, so every pass includes creating the
+     * instance. Every fork has to end with the same linear memory as the parsed instance, which executes after the
+     * snapshot was taken, so the instances must not see the writes of each other.
+     */
+    private static double[] benchmarkForkedExecution(String filename, int passes) {
+        Module module = parse(filename);
+        ModuleSnapshot snapshot = module.snapshot();
+        new WasmInterpreter(module).execute(false);
+        byte[] expectedMemory = contents(module.getLinearMemory());
+
+        double[] values = new double[passes];
+        System.out.println("'" + filename + "' (forked) - Benchmark start");
+        for (int i = 0; i < passes; i++) {
+            double startTime = System.nanoTime();
+            Module instance = snapshot.fork();
+            new WasmInterpreter(instance).execute(false);
+            values[i] = secondsBetween(startTime, System.nanoTime());
+
+            if (!Arrays.equals(contents(instance.getLinearMemory()), expectedMemory)) {
+                throw new IllegalStateException("Fork " + i + " of '" + filename
+                    + "' ended with another linear memory than the parsed instance!");
+            }
+        }
+        return values;
+    }
+
+    private static Module parse(String filename) {
+        try {
+            return new BinaryParser().parse(new File(filename));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] contents(LinearMemory linearMemory) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        if (linearMemory != null) {
+            try {
+                linearMemory.writeTo(out);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return out.toByteArray();
+    }
+
     private static void printBenchmarkResults(String filename, double[] values) {
         DecimalFormat df = new DecimalFormat("#.#########");
         DescriptiveStatistics statistics = new DescriptiveStatistics(values);
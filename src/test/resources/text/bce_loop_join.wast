@@ -0,0 +1,27 @@
+(module
+  (type (;0;) (func (param i32)))
+  (type (;1;) (func))
+  ;; $1 is copied before the loop, whose first iteration assigns 1000000 to $1 and whose second one leaves it. The
+  ;; comparison of the copy must not narrow $1, so the load stays checked and traps out of bounds for
+  ;; (call 0 (i32.const 1)).
+(func (;0;) (type 0) (param i32)
+    (local i32)
+    get_local 1
+    block
+      loop
+        (br_if 1 (i32.eqz (get_local 0)))
+        (set_local 1 (i32.const 1000000))
+        (set_local 0 (i32.const 0))
+        (br 0)
+      end
+    end
+    i32.const 10
+    i32.lt_s
+    (if
+      (then
+        (drop (i32.load (get_local 1)))))
+)
+(func (;1;) (type 1)
+    (call 0 (i32.const 1)))
+(memory (;0;) 1 1)
+  (start 1))
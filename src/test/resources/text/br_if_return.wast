@@ -0,0 +1,13 @@
+(module
+  (type (;0;) (func))
+  ;; The conditional branches out of the function carry no value, the first one with an empty operand stack. The
+  ;; first is not taken, so 7 is stored, the second returns before 9 is stored.
+(func (;0;) (type 0)
+    i32.const 0
+    br_if 0
+    (i32.store (i32.const 0) (i32.const 7))
+    i32.const 1
+    br_if 0
+    (i32.store (i32.const 0) (i32.const 9)))
+(memory (;0;) 1 1)
+  (start 0))
@@ -0,0 +1,10 @@
+(module
+  (type (;0;) (func))
+  ;; The second page is only written by the data segment, the start function only stores to the first page. Run with
+  ;; --shared-memory <dir> --checkpoint <file>, then with --restore <file> --shared-memory <dir> --checkpoint <file> -d:
+  ;; the dump equals the dump of a plain run with -d, and the second checkpoint keeps both pages.
+(func (;0;) (type 0)
+    (i32.store (i32.const 0) (i32.const 42)))
+(memory (;0;) 2 2)
+  (start 0)
+  (data (i32.const 65541) "data segment"))